@@ -19,13 +19,21 @@ package isasim;
 *					   on the current stored control 
 *					   signal
 *
+* <p> Both methods have primitive forms used by the
+* datapath. The int results are not clipped; the
+* Register or Memory they are latched into discards
+* the bits above its width.
+*
 * <p>Updated: 06/29/2017
 ***************************************************/
 
 
 public class ALU {
-	private String opcode;
+	private int op;
 
+	public static final int ADD = 0;
+	public static final int SUB = 1;
+	public static final int NOR = 2;
 
 	/**
 	* ALU constructor.
@@ -37,7 +45,7 @@ public class ALU {
 	* @param oc the initial operating code of this ALU
 	**/
 	public ALU(String oc){
-		opcode = oc;	
+		update(oc);
 	}
 	
 	
@@ -47,7 +55,16 @@ public class ALU {
 	*@param newSignal the new operating code.
 	**/
 	public void update(String newSignal){
-		opcode = newSignal;
+		op = (newSignal == null || newSignal.length() != 2) ? -1 : Utilities.binToWord(newSignal);
+	}
+
+	/**
+	*Updates the operating code of this ALU from its bits.
+	*
+	*@param newSignal the new two-bit operating code.
+	**/
+	public void update(int newSignal){
+		op = newSignal;
 	}
 	
 
@@ -64,17 +81,39 @@ public class ALU {
 	* @return the result of the operation.
 	**/
 	public String operate(String a, String b){
-		switch (opcode){
-			case "00":
+		switch (op){
+			case ADD:
 				return add(a,b);
-			case "01": 
+			case SUB: 
 				return sub(a,b); 
-			case "10":
+			case NOR:
 				return nor(a,b);
 			default:
 				return a;
 		}
 	}
+
+	/**
+	*Perform an Arithmetic Logic operation on words.
+	*
+	* The primitive form of operate(String,String).
+	*
+	* @param a one of the operands of the operation.
+	* @param b the second operand of the operation.
+	* @return the unclipped result of the operation.
+	**/
+	public int operate(int a, int b){
+		switch (op){
+			case ADD:
+				return a + b;
+			case SUB:
+				return a - b;
+			case NOR:
+				return ~(a | b);
+			default:
+				return a;
+		}
+	}
 	
 	/**
 	* Perform binary addition on two strings.
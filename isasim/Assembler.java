@@ -0,0 +1,228 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Assembler of the ISA simulator
+* package "isasim".
+*
+* <p> The Assembler translates .isa source into the
+* binary instruction words of this architecture. It
+* produces the same text image that the Simulator has
+* always written to the instruction memory file, and can
+* also turn that image into memory words directly, so a
+* program can be loaded without any file in between.
+*
+* <p> Note on j: the compiler has always written a j
+* instruction without a line break, so the encoding of
+* the next instruction ended up on the same line and was
+* cut off when the image was loaded. Programs (including
+* sample.isa) place a filler line after each j with that
+* in mind, and their j targets count on it. The image
+* keeps this behaviour: j is a word of its own and the
+* word after it is dropped, at any word width.
+*
+* <p> Contained methods:
+*		assemble(): translate source into the text image.
+*		toImage(): convert a text image to memory words.
+*		Rinst()/Iinst(): encode the operands of R-type
+*						 and I-type instructions.
+*
+**/
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+public class Assembler {
+
+	/**
+	* Translate source code to the text instruction image.
+	*
+	* Invalid instructions are written as empty words.
+	* At most 'lines' lines of source (comments excluded)
+	* are translated, and the image is padded with empty
+	* words up to that many lines.
+	*
+	* @param in the source code
+	* @param lines the capacity of the instruction memory
+	* @return the instruction image, one binary word per line
+	* @throws IOException if the source cannot be read
+	**/
+	public static String assemble(BufferedReader in, int lines) throws IOException {
+		StringBuilder out = new StringBuilder();
+		int lineCount = 0;
+		// the word after a j is dropped
+		boolean dropNext = false;
+		String line;
+		while(lineCount < lines && (line = in.readLine()) != null){
+			String[] parts = line.trim().split("\\s+");
+			String writeLine = "";
+			if (parts.length == 0 || parts[0].startsWith("#")){
+				//skip it, its a comment
+			}
+			else {
+				switch(parts[0]){
+					case "la":
+						writeLine+="0001";
+						writeLine+=Iinst(parts)+'\n';
+						break;
+					case "mw":
+						writeLine+="0110";
+						writeLine+=Iinst(parts)+"\n";
+						break;
+					case "mr":
+						writeLine+="0010";
+						writeLine+=Iinst(parts)+"\n";
+						break;
+					case "lw":
+						if (parts.length < 4){
+							//interpret as mr
+							writeLine+="0010";
+							writeLine+=Iinst(parts)+"\n";
+							break;
+						}
+						else{
+							writeLine+="0001";
+							String[] iParts = {"",parts[2],parts[3]};
+							writeLine+=Iinst(iParts)+'\n';
+							String[] rParts = {"",parts[1],parts[3]};
+							writeLine+="0010"+Iinst(rParts)+"\n";
+						}
+						break;
+					case "sw":
+						if (parts.length < 4 ){
+							//interpret as mw
+							writeLine += "0110";
+							writeLine += Iinst(parts)+"\n";
+						} else{
+							String[] iParts = {"",parts[2],parts[3]};
+							String[] rParts = {"",parts[1],parts[3]};
+							writeLine+="0001"+Iinst(iParts)+"\n";
+							writeLine+="0110"+Iinst(rParts)+"\n";
+						}
+						break;
+					case "addi":
+						writeLine+="0100";
+						writeLine+=Iinst(parts)+"\n";
+						break;
+					case "add":
+						writeLine+="0000";
+						writeLine+=Rinst(parts);
+						writeLine+="1000\n";
+						break;
+					case "sub":
+						writeLine+="0000";
+						writeLine+=Rinst(parts);
+						writeLine+="0001\n";
+						break;
+					case "nor":
+						writeLine+="0000";
+						writeLine+= Rinst(parts);
+						writeLine+="0010\n";
+						break;
+					case "beq":
+						writeLine+="0111";
+						writeLine+=Iinst(parts)+"\n";
+						break;
+					case "j":
+						writeLine+="1000";
+						writeLine+=Utilities.intToBin(12,Integer.parseInt(parts[1]))+"\n";
+						break;
+					default:
+						writeLine+="0000000000000000\n";
+						break;
+
+				}
+				lineCount++;
+				if (dropNext) writeLine = writeLine.substring(writeLine.indexOf('\n') + 1);
+				dropNext = parts[0].equals("j");
+				out.append(writeLine);
+			}
+		}
+		while(lineCount < lines){
+			if (!dropNext) out.append("0000000000000000\n");
+			dropNext = false;
+			lineCount++;
+		}
+		return out.toString();
+	}
+
+	/**
+	* Translate a source file to memory words.
+	*
+	* @param filename the .isa file to assemble
+	* @param capacity the size of the instruction memory
+	* @param length the word length of the instruction memory
+	* @return the instruction memory contents
+	* @throws IOException if the file cannot be read
+	**/
+	public static int[] assemble(String filename, int capacity, int length) throws IOException {
+		try (BufferedReader in = new BufferedReader(new FileReader(filename))){
+			return toImage(assemble(in,capacity),capacity,length);
+		}
+	}
+
+	/**
+	* Convert a text image to memory words.
+	*
+	* Each line is read the same way Memory reads its
+	* file: lines are prepadded with '0' or cut down to
+	* the word length, and missing lines are empty words.
+	*
+	* @param image the text image, one word per line
+	* @param capacity the number of words to produce
+	* @param length the word length
+	* @return the memory contents
+	**/
+	public static int[] toImage(String image, int capacity, int length){
+		int[] words = new int[capacity];
+		int count = 0;
+		int start = 0;
+		while (count < capacity && start < image.length()){
+			int end = image.indexOf('\n',start);
+			if (end < 0) end = image.length();
+			words[count++] = Memory.toWord(image.substring(start,end),length);
+			start = end + 1;
+		}
+		return words;
+	}
+
+	/**
+	* Used by the compiler to interpret R-type instructions.
+	*
+	* @param parts the current line of code being compiled.
+	* @return the binary register addresses for this instruction.
+	**/
+	public static String Rinst(String[] parts){
+		if(!parts[1].startsWith("&r") || !parts[2].startsWith("&r")){
+			System.out.println("ERROR: R-type instructions must include two");
+			System.out.println("input registers as '&ra' and '&rb' where 'a'");
+			System.out.println("and 'b' are the integers representing the registers.");
+			return"";
+		}
+		else{
+			String addr1 = Utilities.intToBin(4,Integer.parseInt(parts[1].substring(2)));
+			String addr2 = Utilities.intToBin(4,Integer.parseInt(parts[2].substring(2)));
+			return addr1+addr2;
+		}
+
+	}
+
+	/**
+	* Used by the compiler to interpret I-type instructions.
+	*
+	* @param parts the current line of code being compiled.
+	* @return the binary register address as well as the binary immediate value.
+	**/
+	public static String Iinst(String[] parts){
+		String addr = Utilities.intToBin(4,Integer.parseInt(parts[1].substring(2)));
+		String immed;
+		if (parts.length < 3){
+			immed = "00000000";
+		}else{
+			immed = Utilities.intToBin(8,Integer.parseInt(parts[2]));
+		}
+		return addr+immed;
+	}
+}
@@ -0,0 +1,400 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Headless batch runner of the ISA
+* simulator package "isasim".
+*
+* <p> The BatchRunner runs many .isa programs without
+* creating a Gui. Each program is assembled in memory and
+* run on its own Processor, which shares nothing with the
+* others and is not tied to the Imem.dat/Dmem.dat files,
+* so the programs run in parallel on a work-stealing pool.
+*
+* <p> One result row is printed per program, in the order
+* the programs were given:
+*		program, status, cycles, wall time (ms),
+*		data memory hash, registers &r0..&rN
+* The status is "halt" (empty or invalid instruction),
+* "exit" (PC left the instruction memory), "limit" (the
+* cycle limit was reached), "diverged" (a cross-check failed)
+* or "error" followed by the reason.
+*
+* <p> Usage:
+*		java isasim.BatchRunner [-engine NAME] [-threads N]
+*			[-limit CYCLES] [-trace DIR] [-metrics] [-report MS]
+*			[-profile] [Config options] (file.isa | directory)...
+* The sizes of each Processor are given by the Config
+* options (-imem, -dmem, -regs, ...). With -trace, every
+* cycle of each program is written to DIR/name.trace
+* (see TraceRecorder and TraceReader). With -metrics, each
+* Processor publishes its counters through JMX while it runs
+* (see ProcessorMetrics); -report also prints the total of
+* the counters every MS milliseconds. With -profile, the
+* hotspot report of each program (see Profiler) follows the
+* results.
+*
+* <p> Contained methods:
+*		run(): run one program and describe its result.
+*		runAll(): run a list of programs on a pool.
+*
+**/
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class BatchRunner {
+
+	public static final long DEFAULT_LIMIT = 100000000L;
+
+	private static final String USAGE = "usage: BatchRunner [-engine NAME] [-threads N] [-limit CYCLES] [-trace DIR] [-metrics]"
+			+ " [-report MS] [-profile] (file.isa | directory)...";
+
+	/**
+	* The result of running one program.
+	**/
+	public static class Result {
+		public final String program;
+		public final String status;
+		public final long cycles;
+		public final long nanos;
+		public final long memoryHash;
+		public final int[] registers;
+		// the hotspot report, if profiled
+		public String profile;
+
+		Result(String p, String s, long c, long n, long h, int[] r){
+			program = p; status = s; cycles = c; nanos = n; memoryHash = h; registers = r;
+		}
+
+		/**
+		* Format this result as a tab-separated row.
+		*
+		* @return the result row
+		**/
+		public String toString(){
+			StringBuilder row = new StringBuilder();
+			row.append(program).append('\t').append(status).append('\t').append(cycles);
+			row.append('\t').append(String.format("%.3f",nanos / 1e6));
+			row.append('\t').append(String.format("%016x",memoryHash));
+			for (int r : registers) row.append('\t').append(r);
+			return row.toString();
+		}
+	}
+
+	private final Engine engine;
+	private final long limit;
+	private final Config config;
+	private String traceDirectory;
+	private boolean metrics;
+	private boolean profile;
+
+	/**
+	* BatchRunner constructor.
+	*
+	* @param e the engine each Processor is built with
+	* @param cycleLimit the number of cycles each program may run
+	**/
+	public BatchRunner(Engine e, long cycleLimit){
+		this(e,cycleLimit,new Config());
+	}
+
+	/**
+	* BatchRunner constructor for a configuration.
+	*
+	* @param e the engine each Processor is built with
+	* @param cycleLimit the number of cycles each program may run
+	* @param c the sizes of each Processor
+	**/
+	public BatchRunner(Engine e, long cycleLimit, Config c){
+		engine = e;
+		limit = cycleLimit;
+		config = c;
+	}
+
+	/**
+	* Write a binary trace of each program.
+	*
+	* @param directory where the traces are written
+	* (null for no traces)
+	**/
+	public void setTraceDirectory(String directory){
+		traceDirectory = directory;
+	}
+
+	/**
+	* Publish the counters of each Processor through JMX.
+	*
+	* @param enabled true to enable the metrics of each Processor
+	**/
+	public void setMetrics(boolean enabled){
+		metrics = enabled;
+	}
+
+	/**
+	* Profile each program.
+	*
+	* @param enabled true to add a hotspot report to each Result
+	**/
+	public void setProfile(boolean enabled){
+		profile = enabled;
+	}
+
+	/**
+	* Run one program on a fresh Processor.
+	*
+	* @param filename the .isa file to run
+	* @return the result of the run
+	**/
+	public Result run(String filename){
+		int[] image;
+		try {
+			image = Assembler.assemble(filename,config.imemSize,config.wordWidth);
+		}
+		catch (IOException | RuntimeException e){
+			return new Result(filename,"error: " + e,0,0,0,new int[0]);
+		}
+		Processor p;
+		try {
+			p = config.newProcessor(image,null,engine);
+		}
+		catch (IllegalArgumentException e){
+			return new Result(filename,"error: " + e.getMessage(),0,0,0,new int[0]);
+		}
+		try {
+			if (traceDirectory != null) p.startTrace(traceFile(filename));
+		}
+		catch (IOException e){
+			return new Result(filename,"error: " + e,0,0,0,new int[0]);
+		}
+		if (metrics) p.enableMetrics(new File(filename).getName());
+		Profiler profiler = profile ? p.enableProfiler() : null;
+		long start = System.nanoTime();
+		p.execute(limit);
+		long nanos = System.nanoTime() - start;
+		p.disableMetrics();
+		try {
+			p.stopTrace();
+		}
+		catch (IOException e){
+			return new Result(filename,"error: " + e,p.getCycles(),nanos,0,new int[0]);
+		}
+
+		String status = status(p,limit);
+		int[] registers = new int[p.regFileSize];
+		for (int i = 0; i < registers.length; i++) registers[i] = p.regFile[i].getSigned();
+		Result result = new Result(filename,status,p.getCycles(),nanos,hash(p.dataMemory),registers);
+		if (profiler != null) result.profile = profiler.report(Profiler.DEFAULT_TOP);
+		return result;
+	}
+
+	/**
+	* The trace file of a program.
+	**/
+	private String traceFile(String filename){
+		String name = new File(filename).getName();
+		if (name.endsWith(".isa")) name = name.substring(0,name.length() - 4);
+		return new File(traceDirectory,name + ".trace").getPath();
+	}
+
+	/**
+	* Describe how a program stopped.
+	*
+	* @param p the Processor that ran the program
+	* @param limit the number of cycles it was allowed
+	* @return "diverged", "limit", "halt" or "exit"
+	**/
+	public static String status(Processor p, long limit){
+		int pc = p.PC.getSigned();
+		if (p.getDivergence() != null) return "diverged";
+		if (pc < 0 || pc >= p.imemSize) return "exit";
+		// stopped at an empty or invalid word, even on its last allowed cycle
+		Opcode op = p.decodeCache.get(pc).opcode;
+		if (op == Opcode.HALT || op == Opcode.INVALID) return "halt";
+		if (p.getCycles() >= limit) return "limit";
+		return "halt";
+	}
+
+	/**
+	* Run a list of programs in parallel.
+	*
+	* @param files the .isa files to run
+	* @param threads the number of worker threads
+	* @return the results, in the order of files
+	**/
+	public List<Result> runAll(List<String> files, int threads){
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<Future<Result>> pending = new ArrayList<Future<Result>>();
+			for (String f : files) pending.add(pool.submit(() -> run(f)));
+			List<Result> results = new ArrayList<Result>();
+			for (int i = 0; i < pending.size(); i++){
+				try {
+					results.add(pending.get(i).get());
+				}
+				catch (Exception e){
+					results.add(new Result(files.get(i),"error: " + e,0,0,0,new int[0]));
+				}
+			}
+			return results;
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	* Hash the contents of a data memory (64-bit FNV-1a).
+	*
+	* @param m the memory to hash
+	* @return the hash of its words
+	**/
+	public static long hash(Memory m){
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < m.getSize(); i++){
+			int w = m.getWord(i);
+			for (int b = 0; b < 4; b++){
+				h ^= (w >>> (8 * b)) & 0xFF;
+				h *= 0x100000001b3L;
+			}
+		}
+		return h;
+	}
+
+	/**
+	* Collect the .isa files named by the arguments.
+	*
+	* Directories contribute every .isa file they hold,
+	* in name order.
+	*
+	* @param paths files and directories
+	* @return the programs to run
+	**/
+	public static List<String> programs(List<String> paths){
+		List<String> files = new ArrayList<String>();
+		for (String path : paths){
+			File f = new File(path);
+			if (f.isDirectory()){
+				File[] inside = f.listFiles((dir, name) -> name.endsWith(".isa"));
+				if (inside == null) continue;
+				Arrays.sort(inside);
+				for (File i : inside) files.add(i.getPath());
+			}
+			else {
+				files.add(path);
+			}
+		}
+		return files;
+	}
+
+	/**
+	* Run the programs given on the command line.
+	*
+	* @param args options followed by .isa files and directories
+	**/
+	public static void main(String[] args){
+		List<String> options = new ArrayList<String>();
+		Config config;
+		try {
+			config = Config.parse(args,options);
+		}
+		catch (IllegalArgumentException e){
+			System.out.println("ERROR: " + e.getMessage());
+			return;
+		}
+		main(config,options);
+	}
+
+	/**
+	* Run programs with a configuration already parsed.
+	*
+	* @param config the sizes of every processor
+	* @param options the arguments Config.parse() left: the
+	* options of this class, then .isa files and directories
+	**/
+	static void main(Config config, List<String> options){
+		Engine engine = Engine.JIT;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long limit = DEFAULT_LIMIT;
+		String traces = null;
+		boolean metrics = false;
+		long report = 0;
+		boolean profile = false;
+		String[] args = options.toArray(new String[0]);
+		List<String> paths = new ArrayList<String>();
+		try {
+			for (int i = 0; i < args.length; i++){
+				switch (args[i]){
+					case "-engine":
+						engine = Engine.valueOf(args[++i].toUpperCase());
+						break;
+					case "-threads":
+						threads = Integer.parseInt(args[++i]);
+						break;
+					case "-limit":
+						limit = Long.parseLong(args[++i]);
+						break;
+					case "-trace":
+						traces = args[++i];
+						break;
+					case "-metrics":
+						metrics = true;
+						break;
+					case "-profile":
+						profile = true;
+						break;
+					case "-report":
+						report = Long.parseLong(args[++i]);
+						metrics = true;
+						break;
+					default:
+						paths.add(args[i]);
+				}
+			}
+			if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+		}
+		catch (RuntimeException e){
+			System.out.println(USAGE);
+			return;
+		}
+		List<String> files = programs(paths);
+		if (files.isEmpty()){
+			System.out.println(USAGE);
+			return;
+		}
+
+		long start = System.nanoTime();
+		BatchRunner runner = new BatchRunner(engine,limit,config);
+		runner.setTraceDirectory(traces);
+		runner.setMetrics(metrics);
+		runner.setProfile(profile);
+		if (report > 0){
+			ProcessorMetrics.addReporter((name, counters) -> {
+				if (name.equals(ProcessorMetrics.TOTAL_NAME)) System.err.println("metrics " + counters);
+			},report);
+		}
+		List<Result> results = runner.runAll(files,threads);
+		long nanos = System.nanoTime() - start;
+
+		StringBuilder header = new StringBuilder("program\tstatus\tcycles\twall_ms\tdmem_hash");
+		for (int i = 0; i < config.regFileSize; i++) header.append("\t&r").append(i);
+		System.out.println(header);
+		long cycles = 0;
+		for (Result r : results){
+			System.out.println(r);
+			cycles += r.cycles;
+		}
+		for (Result r : results){
+			if (r.profile != null) System.out.println(String.format("%n%s%n%s",r.program,r.profile.trim()));
+		}
+		System.err.println(String.format("%d programs, %d cycles in %.3f s on %d threads (%.2f MIPS)",
+				results.size(), cycles, nanos / 1e9, threads, cycles / (nanos / 1e3)));
+	}
+}
@@ -0,0 +1,354 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Translates basic blocks of ISA instructions
+* into JVM classes for the ISA simulator package "isasim".
+*
+* <p> A basic block is a run of la, mr, mw, addi, add, sub
+* and nor instructions, ended by a beq or j (or by the
+* instruction before an empty/invalid word). The BlockCompiler
+* writes the class file of a CompiledBlock whose run() method
+* performs the whole block, and defines it as a hidden class.
+* The HotSpot JIT then compiles the simulated program itself.
+*
+* <p> Registers used by the block are loaded into JVM locals
+* on entry and stored back before the block returns. Every
+* result is masked to the register width, as Register.setWord()
+* would. Branch and jump targets are constants, since the
+* PC of each instruction is known when the block is translated.
+*
+* <p> The class file is written as version 49 so that the
+* verifier does not need stack map frames for the beq exit.
+*
+* <p> Contained methods:
+*		compile(): translate the instructions of one block.
+*
+**/
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import java.util.ArrayList;
+
+public class BlockCompiler {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	// fixed constant pool entries
+	private static final int THIS_CLASS = 2;
+	private static final int SUPER_CLASS = 4;
+	private static final int INTERFACE = 6;
+	private static final int INIT_NAME = 7;
+	private static final int VOID_DESC = 8;
+	private static final int OBJECT_INIT = 10;
+	private static final int RUN_NAME = 11;
+	private static final int RUN_DESC = 12;
+	private static final int CODE = 13;
+	private static final int GET_WORD = 19;
+	private static final int SET_WORD = 23;
+	private static final int FIXED_ENTRIES = 23;
+
+	// JVM opcodes used by the translation
+	private static final int ICONST_0 = 0x03;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC_W = 0x13;
+	private static final int ILOAD = 0x15;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int ALOAD_2 = 0x2c;
+	private static final int IALOAD = 0x2e;
+	private static final int ISTORE = 0x36;
+	private static final int IASTORE = 0x4f;
+	private static final int IADD = 0x60;
+	private static final int ISUB = 0x64;
+	private static final int IAND = 0x7e;
+	private static final int IOR = 0x80;
+	private static final int IXOR = 0x82;
+	private static final int IFNE = 0x9a;
+	private static final int IRETURN = 0xac;
+	private static final int RETURN = 0xb1;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKESPECIAL = 0xb7;
+
+	private final int regCount;
+	private final int mask;
+	private final ArrayList<Integer> constants;
+	private final ByteArrayOutputStream code;
+
+	/**
+	* BlockCompiler constructor.
+	*
+	* @param registers the number of registers in the register file
+	* @param width the width of the registers, MAR and PC
+	**/
+	public BlockCompiler(int registers, int width){
+		regCount = registers;
+		mask = Utilities.mask(width);
+		constants = new ArrayList<Integer>();
+		code = new ByteArrayOutputStream();
+	}
+
+	/**
+	* Translate one basic block.
+	*
+	* @param block the decoded instructions of the block, in order
+	* @param start the instruction memory address of block[0]
+	* @return the translated block, ready to run
+	**/
+	public CompiledBlock compile(DecodedInstruction[] block, int start){
+		constants.clear();
+		code.reset();
+		byte[] classFile = classFile(block,start);
+		try {
+			MethodHandles.Lookup hidden = LOOKUP.defineHiddenClass(classFile,true);
+			return (CompiledBlock)hidden.findConstructor(hidden.lookupClass(),MethodType.methodType(void.class)).invoke();
+		}
+		catch (Throwable e){
+			throw new IllegalStateException("could not translate block at " + start,e);
+		}
+	}
+
+	/**
+	* Write the body of run() for a block.
+	*
+	* @param block the decoded instructions of the block
+	* @param start the address of the first instruction
+	**/
+	private void translate(DecodedInstruction[] block, int start){
+		boolean[] used = new boolean[regCount + 1];
+		for (DecodedInstruction ins : block){
+			used[ins.ra] = true;
+			if (ins.opcode.isRType()) used[ins.rb] = true;
+		}
+		used[regCount] = true;
+		for (int r = 0; r <= regCount; r++){
+			if (!used[r]) continue;
+			op(ALOAD_1); push(r); op(IALOAD); op(ISTORE); op(local(r));
+		}
+
+		int marLocal = local(regCount);
+		for (int i = 0; i < block.length; i++){
+			DecodedInstruction ins = block[i];
+			int pc = start + i;
+			int a = local(ins.ra);
+			switch (ins.opcode){
+				case LA:
+					op(ILOAD); op(a); push(ins.immediate); op(IADD); masked(); op(ISTORE); op(marLocal);
+					break;
+				case MR:
+					op(ALOAD_2); op(ILOAD); op(marLocal);
+					op(INVOKEVIRTUAL); u2(GET_WORD);
+					masked(); op(ISTORE); op(a);
+					break;
+				case MW:
+					op(ALOAD_2); op(ILOAD); op(marLocal); op(ILOAD); op(a);
+					op(INVOKEVIRTUAL); u2(SET_WORD);
+					break;
+				case ADDI:
+					op(ILOAD); op(a); push(ins.immediate); op(IADD); masked(); op(ISTORE); op(a);
+					break;
+				case ADD:
+					op(ILOAD); op(a); op(ILOAD); op(local(ins.rb)); op(IADD); masked(); op(ISTORE); op(a);
+					break;
+				case SUB:
+					op(ILOAD); op(a); op(ILOAD); op(local(ins.rb)); op(ISUB); masked(); op(ISTORE); op(a);
+					break;
+				case NOR:
+					op(ILOAD); op(a); op(ILOAD); op(local(ins.rb)); op(IOR); push(-1); op(IXOR); masked(); op(ISTORE); op(a);
+					break;
+				case BEQ:
+					writeBack(used);
+					op(ILOAD); op(a);
+					int branch = code.size();
+					op(IFNE);
+					int notTaken = code.size();
+					u2(0);
+					push((pc + ins.immediate) & mask); op(IRETURN);
+					patch(notTaken,code.size() - branch);
+					push((pc + 1) & mask); op(IRETURN);
+					return;
+				case J:
+					writeBack(used);
+					push(((pc & ~0xFFF) | ins.jump) & mask); op(IRETURN);
+					return;
+				default:
+					throw new IllegalArgumentException("cannot translate " + ins.opcode);
+			}
+		}
+		writeBack(used);
+		push((start + block.length) & mask); op(IRETURN);
+	}
+
+	/**
+	* Store the registers used by the block back to the state array.
+	*
+	* @param used the registers (and MAR) the block touches
+	**/
+	private void writeBack(boolean[] used){
+		for (int r = 0; r <= regCount; r++){
+			if (!used[r]) continue;
+			op(ALOAD_1); push(r); op(ILOAD); op(local(r)); op(IASTORE);
+		}
+	}
+
+	/**
+	* The JVM local holding a register (regCount is the MAR).
+	**/
+	private int local(int register){
+		return 3 + register;
+	}
+
+	private void masked(){
+		push(mask); op(IAND);
+	}
+
+	private void op(int b){
+		code.write(b);
+	}
+
+	private void u2(int v){
+		code.write(v >>> 8);
+		code.write(v);
+	}
+
+	private void patch(int at, int offset){
+		byte[] bytes = code.toByteArray();
+		bytes[at] = (byte)(offset >>> 8);
+		bytes[at + 1] = (byte)offset;
+		code.reset();
+		code.write(bytes,0,bytes.length);
+	}
+
+	/**
+	* Push an int constant with the shortest instruction.
+	**/
+	private void push(int v){
+		if (v >= -1 && v <= 5){
+			op(ICONST_0 + v);
+		}
+		else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE){
+			op(BIPUSH); op(v);
+		}
+		else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE){
+			op(SIPUSH); u2(v);
+		}
+		else {
+			int index = constants.indexOf(v);
+			if (index < 0){
+				constants.add(v);
+				index = constants.size() - 1;
+			}
+			op(LDC_W); u2(FIXED_ENTRIES + 1 + index);
+		}
+	}
+
+	/**
+	* Assemble the class file of a CompiledBlock.
+	*
+	* @param block the decoded instructions of the block
+	* @param start the address of the first instruction
+	* @return the class file bytes
+	**/
+	private byte[] classFile(DecodedInstruction[] block, int start){
+		translate(block,start);
+		byte[] body = code.toByteArray();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)){
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(49);
+
+			out.writeShort(FIXED_ENTRIES + constants.size() + 1);
+			utf8(out,"isasim/JitBlock");						// 1
+			classRef(out,1);									// 2
+			utf8(out,"java/lang/Object");						// 3
+			classRef(out,3);									// 4
+			utf8(out,"isasim/CompiledBlock");					// 5
+			classRef(out,5);									// 6
+			utf8(out,"<init>");									// 7
+			utf8(out,"()V");									// 8
+			nameAndType(out,INIT_NAME,VOID_DESC);				// 9
+			memberRef(out,SUPER_CLASS,9);						// 10
+			utf8(out,"run");									// 11
+			utf8(out,"([ILisasim/Memory;)I");					// 12
+			utf8(out,"Code");									// 13
+			utf8(out,"isasim/Memory");							// 14
+			classRef(out,14);									// 15
+			utf8(out,"getWord");								// 16
+			utf8(out,"(I)I");									// 17
+			nameAndType(out,16,17);								// 18
+			memberRef(out,15,18);								// 19
+			utf8(out,"setWord");								// 20
+			utf8(out,"(II)V");									// 21
+			nameAndType(out,20,21);								// 22
+			memberRef(out,15,22);								// 23
+			for (int c : constants){
+				out.writeByte(3);
+				out.writeInt(c);
+			}
+
+			out.writeShort(0x0031);		// public final super
+			out.writeShort(THIS_CLASS);
+			out.writeShort(SUPER_CLASS);
+			out.writeShort(1);
+			out.writeShort(INTERFACE);
+			out.writeShort(0);			// fields
+
+			out.writeShort(2);			// methods
+			byte[] init = {(byte)ALOAD_0, (byte)INVOKESPECIAL, 0, (byte)OBJECT_INIT, (byte)RETURN};
+			method(out,INIT_NAME,VOID_DESC,1,1,init);
+			method(out,RUN_NAME,RUN_DESC,4,local(regCount) + 1,body);
+
+			out.writeShort(0);			// attributes
+		}
+		catch (IOException e){
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void utf8(DataOutputStream out, String s) throws IOException {
+		out.writeByte(1);
+		out.writeUTF(s);
+	}
+
+	private static void classRef(DataOutputStream out, int name) throws IOException {
+		out.writeByte(7);
+		out.writeShort(name);
+	}
+
+	private static void nameAndType(DataOutputStream out, int name, int desc) throws IOException {
+		out.writeByte(12);
+		out.writeShort(name);
+		out.writeShort(desc);
+	}
+
+	private static void memberRef(DataOutputStream out, int owner, int nameAndType) throws IOException {
+		out.writeByte(10);
+		out.writeShort(owner);
+		out.writeShort(nameAndType);
+	}
+
+	private static void method(DataOutputStream out, int name, int desc, int maxStack, int maxLocals, byte[] body) throws IOException {
+		out.writeShort(0x0001);		// public
+		out.writeShort(name);
+		out.writeShort(desc);
+		out.writeShort(1);
+		out.writeShort(CODE);
+		out.writeInt(12 + body.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(body.length);
+		out.write(body);
+		out.writeShort(0);			// exception table
+		out.writeShort(0);			// attributes
+	}
+}
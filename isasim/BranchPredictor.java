@@ -0,0 +1,477 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Branch predictor model of the ISA simulator
+* package "isasim".
+*
+* <p> A BranchPredictor watches the beq and j instructions of
+* a Processor and counts how often a fetch unit using it
+* would have guessed the next PC wrong. It only models the
+* timing: the Processor still branches as the beq decides.
+*
+* <p> A beq is predicted by one of the schemes:
+*		NOT_TAKEN: never taken.
+*		BACKWARD_TAKEN: taken if it branches backwards (a loop).
+*		ONE_BIT: taken if it was taken the last time.
+*		TWO_BIT: a saturating counter per entry, taken from 2 of 3.
+*		GSHARE: two-bit counters indexed by the PC xor the
+*				outcomes of the last history beq instructions.
+* The dynamic schemes keep entries counters (a power of two)
+* indexed by the low bits of the PC, so branches may share one.
+* A j is looked up in a direct-mapped branch target buffer of
+* btbEntries targets, and misses unless it holds this j.
+*
+* <p> Every mispredicted beq costs penalty cycles and every
+* BTB miss jumpPenalty cycles; a correctly predicted taken beq
+* is assumed to find its target in time. The counters,
+* history and buffer are primitive arrays and ints, and a
+* prediction allocates nothing.
+*
+* <p> Usage:
+*		java isasim.BranchPredictor [-scheme NAME,...]
+*			[-entries N,...] [-history BITS,...] [-btb N]
+*			[-penalty CYCLES] [-jump-penalty CYCLES] [-top N]
+*			[-limit CYCLES] [Config options]
+*			(file.isa | file.trace | directory)...
+* runs every listed scheme (default: all) with every table
+* size and history length over each program (on the
+* interpreter) or trace, and prints one row per program and
+* predictor; -top also lists the N beq instructions that were
+* mispredicted most.
+*
+* <p> Contained methods:
+*		branch(): predict and resolve one beq.
+*		jump(): look up one j in the branch target buffer.
+*		getAccuracy()/getMPKI(): how well it predicted.
+*		estimateCycles(): the cycles including the penalties.
+*		report(): the counts, and those of the worst beq.
+*
+**/
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class BranchPredictor {
+
+	public static final int DEFAULT_ENTRIES = 1024;
+	public static final int DEFAULT_HISTORY = 8;
+	public static final int DEFAULT_BTB_ENTRIES = 64;
+	// resolved in EX and ID by the Pipeline
+	public static final int DEFAULT_PENALTY = 2;
+	public static final int DEFAULT_JUMP_PENALTY = 1;
+
+	/** How a beq is predicted. */
+	public enum Scheme { NOT_TAKEN, BACKWARD_TAKEN, ONE_BIT, TWO_BIT, GSHARE }
+
+	private final Scheme scheme;
+	private final int entryMask;
+	private final int historyBits;
+	private int penalty = DEFAULT_PENALTY;
+	private int jumpPenalty = DEFAULT_JUMP_PENALTY;
+
+	// per entry: the last outcome (ONE_BIT) or a counter 0..3
+	private final byte[] counters;
+	// the outcomes of the last beq instructions, newest lowest
+	private int history;
+	private final int btbMask;
+	private final int[] btbAddresses;
+	private final int[] btbTargets;
+
+	private long branches;
+	private long taken;
+	private long mispredicts;
+	private long jumps;
+	private long btbMisses;
+
+	// per instruction address
+	private final long[] pcBranches;
+	private final long[] pcTaken;
+	private final long[] pcMispredicts;
+
+	/**
+	* BranchPredictor constructor.
+	*
+	* @param s the scheme predicting beq
+	* @param entries the counters of ONE_BIT, TWO_BIT and GSHARE
+	* @param historyLength the outcomes GSHARE remembers
+	* @param btbEntries the targets of the branch target buffer
+	* @param pcs the instruction addresses to count per PC
+	**/
+	public BranchPredictor(Scheme s, int entries, int historyLength, int btbEntries, int pcs){
+		if (Integer.bitCount(entries) != 1 || (btbEntries != 0 && Integer.bitCount(btbEntries) != 1)){
+			throw new IllegalArgumentException("predictor and BTB entries must be powers of two");
+		}
+		if (historyLength < 0 || historyLength > 30){
+			throw new IllegalArgumentException("history must be 0 to 30 bits, not " + historyLength);
+		}
+		scheme = s;
+		entryMask = entries - 1;
+		historyBits = historyLength;
+		counters = new byte[s == Scheme.NOT_TAKEN || s == Scheme.BACKWARD_TAKEN ? 0 : entries];
+		btbMask = btbEntries - 1;
+		btbAddresses = new int[btbEntries];
+		btbTargets = new int[btbEntries];
+		pcBranches = new long[pcs];
+		pcTaken = new long[pcs];
+		pcMispredicts = new long[pcs];
+		clear();
+	}
+
+	/**
+	* Set the costs of a wrong guess.
+	*
+	* @param branch the cycles lost by a mispredicted beq
+	* @param jump the cycles lost by a j missing the BTB
+	**/
+	public void setPenalties(int branch, int jump){
+		penalty = branch;
+		jumpPenalty = jump;
+	}
+
+	/**
+	* Forget everything learned and every count.
+	**/
+	public void clear(){
+		// two-bit counters start weakly not taken
+		Arrays.fill(counters,(byte)(scheme == Scheme.ONE_BIT ? 0 : 1));
+		history = 0;
+		Arrays.fill(btbAddresses,-1);
+		branches = taken = mispredicts = jumps = btbMisses = 0;
+		Arrays.fill(pcBranches,0);
+		Arrays.fill(pcTaken,0);
+		Arrays.fill(pcMispredicts,0);
+	}
+
+	/**
+	* Predict one beq, then learn its outcome.
+	*
+	* @param pc the address of the beq
+	* @param target the address it branches to if taken
+	* @param wasTaken true if it branched
+	* @return true if the prediction was right
+	**/
+	public boolean branch(int pc, int target, boolean wasTaken){
+		boolean predicted;
+		int i = 0;
+		switch (scheme){
+			case NOT_TAKEN:
+				predicted = false;
+				break;
+			case BACKWARD_TAKEN:
+				predicted = target <= pc;
+				break;
+			case ONE_BIT:
+				i = pc & entryMask;
+				predicted = counters[i] != 0;
+				counters[i] = (byte)(wasTaken ? 1 : 0);
+				break;
+			default:
+				i = (scheme == Scheme.GSHARE ? pc ^ history : pc) & entryMask;
+				predicted = counters[i] >= 2;
+				if (wasTaken){
+					if (counters[i] < 3) counters[i]++;
+				}
+				else if (counters[i] > 0) counters[i]--;
+				break;
+		}
+		history = ((history << 1) | (wasTaken ? 1 : 0)) & ((1 << historyBits) - 1);
+
+		boolean counted = pc >= 0 && pc < pcBranches.length;
+		branches++;
+		if (counted) pcBranches[pc]++;
+		if (wasTaken){
+			taken++;
+			if (counted) pcTaken[pc]++;
+		}
+		if (predicted == wasTaken) return true;
+		mispredicts++;
+		if (counted) pcMispredicts[pc]++;
+		return false;
+	}
+
+	/**
+	* Look up one j in the branch target buffer, then store it.
+	*
+	* @param pc the address of the j
+	* @param target the address it jumps to
+	* @return true if the buffer held the target
+	**/
+	public boolean jump(int pc, int target){
+		jumps++;
+		if (btbAddresses.length > 0){
+			int i = pc & btbMask;
+			if (btbAddresses[i] == pc && btbTargets[i] == target) return true;
+			btbAddresses[i] = pc;
+			btbTargets[i] = target;
+		}
+		btbMisses++;
+		return false;
+	}
+
+	public long getBranches(){ return branches; }
+	public long getTaken(){ return taken; }
+	public long getMispredicts(){ return mispredicts; }
+	public long getJumps(){ return jumps; }
+	public long getBTBMisses(){ return btbMisses; }
+
+	/**
+	* The fraction of beq predicted right.
+	*
+	* @return 1 before any beq
+	**/
+	public double getAccuracy(){
+		return branches == 0 ? 1 : 1 - (double)mispredicts / branches;
+	}
+
+	/**
+	* The mispredictions per thousand instructions.
+	*
+	* @param instructions the instructions of the run
+	* @return mispredicted beq and BTB misses per 1000 instructions
+	**/
+	public double getMPKI(long instructions){
+		return instructions == 0 ? 0 : 1000.0 * (mispredicts + btbMisses) / instructions;
+	}
+
+	/**
+	* The counts of one instruction address.
+	*
+	* @param pc the address
+	* @return {executions, taken, mispredictions} of the beq there
+	**/
+	public long[] getCounts(int pc){
+		if (pc < 0 || pc >= pcBranches.length) return new long[3];
+		return new long[] {pcBranches[pc],pcTaken[pc],pcMispredicts[pc]};
+	}
+
+	/**
+	* The cycles lost to wrong guesses.
+	*
+	* @return the beq and BTB penalties
+	**/
+	public long getPenaltyCycles(){
+		return mispredicts * penalty + btbMisses * jumpPenalty;
+	}
+
+	/**
+	* Estimate the cycles of a run with this predictor.
+	*
+	* @param cycles the cycles of the run if every guess were
+	* right
+	* @return the cycles plus the penalties
+	**/
+	public long estimateCycles(long cycles){
+		return cycles + getPenaltyCycles();
+	}
+
+	/**
+	* Describe what the predictor did.
+	*
+	* @param top the number of beq addresses to list
+	* @return the counts, and those of the top beq by mispredictions
+	**/
+	public String report(int top){
+		StringBuilder s = new StringBuilder();
+		s.append(String.format("%s: %d beq (%d taken), %d mispredicted (%.2f%% right), %d j, %d BTB misses, %d penalty cycles%n",
+				this,branches,taken,mispredicts,100 * getAccuracy(),jumps,btbMisses,getPenaltyCycles()));
+		Integer[] order = new Integer[pcMispredicts.length];
+		for (int i = 0; i < order.length; i++) order[i] = i;
+		Arrays.sort(order,(a, b) -> Long.compare(pcMispredicts[b],pcMispredicts[a]));
+		if (top > 0 && mispredicts > 0) s.append(String.format(" rank\t   pc\t%12s\t%12s\t%12s\taccuracy\t%12s%n","executed","taken","mispredicted","penalty"));
+		for (int r = 0; r < Math.min(top,order.length) && pcMispredicts[order[r]] > 0; r++){
+			int pc = order[r];
+			s.append(String.format("%5d\t%5d\t%12d\t%12d\t%12d\t%7.2f%%\t%12d%n",r + 1,pc,pcBranches[pc],pcTaken[pc],
+					pcMispredicts[pc],100 - 100.0 * pcMispredicts[pc] / pcBranches[pc],pcMispredicts[pc] * penalty));
+		}
+		return s.toString();
+	}
+
+	/**
+	* Describe this predictor.
+	*
+	* @return e.g. "gshare 1024 h8"
+	**/
+	public String toString(){
+		String name = scheme.name().toLowerCase();
+		if (counters.length == 0) return name;
+		if (scheme != Scheme.GSHARE) return name + " " + counters.length;
+		return name + " " + counters.length + " h" + historyBits;
+	}
+
+	/**
+	* The address a beq branches to if taken.
+	*
+	* @param pc the address of the beq
+	* @param immediate its sign-extended immediate
+	* @param width the register width
+	* @return the target as the Processor computes it
+	**/
+	static int target(int pc, int immediate, int width){
+		return Utilities.toSigned((pc + immediate) & Utilities.mask(width),width);
+	}
+
+	/**
+	* Parse a comma separated list of numbers.
+	**/
+	private static int[] numbers(String list){
+		String[] parts = list.split(",");
+		int[] n = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) n[i] = Integer.parseInt(parts[i].trim());
+		return n;
+	}
+
+	/**
+	* Feed the beq and j of a trace file to the predictors.
+	*
+	* The outcome of an instruction is read from the PC of
+	* the next record, so a beq or j in the last record is
+	* not counted.
+	*
+	* @return the instructions in the trace
+	**/
+	private static long replay(String filename, BranchPredictor[] predictors) throws IOException {
+		TraceReader r = new TraceReader(filename);
+		try {
+			int width = r.getRegisterWidth();
+			int pc = -1;
+			int instruction = 0;
+			while (r.next()){
+				int next = r.getPC();
+				Opcode op = pc < 0 ? null : Opcode.of(instruction);
+				if (op == Opcode.BEQ){
+					int target = target(pc,Utilities.toSigned(instruction & 0xFF,8),width);
+					for (BranchPredictor b : predictors) b.branch(pc,target,next != pc + 1);
+				}
+				else if (op == Opcode.J){
+					for (BranchPredictor b : predictors) b.jump(pc,next);
+				}
+				pc = next;
+				instruction = r.getInstruction();
+			}
+			return r.getRecords();
+		}
+		finally {
+			r.close();
+		}
+	}
+
+	/**
+	* Compare predictors over the programs and traces given on
+	* the command line.
+	*
+	* @param args options followed by .isa and .trace files and directories
+	**/
+	public static void main(String[] args){
+		List<Scheme> schemes = new ArrayList<Scheme>();
+		int[] entries = {DEFAULT_ENTRIES};
+		int[] histories = {DEFAULT_HISTORY};
+		int btb = DEFAULT_BTB_ENTRIES;
+		int branchPenalty = DEFAULT_PENALTY;
+		int jumpPenalty = DEFAULT_JUMP_PENALTY;
+		int top = 0;
+		long limit = BatchRunner.DEFAULT_LIMIT;
+		List<String> options = new ArrayList<String>();
+		Config config;
+		try {
+			config = Config.parse(args,options);
+		}
+		catch (IllegalArgumentException e){
+			System.out.println("ERROR: " + e.getMessage());
+			return;
+		}
+		List<String> paths = new ArrayList<String>();
+		try {
+			for (int i = 0; i < options.size(); i++){
+				switch (options.get(i)){
+					case "-scheme":
+						for (String name : options.get(++i).split(",")) schemes.add(Scheme.valueOf(name.trim().toUpperCase()));
+						break;
+					case "-entries":
+						entries = numbers(options.get(++i));
+						break;
+					case "-history":
+						histories = numbers(options.get(++i));
+						break;
+					case "-btb":
+						btb = Integer.parseInt(options.get(++i));
+						break;
+					case "-penalty":
+						branchPenalty = Integer.parseInt(options.get(++i));
+						break;
+					case "-jump-penalty":
+						jumpPenalty = Integer.parseInt(options.get(++i));
+						break;
+					case "-top":
+						top = Integer.parseInt(options.get(++i));
+						break;
+					case "-limit":
+						limit = Long.parseLong(options.get(++i));
+						break;
+					default:
+						paths.add(options.get(i));
+				}
+			}
+		}
+		catch (RuntimeException e){
+			System.out.println("usage: BranchPredictor [-scheme not_taken|backward_taken|one_bit|two_bit|gshare,...] [-entries N,...] [-history BITS,...] [-btb N] [-penalty CYCLES] [-jump-penalty CYCLES] [-top N] [-limit CYCLES] (file.isa | file.trace | directory)...");
+			return;
+		}
+		if (schemes.isEmpty()) schemes.addAll(Arrays.asList(Scheme.values()));
+		if (paths.isEmpty()) paths.add(WorkloadRunner.DIRECTORY);
+
+		List<BranchPredictor> sweep = new ArrayList<BranchPredictor>();
+		try {
+			for (Scheme s : schemes){
+				boolean table = s != Scheme.NOT_TAKEN && s != Scheme.BACKWARD_TAKEN;
+				for (int n : table ? entries : new int[] {1}){
+					for (int h : s == Scheme.GSHARE ? histories : new int[] {0}){
+						BranchPredictor b = new BranchPredictor(s,n,h,btb,config.imemSize);
+						b.setPenalties(branchPenalty,jumpPenalty);
+						sweep.add(b);
+					}
+				}
+			}
+		}
+		catch (IllegalArgumentException e){
+			System.out.println("ERROR: " + e.getMessage());
+			return;
+		}
+		BranchPredictor[] predictors = sweep.toArray(new BranchPredictor[0]);
+
+		System.out.println(String.format("BTB %d entries, mispredicted beq %d cycles, BTB miss %d cycles",btb,branchPenalty,jumpPenalty));
+		System.out.println("program\tpredictor\tbeq\ttaken\tmispredicted\taccuracy\tj\tbtb_misses\tMPKI\tcycles\test_cycles\tCPI");
+		for (String input : BatchRunner.programs(paths)){
+			for (BranchPredictor b : predictors) b.clear();
+			long instructions;
+			try {
+				if (input.endsWith(".trace")){
+					instructions = replay(input,predictors);
+				}
+				else {
+					Processor p = config.newProcessor(Assembler.assemble(input,config.imemSize,config.wordWidth),null,Engine.INTERPRETER);
+					for (BranchPredictor b : predictors) p.addPredictor(b);
+					p.execute(limit);
+					instructions = p.getCycles();
+				}
+			}
+			catch (IOException | IllegalArgumentException e){
+				System.out.println(input + "\terror: " + e.getMessage());
+				continue;
+			}
+			String name = new File(input).getName();
+			for (BranchPredictor b : predictors){
+				long estimate = b.estimateCycles(instructions);
+				System.out.println(String.format("%s\t%s\t%d\t%d\t%d\t%.4f\t%d\t%d\t%.3f\t%d\t%d\t%.3f",name,b,b.branches,b.taken,
+						b.mispredicts,b.getAccuracy(),b.jumps,b.btbMisses,b.getMPKI(instructions),instructions,estimate,
+						instructions == 0 ? 0 : (double)estimate / instructions));
+				if (top > 0) System.out.print(b.report(top));
+			}
+		}
+	}
+}
@@ -0,0 +1,445 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Breakpoints and watchpoints of a Processor
+* of the ISA simulator package "isasim".
+*
+* <p> A breakpoint stops execute() before the instruction at
+* its address runs; a conditional breakpoint only if a
+* register compares as given at that moment. A watchpoint
+* stops execute() before an mr (read) or mw (write) of its
+* data memory address, i.e. the address in the MAR. Single
+* steps (oneCycle()) are never stopped.
+*
+* <p> The addresses are kept in bitmaps, one bit per
+* instruction or data word. The Processor only consults them
+* while at least one breakpoint or watchpoint is set; with
+* none set, execute() runs exactly as fast as without this
+* class (the JIT engines keep running translated code). While
+* any are set, the JIT engines run one instruction at a time.
+*
+* <p> When execute() is called again after a stop, the
+* instruction it stopped at runs without stopping again.
+*
+* <p> Breakpoints can also be given as text, as the Simulator
+* does:
+*		pc N			break at address N
+*		pc N if &rX OP V	break there if register X OP V,
+*						OP being ==, !=, <, <=, > or >=
+*						and V a signed value
+*		read N			watch reads of data address N
+*		write N			watch writes of data address N
+*		access N		watch both
+* where the addresses are decimal or 0x hex.
+*
+* <p> Contained methods:
+*		addBreakpoint()/removeBreakpoint(): break at an address.
+*		addWatchpoint()/removeWatchpoint(): watch a data address.
+*		add()/remove(): the same, given as text.
+*		getHit(): the reason execute() last stopped.
+*		list(): every breakpoint and watchpoint as text.
+*
+**/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class Breakpoints {
+
+	public static final int READ = 1;
+	public static final int WRITE = 2;
+
+	private static final Pattern SPEC = Pattern.compile(
+			"\\s*(?:(pc|read|write|access)\\s+)?(\\S+)(?:\\s+if\\s+(.*))?");
+	private static final Pattern CONDITION = Pattern.compile(
+			"\\s*&?r(\\d+)\\s*(==|!=|<=|>=|<|>)\\s*(\\S+)\\s*");
+
+	private final Processor processor;
+	// addresses with a breakpoint of any kind, and with an unconditional one
+	private final long[] stops;
+	private final long[] always;
+	private final long[] reads;
+	private final long[] writes;
+	private final Map<Integer,List<Condition>> conditions = new TreeMap<Integer,List<Condition>>();
+	private boolean watching;
+
+	private String hit;
+	private long hitCycle = -1;
+	private int hitPc;
+
+	/**
+	* A comparison of a register with a value.
+	**/
+	public static final class Condition {
+		public final int register;
+		public final String op;
+		public final int value;
+
+		/**
+		* Condition constructor.
+		*
+		* @param r the register number
+		* @param o the comparison: ==, !=, <, <=, > or >=
+		* @param v the signed value to compare with
+		**/
+		public Condition(int r, String o, int v){
+			switch (o){
+				case "==":
+				case "!=":
+				case "<":
+				case "<=":
+				case ">":
+				case ">=":
+					break;
+				default:
+					throw new IllegalArgumentException("unknown comparison: " + o);
+			}
+			register = r; op = o; value = v;
+		}
+
+		/**
+		* Read a condition such as "&r3 == 0".
+		*
+		* @param text the condition
+		* @return the condition
+		**/
+		public static Condition parse(String text){
+			Matcher m = CONDITION.matcher(text);
+			if (!m.matches()) throw new IllegalArgumentException("not a condition: " + text);
+			try {
+				return new Condition(Integer.parseInt(m.group(1)),m.group(2),Integer.decode(m.group(3)));
+			}
+			catch (NumberFormatException e){
+				throw new IllegalArgumentException("not a value: " + m.group(3));
+			}
+		}
+
+		/**
+		* Compare the register of a Processor.
+		*
+		* @param p the Processor
+		* @return true if the condition holds
+		**/
+		public boolean holds(Processor p){
+			if (register >= p.regFileSize) return false;
+			int r = p.regFile[register].getSigned();
+			switch (op){
+				case "==": return r == value;
+				case "!=": return r != value;
+				case "<": return r < value;
+				case "<=": return r <= value;
+				case ">": return r > value;
+				default: return r >= value;
+			}
+		}
+
+		public boolean equals(Object o){
+			if (!(o instanceof Condition)) return false;
+			Condition c = (Condition)o;
+			return register == c.register && op.equals(c.op) && value == c.value;
+		}
+
+		public int hashCode(){
+			return (register * 31 + op.hashCode()) * 31 + value;
+		}
+
+		public String toString(){
+			return "&r" + register + " " + op + " " + value;
+		}
+	}
+
+	/**
+	* Breakpoints constructor.
+	*
+	* @param p the Processor to stop
+	**/
+	Breakpoints(Processor p){
+		processor = p;
+		stops = new long[(p.imemSize + 63) >>> 6];
+		always = new long[stops.length];
+		reads = new long[(p.dmemSize + 63) >>> 6];
+		writes = new long[reads.length];
+	}
+
+	private static boolean test(long[] bits, int i){
+		return (bits[i >>> 6] & (1L << i)) != 0;
+	}
+
+	private static void set(long[] bits, int i, boolean on){
+		if (on) bits[i >>> 6] |= 1L << i;
+		else bits[i >>> 6] &= ~(1L << i);
+	}
+
+	private static boolean any(long[] bits){
+		for (long b : bits) if (b != 0) return true;
+		return false;
+	}
+
+	private void checkAddress(int address, int size, String memory){
+		if (address < 0 || address >= size){
+			throw new IllegalArgumentException(memory + " address " + address + " is outside 0.." + (size - 1));
+		}
+	}
+
+	/**
+	* Arm the Processor if anything is set, disarm it if not.
+	**/
+	private void update(){
+		watching = any(reads) || any(writes);
+		processor.armed = watching || any(stops) ? this : null;
+	}
+
+	/**
+	* Break at an instruction address.
+	*
+	* @param pc the address
+	**/
+	public synchronized void addBreakpoint(int pc){
+		checkAddress(pc,processor.imemSize,"instruction");
+		set(always,pc,true);
+		set(stops,pc,true);
+		update();
+	}
+
+	/**
+	* Break at an instruction address if a condition holds.
+	*
+	* @param pc the address
+	* @param c the condition
+	**/
+	public synchronized void addBreakpoint(int pc, Condition c){
+		checkAddress(pc,processor.imemSize,"instruction");
+		List<Condition> list = conditions.get(pc);
+		if (list == null){
+			list = new ArrayList<Condition>();
+			conditions.put(pc,list);
+		}
+		if (!list.contains(c)) list.add(c);
+		set(stops,pc,true);
+		update();
+	}
+
+	/**
+	* Remove every breakpoint at an instruction address.
+	*
+	* @param pc the address
+	**/
+	public synchronized void removeBreakpoint(int pc){
+		if (pc < 0 || pc >= processor.imemSize) return;
+		conditions.remove(pc);
+		set(always,pc,false);
+		set(stops,pc,false);
+		update();
+	}
+
+	/**
+	* Remove one conditional breakpoint.
+	*
+	* @param pc the address
+	* @param c the condition
+	**/
+	public synchronized void removeBreakpoint(int pc, Condition c){
+		List<Condition> list = conditions.get(pc);
+		if (list == null || !list.remove(c)) return;
+		if (list.isEmpty()){
+			conditions.remove(pc);
+			if (!test(always,pc)) set(stops,pc,false);
+		}
+		update();
+	}
+
+	/**
+	* Remove the unconditional breakpoint at an address,
+	* keeping its conditional ones.
+	**/
+	private synchronized void removeUnconditional(int pc){
+		if (pc < 0 || pc >= processor.imemSize) return;
+		set(always,pc,false);
+		if (!conditions.containsKey(pc)) set(stops,pc,false);
+		update();
+	}
+
+	/**
+	* Watch the accesses to a data address.
+	*
+	* @param address the address
+	* @param access READ, WRITE or both
+	**/
+	public synchronized void addWatchpoint(int address, int access){
+		checkAddress(address,processor.dmemSize,"data");
+		if ((access & READ) != 0) set(reads,address,true);
+		if ((access & WRITE) != 0) set(writes,address,true);
+		update();
+	}
+
+	/**
+	* Stop watching accesses to a data address.
+	*
+	* @param address the address
+	* @param access READ, WRITE or both
+	**/
+	public synchronized void removeWatchpoint(int address, int access){
+		if (address < 0 || address >= processor.dmemSize) return;
+		if ((access & READ) != 0) set(reads,address,false);
+		if ((access & WRITE) != 0) set(writes,address,false);
+		update();
+	}
+
+	/**
+	* Remove every breakpoint and watchpoint.
+	**/
+	public synchronized void clear(){
+		for (int i = 0; i < stops.length; i++){
+			stops[i] = 0;
+			always[i] = 0;
+		}
+		for (int i = 0; i < reads.length; i++){
+			reads[i] = 0;
+			writes[i] = 0;
+		}
+		conditions.clear();
+		update();
+	}
+
+	/**
+	* Check whether any breakpoint or watchpoint is set.
+	*
+	* @return true if none is
+	**/
+	public boolean isEmpty(){
+		return processor.armed == null;
+	}
+
+	/**
+	* Set a breakpoint or watchpoint given as text.
+	*
+	* @param spec e.g. "pc 12", "pc 12 if &r3 == 0" or "write 0x40"
+	**/
+	public void add(String spec){
+		edit(spec,true);
+	}
+
+	/**
+	* Remove a breakpoint or watchpoint given as text, as
+	* list() gives it.
+	*
+	* @param spec e.g. "pc 12", "pc 12 if &r3 == 0" or "write 0x40"
+	**/
+	public void remove(String spec){
+		edit(spec,false);
+	}
+
+	private void edit(String spec, boolean add){
+		Matcher m = SPEC.matcher(spec);
+		if (!m.matches()) throw new IllegalArgumentException("not a breakpoint: " + spec);
+		String kind = m.group(1) == null ? "pc" : m.group(1);
+		int address;
+		try {
+			address = Integer.decode(m.group(2));
+		}
+		catch (NumberFormatException e){
+			throw new IllegalArgumentException("not an address: " + m.group(2));
+		}
+		if (m.group(3) != null && !kind.equals("pc")){
+			throw new IllegalArgumentException("only pc breakpoints take a condition: " + spec);
+		}
+		int access = kind.equals("read") ? READ : kind.equals("write") ? WRITE : READ | WRITE;
+		if (kind.equals("pc")){
+			if (m.group(3) != null){
+				Condition c = Condition.parse(m.group(3));
+				if (add) addBreakpoint(address,c);
+				else removeBreakpoint(address,c);
+			}
+			else if (add) addBreakpoint(address);
+			else removeUnconditional(address);
+		}
+		else if (add) addWatchpoint(address,access);
+		else removeWatchpoint(address,access);
+	}
+
+	/**
+	* Describe every breakpoint and watchpoint.
+	*
+	* @return one line per breakpoint or watchpoint, as add() reads them
+	**/
+	public synchronized List<String> list(){
+		List<String> lines = new ArrayList<String>();
+		for (int pc = 0; pc < processor.imemSize; pc++){
+			if (!test(stops,pc)) continue;
+			if (test(always,pc)) lines.add("pc " + pc);
+			List<Condition> list = conditions.get(pc);
+			if (list != null) for (Condition c : list) lines.add("pc " + pc + " if " + c);
+		}
+		for (int a = 0; a < processor.dmemSize; a++){
+			boolean r = test(reads,a);
+			boolean w = test(writes,a);
+			if (r && w) lines.add("access " + a);
+			else if (r) lines.add("read " + a);
+			else if (w) lines.add("write " + a);
+		}
+		return lines;
+	}
+
+	/**
+	* The reason execute() stopped, if it stopped at a
+	* breakpoint or watchpoint and the Processor has not
+	* moved since.
+	*
+	* @return the breakpoint or watchpoint hit, or null
+	**/
+	public String getHit(){
+		if (hitCycle != processor.getCycles() || hitPc != processor.PC.getWord()) return null;
+		return hit;
+	}
+
+	/**
+	* Check the instruction about to run, called by the
+	* Processor before each cycle of execute() while armed.
+	*
+	* @return true if execution must stop before it
+	**/
+	boolean check(){
+		int pc = processor.PC.getWord();
+		long cycle = processor.getCycles();
+		// resuming from the last stop
+		if (cycle == hitCycle && pc == hitPc) return false;
+		String reason = null;
+		if (pc < processor.imemSize && test(stops,pc)) reason = breakpoint(pc);
+		if (reason == null && watching) reason = watchpoint(pc);
+		if (reason == null) return false;
+		hit = reason;
+		hitCycle = cycle;
+		hitPc = pc;
+		return true;
+	}
+
+	/**
+	* The breakpoint at an address that stops now, or null.
+	**/
+	private synchronized String breakpoint(int pc){
+		if (test(always,pc)) return "pc " + pc;
+		List<Condition> list = conditions.get(pc);
+		if (list == null) return null;
+		for (Condition c : list) if (c.holds(processor)) return "pc " + pc + " if " + c;
+		return null;
+	}
+
+	/**
+	* The watchpoint the instruction at an address accesses, or null.
+	**/
+	private String watchpoint(int pc){
+		Opcode op = processor.decodeCache.get(pc).opcode;
+		if (op != Opcode.MR && op != Opcode.MW) return null;
+		int address = processor.MAR.getWord();
+		if (address >= processor.dmemSize) return null;
+		if (op == Opcode.MR && test(reads,address)) return "read " + address + " at pc " + pc;
+		if (op == Opcode.MW && test(writes,address)) return "write " + address + " at pc " + pc;
+		return null;
+	}
+}
@@ -0,0 +1,29 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: A basic block of ISA instructions
+* translated to JVM bytecode by the BlockCompiler.
+*
+* <p> A CompiledBlock works on a primitive copy of the
+* register file: state[0..n-1] hold the n registers and
+* state[n] holds the MAR. The data memory is accessed
+* directly by address.
+*
+* <p> Contained methods:
+*		run(): execute every instruction of the block.
+*
+**/
+
+public interface CompiledBlock {
+
+	/**
+	* Execute the block.
+	*
+	* @param state the register file followed by the MAR
+	* @param dataMemory the data memory of the Processor
+	* @return the PC of the next instruction to execute
+	**/
+	int run(int[] state, Memory dataMemory);
+}
@@ -0,0 +1,235 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Configuration of the ISA simulator
+* package "isasim".
+*
+* <p> A Config holds the sizes of the system (register
+* width and count, instruction and data memory capacity,
+* word width) and the memory files a Processor is tied to.
+* Every value starts at the defaults of the Simulator and
+* can be changed by a properties file and then by command
+* line options:
+*		-config FILE		read a properties file
+*		-regwidth N			register.width
+*		-regs N				register.count
+*		-imem N				imem.size
+*		-dmem N				dmem.size
+*		-wordwidth N		word.width
+*		-ifile NAME			imem.file
+*		-dfile NAME			dmem.file
+*		-offheap N			dmem.offheap
+* A file named "isasim.properties" in the working directory
+* is read first, if there is one.
+*
+* <p> Memories are sparse, so a data memory can be given
+* the whole address space of the MAR (e.g. -dmem 65536 for
+* 16-bit registers) and only the pages a program writes take
+* space. Registers are addressed by 4-bit fields, so there are
+* at most 16 of them and programs may only use the registers
+* that exist. Instructions are 16 bits, so words are at least
+* that wide.
+*
+* <p> A data memory of at least dmem.offheap words (1M by
+* default, 0 for always) is an OffHeapMemory instead, kept
+* outside of the Java heap and mapped from its file when
+* that is a ".img" image.
+*
+* <p> Contained methods:
+*		parse(): apply the options of a command line.
+*		load(): apply the values of a properties file.
+*		newProcessor(): create a Processor of this configuration.
+*		newCore(): create a Processor sharing a data memory.
+*
+**/
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import java.util.List;
+import java.util.Properties;
+
+public class Config {
+
+	public static final String DEFAULT_FILE = "isasim.properties";
+	public static final int DEFAULT_OFF_HEAP = 1 << 20;
+
+	public int regWidth = Simulator.REGISTER_WIDTH;
+	public int regFileSize = Simulator.REGISTER_FILE_SIZE;
+	public int imemSize = Simulator.INSTRUCTION_MEM_SIZE;
+	public int dmemSize = Simulator.DATA_MEM_SIZE;
+	public int wordWidth = Simulator.WORD_WIDTH;
+	public String instructionFile = Simulator.INSTR_FILE;
+	public String dataFile = Simulator.DAT_FILE;
+	public int offHeapSize = DEFAULT_OFF_HEAP;
+
+	/**
+	* Config constructor with the default values.
+	**/
+	public Config(){
+	}
+
+	/**
+	* Config constructor with the given sizes and files.
+	*
+	* @param rw Size of the registers
+	* @param rfs number of registers in the register file
+	* @param ims size of the instruction memory
+	* @param dms size of the data memory
+	* @param ww size of a word
+	* @param ifi filename of the instruction memory
+	* @param dfi filename of the data memory
+	**/
+	public Config(int rw, int rfs, int ims, int dms, int ww, String ifi, String dfi){
+		regWidth = rw; regFileSize = rfs; imemSize = ims; dmemSize = dms; wordWidth = ww;
+		instructionFile = ifi; dataFile = dfi;
+	}
+
+	/**
+	* Read a configuration from the command line.
+	*
+	* isasim.properties is applied first if it exists,
+	* then the options in the order they are given.
+	*
+	* @param args the command line
+	* @param rest receives every argument that is not a
+	* configuration option, in order (may be null)
+	* @return the configuration
+	* @throws IllegalArgumentException if an option or value is invalid
+	**/
+	public static Config parse(String[] args, List<String> rest){
+		Config c = new Config();
+		if (new File(DEFAULT_FILE).isFile()) c.load(DEFAULT_FILE);
+		for (int i = 0; i < args.length; i++){
+			String key = key(args[i]);
+			if (key == null && !args[i].equals("-config")){
+				if (rest != null) rest.add(args[i]);
+				continue;
+			}
+			if (i + 1 >= args.length) throw new IllegalArgumentException(args[i] + " needs a value");
+			if (key == null) c.load(args[++i]);
+			else c.set(key,args[++i]);
+		}
+		c.validate();
+		return c;
+	}
+
+	/**
+	* Apply the values of a properties file.
+	*
+	* @param filename the properties file
+	* @throws IllegalArgumentException if the file cannot be
+	* read or holds an invalid value
+	**/
+	public void load(String filename){
+		Properties p = new Properties();
+		try (Reader in = new FileReader(filename)){
+			p.load(in);
+		}
+		catch (IOException e){
+			throw new IllegalArgumentException("cannot read " + filename + ": " + e.getMessage());
+		}
+		for (String key : p.stringPropertyNames()) set(key,p.getProperty(key).trim());
+		validate();
+	}
+
+	/**
+	* Set one value by its property name.
+	**/
+	private void set(String key, String value){
+		try {
+			switch (key){
+				case "register.width": regWidth = Integer.parseInt(value); break;
+				case "register.count": regFileSize = Integer.parseInt(value); break;
+				case "imem.size": imemSize = Integer.parseInt(value); break;
+				case "dmem.size": dmemSize = Integer.parseInt(value); break;
+				case "word.width": wordWidth = Integer.parseInt(value); break;
+				case "imem.file": instructionFile = value; break;
+				case "dmem.file": dataFile = value; break;
+				case "dmem.offheap": offHeapSize = Integer.parseInt(value); break;
+				default: throw new IllegalArgumentException("unknown setting " + key);
+			}
+		}
+		catch (NumberFormatException e){
+			throw new IllegalArgumentException(key + ": not a number: " + value);
+		}
+	}
+
+	/**
+	* The property set by a command line option, or null.
+	**/
+	private static String key(String option){
+		switch (option){
+			case "-regwidth": return "register.width";
+			case "-regs": return "register.count";
+			case "-imem": return "imem.size";
+			case "-dmem": return "dmem.size";
+			case "-wordwidth": return "word.width";
+			case "-ifile": return "imem.file";
+			case "-dfile": return "dmem.file";
+			case "-offheap": return "dmem.offheap";
+			default: return null;
+		}
+	}
+
+	/**
+	* Check that the values describe a system that can be built.
+	**/
+	private void validate(){
+		if (regWidth < 1 || regWidth > 32) throw new IllegalArgumentException("register.width must be 1-32");
+		if (regFileSize < 1 || regFileSize > 16) throw new IllegalArgumentException("register.count must be 1-16");
+		if (wordWidth < 16 || wordWidth > 32) throw new IllegalArgumentException("word.width must be 16-32");
+		if (imemSize < 1) throw new IllegalArgumentException("imem.size must be positive");
+		if (dmemSize < 1) throw new IllegalArgumentException("dmem.size must be positive");
+		if (offHeapSize < 0) throw new IllegalArgumentException("dmem.offheap must not be negative");
+	}
+
+	/**
+	* Create a Processor tied to the memory files of this configuration.
+	*
+	* @param e the engine that executes instructions
+	* @return the new Processor
+	**/
+	public Processor newProcessor(Engine e){
+		return new Processor(this,e);
+	}
+
+	/**
+	* Create a Processor with in-memory images.
+	*
+	* @param instructions initial instruction memory words
+	* @param data initial data memory words (null for empty)
+	* @param e the engine that executes instructions
+	* @return the new Processor, not tied to any file
+	**/
+	public Processor newProcessor(int[] instructions, int[] data, Engine e){
+		return new Processor(this,instructions,data,e);
+	}
+
+	/**
+	* Create a Processor whose data memory is shared.
+	*
+	* @param instructions initial instruction memory words
+	* @param data the data memory it shares with other cores
+	* @param e the engine that executes instructions
+	* @return the new Processor, not tied to any file
+	**/
+	public Processor newCore(int[] instructions, SharedMemory data, Engine e){
+		return new Processor(this,instructions,data,e);
+	}
+
+	/**
+	* Describe this configuration.
+	*
+	* @return the values in properties form
+	**/
+	public String toString(){
+		return "register.width=" + regWidth + " register.count=" + regFileSize
+				+ " imem.size=" + imemSize + " dmem.size=" + dmemSize + " word.width=" + wordWidth
+				+ " imem.file=" + instructionFile + " dmem.file=" + dataFile + " dmem.offheap=" + offHeapSize;
+	}
+}
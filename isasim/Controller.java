@@ -27,6 +27,10 @@ package isasim;
 *			the control signals necessary
 *			to perform the given operation.
 *
+*<p> The MCW is also available as a bitfield for the
+* primitive datapath; the MCW_ constants give the bit
+* of each control signal, MSB first as in the String form.
+*
 *<p>Updated: 06/25/2017
 ************************************/
 
@@ -44,6 +48,30 @@ public class Controller {
 	private String SUB = "000001011";
 	private String NOR = "000010011";
 
+	//bit positions of the control signals in a bitfield MCW.
+	public static final int MCW_PCSRC = 1 << 8;
+	public static final int MCW_BRANCH = 1 << 7;
+	public static final int MCW_MEMWRITE = 1 << 6;
+	public static final int MCW_ALUSRC = 1 << 5;
+	public static final int MCW_ALUOP_SHIFT = 3;
+	public static final int MCW_ALUOP = 3 << MCW_ALUOP_SHIFT;
+	public static final int MCW_MAR = 1 << 2;
+	public static final int MCW_RWRITE = 1 << 1;
+	public static final int MCW_RSEL = 1;
+
+	//returned by the bitfield decoder for an unknown opcode/func.
+	public static final int INVALID = -1;
+
+	private final int LA_BITS = Utilities.binToWord(LA);
+	private final int MR_BITS = Utilities.binToWord(MR);
+	private final int MW_BITS = Utilities.binToWord(MW);
+	private final int ADDI_BITS = Utilities.binToWord(ADDI);
+	private final int BEQ_BITS = Utilities.binToWord(BEQ);
+	private final int J_BITS = Utilities.binToWord(J);
+	private final int ADD_BITS = Utilities.binToWord(ADD);
+	private final int SUB_BITS = Utilities.binToWord(SUB);
+	private final int NOR_BITS = Utilities.binToWord(NOR);
+
 	
 	public Controller(){}
 
@@ -106,4 +134,44 @@ public class Controller {
 				return null;
 		}
 	}
+
+	/**
+	*Determine the current MCW as a bitfield.
+	*
+	* The primitive form of controlWord(String). The
+	* opcode is held in bits 7-4 of opfunc and the func
+	* in bits 3-0.
+	*
+	* @param opfunc the concatenated opcode and func.
+	* @return the appropriate MCW, or INVALID.
+	**/
+	public int controlWord(int opfunc){
+		switch ((opfunc >>> 4) & 0xF) {
+			case 0x0:
+				switch (opfunc & 0xF) {
+					case 0x8:
+						return ADD_BITS;
+					case 0x1:
+						return SUB_BITS;
+					case 0x2:
+						return NOR_BITS;
+					default:
+						return INVALID;
+				}
+			case 0x1:
+				return LA_BITS;
+			case 0x2:
+				return MR_BITS;
+			case 0x6:
+				return MW_BITS;
+			case 0x4:
+				return ADDI_BITS;
+			case 0x7:
+				return BEQ_BITS;
+			case 0x8:
+				return J_BITS;
+			default:
+				return INVALID;
+		}
+	}
 }
@@ -0,0 +1,485 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Data cache model of the ISA simulator
+* package "isasim".
+*
+* <p> A DataCache watches the data memory accesses of a
+* Processor (every mr and mw, at the address in the MAR)
+* and counts what a cache between the datapath and the data
+* memory would do with them. It only models the timing: the
+* words still come from the Memory.
+*
+* <p> The cache holds size words in lines of lineWords words,
+* in sets of ways lines (1 way: direct mapped; size /
+* lineWords ways: fully associative); all three must be
+* powers of two. A set replaces its least recently used
+* line (LRU), its oldest line (FIFO) or a pseudo-random one
+* (RANDOM, from a fixed seed so runs repeat). A WRITE_BACK
+* cache allocates a line on a write miss and writes a dirty
+* line back when it is evicted; a WRITE_THROUGH cache writes
+* every mw to memory and does not allocate on a write miss.
+*
+* <p> The tags, dirty bits and ages are primitive arrays, and
+* an access allocates nothing, so many caches can watch the
+* same run (see Processor.addCache()) or the same trace.
+*
+* <p> The cycle estimate adds to the cycles without a cache
+* missPenalty cycles per line filled and per dirty line
+* written back, and writePenalty cycles per word written
+* through.
+*
+* <p> Usage:
+*		java isasim.DataCache [-size N,...] [-line N,...]
+*			[-ways N,...] [-replace lru|fifo|random,...]
+*			[-write back|through,...] [-miss CYCLES]
+*			[-write-penalty CYCLES] [-top N] [-limit CYCLES]
+*			[Config options] (file.isa | file.trace | directory)...
+* runs every combination of the listed values over each
+* program (on the interpreter) or trace, and prints one row
+* per program and cache; -top also lists the N instructions
+* with the most misses.
+*
+* <p> Contained methods:
+*		access(): simulate one access.
+*		getHits()/getMisses()/getEvictions(): the counts.
+*		estimateCycles(): the cycles including miss penalties.
+*		report(): the counts, and those of the worst PCs.
+*
+**/
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DataCache {
+
+	public static final int DEFAULT_MISS_PENALTY = 20;
+	public static final int DEFAULT_WRITE_PENALTY = 2;
+
+	/** The line a full set gives up. */
+	public enum Replacement { LRU, FIFO, RANDOM }
+
+	/** When writes reach the memory. */
+	public enum WritePolicy { WRITE_BACK, WRITE_THROUGH }
+
+	private final int size;
+	private final int lineWords;
+	private final int ways;
+	private final Replacement replacement;
+	private final WritePolicy writePolicy;
+	private final int lineShift;
+	private final int setMask;
+	private final int setShift;
+	private int missPenalty = DEFAULT_MISS_PENALTY;
+	private int writePenalty = DEFAULT_WRITE_PENALTY;
+
+	// per line: the tag (-1 when empty), dirty bit and age
+	private final int[] tags;
+	private final boolean[] dirty;
+	private final long[] ages;
+	private long clock;
+	private int random = 0x2545F491;
+
+	private long reads;
+	private long writes;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long writebacks;
+	private long writesThrough;
+	private long fills;
+
+	// per instruction address
+	private final long[] pcHits;
+	private final long[] pcMisses;
+	private final long[] pcEvictions;
+
+	/**
+	* DataCache constructor.
+	*
+	* @param sizeWords the words the cache holds
+	* @param line the words per line
+	* @param associativity the lines per set
+	* @param r the replacement policy
+	* @param w the write policy
+	* @param pcs the instruction addresses to count per PC
+	**/
+	public DataCache(int sizeWords, int line, int associativity, Replacement r, WritePolicy w, int pcs){
+		if (Integer.bitCount(sizeWords) != 1 || Integer.bitCount(line) != 1 || Integer.bitCount(associativity) != 1){
+			throw new IllegalArgumentException("cache size, line and ways must be powers of two");
+		}
+		if (line * associativity > sizeWords){
+			throw new IllegalArgumentException("a set of " + associativity + " lines of " + line + " words exceeds " + sizeWords + " words");
+		}
+		size = sizeWords;
+		lineWords = line;
+		ways = associativity;
+		replacement = r;
+		writePolicy = w;
+		lineShift = Integer.numberOfTrailingZeros(line);
+		int sets = sizeWords / line / associativity;
+		setMask = sets - 1;
+		setShift = Integer.numberOfTrailingZeros(sets);
+		tags = new int[sizeWords / line];
+		dirty = new boolean[tags.length];
+		ages = new long[tags.length];
+		pcHits = new long[pcs];
+		pcMisses = new long[pcs];
+		pcEvictions = new long[pcs];
+		clear();
+	}
+
+	/**
+	* Set the costs of going to memory.
+	*
+	* @param miss the cycles to fill or write back a line
+	* @param write the cycles to write one word through
+	**/
+	public void setPenalties(int miss, int write){
+		missPenalty = miss;
+		writePenalty = write;
+	}
+
+	/**
+	* Empty the cache and forget every count.
+	**/
+	public void clear(){
+		Arrays.fill(tags,-1);
+		Arrays.fill(dirty,false);
+		Arrays.fill(ages,0);
+		clock = 0;
+		reads = writes = hits = misses = evictions = writebacks = writesThrough = fills = 0;
+		Arrays.fill(pcHits,0);
+		Arrays.fill(pcMisses,0);
+		Arrays.fill(pcEvictions,0);
+	}
+
+	/**
+	* Simulate one access.
+	*
+	* @param pc the address of the mr or mw
+	* @param address the data address (the MAR)
+	* @param write true for mw
+	**/
+	public void access(int pc, int address, boolean write){
+		boolean counted = pc >= 0 && pc < pcHits.length;
+		if (write) writes++;
+		else reads++;
+		int block = address >>> lineShift;
+		int set = block & setMask;
+		int tag = block >>> setShift;
+		int base = set * ways;
+		clock++;
+
+		for (int i = base; i < base + ways; i++){
+			if (tags[i] != tag) continue;
+			hits++;
+			if (counted) pcHits[pc]++;
+			if (replacement == Replacement.LRU) ages[i] = clock;
+			if (write){
+				if (writePolicy == WritePolicy.WRITE_BACK) dirty[i] = true;
+				else writesThrough++;
+			}
+			return;
+		}
+
+		misses++;
+		if (counted) pcMisses[pc]++;
+		if (write && writePolicy == WritePolicy.WRITE_THROUGH){
+			// no allocation on a write miss
+			writesThrough++;
+			return;
+		}
+		fills++;
+		int victim = victim(base);
+		if (tags[victim] != -1){
+			evictions++;
+			if (counted) pcEvictions[pc]++;
+			if (dirty[victim]) writebacks++;
+		}
+		tags[victim] = tag;
+		dirty[victim] = write;
+		ages[victim] = clock;
+	}
+
+	/**
+	* The line of a set to fill: an empty one, else the one
+	* the replacement policy gives up.
+	**/
+	private int victim(int base){
+		for (int i = base; i < base + ways; i++) if (tags[i] == -1) return i;
+		if (replacement == Replacement.RANDOM){
+			random ^= random << 13;
+			random ^= random >>> 17;
+			random ^= random << 5;
+			return base + (random & (ways - 1));
+		}
+		// LRU and FIFO differ in when the age is set
+		int oldest = base;
+		for (int i = base + 1; i < base + ways; i++) if (ages[i] < ages[oldest]) oldest = i;
+		return oldest;
+	}
+
+	public long getReads(){ return reads; }
+	public long getWrites(){ return writes; }
+	public long getHits(){ return hits; }
+	public long getMisses(){ return misses; }
+	public long getEvictions(){ return evictions; }
+	public long getWritebacks(){ return writebacks; }
+	public long getWritesThrough(){ return writesThrough; }
+	public long getFills(){ return fills; }
+
+	/**
+	* The fraction of accesses that missed.
+	*
+	* @return misses / accesses, 0 before any access
+	**/
+	public double getMissRate(){
+		long accesses = reads + writes;
+		return accesses == 0 ? 0 : (double)misses / accesses;
+	}
+
+	/**
+	* The counts of one instruction address.
+	*
+	* @param pc the address
+	* @return {hits, misses, evictions} of the accesses made there
+	**/
+	public long[] getCounts(int pc){
+		if (pc < 0 || pc >= pcHits.length) return new long[3];
+		return new long[] {pcHits[pc],pcMisses[pc],pcEvictions[pc]};
+	}
+
+	/**
+	* The cycles spent waiting for the memory.
+	*
+	* Dirty lines still in the cache are not counted.
+	*
+	* @return the miss, write-back and write-through penalties
+	**/
+	public long getStallCycles(){
+		return (fills + writebacks) * missPenalty + writesThrough * writePenalty;
+	}
+
+	/**
+	* Estimate the cycles of a run with this cache.
+	*
+	* @param cycles the cycles of the run with memory that
+	* answers at once (e.g. the instructions of the single-cycle
+	* Processor, or the cycles of a Pipeline)
+	* @return the cycles plus the memory stall cycles
+	**/
+	public long estimateCycles(long cycles){
+		return cycles + getStallCycles();
+	}
+
+	/**
+	* Describe what the cache did.
+	*
+	* @param top the number of instruction addresses to list
+	* @return the counts, and those of the top addresses by misses
+	**/
+	public String report(int top){
+		StringBuilder s = new StringBuilder();
+		s.append(String.format("%s: %d reads, %d writes, %d hits, %d misses (%.2f%%), %d evictions, %d write-backs, %d written through%n",
+				this,reads,writes,hits,misses,100 * getMissRate(),evictions,writebacks,writesThrough));
+		Integer[] order = new Integer[pcMisses.length];
+		for (int i = 0; i < order.length; i++) order[i] = i;
+		Arrays.sort(order,(a, b) -> Long.compare(pcMisses[b],pcMisses[a]));
+		if (top > 0 && misses > 0) s.append(String.format(" rank\t   pc\t%12s\t%12s\t%12s\t share%n","hits","misses","evictions"));
+		for (int r = 0; r < Math.min(top,order.length) && pcMisses[order[r]] > 0; r++){
+			int pc = order[r];
+			s.append(String.format("%5d\t%5d\t%12d\t%12d\t%12d\t%5.1f%%%n",r + 1,pc,pcHits[pc],pcMisses[pc],pcEvictions[pc],
+					100.0 * pcMisses[pc] / misses));
+		}
+		return s.toString();
+	}
+
+	/**
+	* Describe this cache.
+	*
+	* @return e.g. "256w 4w/line 2-way lru write_back"
+	**/
+	public String toString(){
+		return String.format("%dw %dw/line %d-way %s %s",size,lineWords,ways,replacement.name().toLowerCase(),
+				writePolicy.name().toLowerCase());
+	}
+
+	/**
+	* Parse a comma separated list of numbers.
+	**/
+	private static int[] numbers(String list){
+		String[] parts = list.split(",");
+		int[] n = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) n[i] = Integer.parseInt(parts[i].trim());
+		return n;
+	}
+
+	/**
+	* Parse a comma separated list of enum constants, which may
+	* be given by their last word (e.g. "back" for WRITE_BACK).
+	**/
+	private static <E extends Enum<E>> List<E> constants(Class<E> type, String list){
+		List<E> values = new ArrayList<E>();
+		for (String part : list.split(",")){
+			String name = part.trim().toUpperCase();
+			E found = null;
+			for (E e : type.getEnumConstants()){
+				if (e.name().equals(name) || e.name().endsWith("_" + name)) found = e;
+			}
+			if (found == null) throw new IllegalArgumentException("unknown " + type.getSimpleName() + ": " + part);
+			values.add(found);
+		}
+		return values;
+	}
+
+	/**
+	* Feed the data accesses of a trace file to the caches.
+	*
+	* @return the instructions in the trace
+	**/
+	private static long replay(String filename, DataCache[] caches) throws IOException {
+		TraceReader r = new TraceReader(filename);
+		try {
+			while (r.next()){
+				int flags = r.getFlags();
+				if ((flags & (TraceRecorder.MEM_READ | TraceRecorder.MEM_WRITE)) == 0) continue;
+				boolean write = (flags & TraceRecorder.MEM_WRITE) != 0;
+				for (DataCache c : caches) c.access(r.getPC(),r.getAddress(),write);
+			}
+			return r.getRecords();
+		}
+		finally {
+			r.close();
+		}
+	}
+
+	/**
+	* Sweep cache configurations over the programs and traces
+	* given on the command line.
+	*
+	* @param args options followed by .isa and .trace files and directories
+	**/
+	public static void main(String[] args){
+		int[] sizes = {256};
+		int[] lines = {4};
+		int[] ways = {1};
+		List<Replacement> replacements = new ArrayList<Replacement>();
+		List<WritePolicy> writePolicies = new ArrayList<WritePolicy>();
+		int miss = DEFAULT_MISS_PENALTY;
+		int write = DEFAULT_WRITE_PENALTY;
+		int top = 0;
+		long limit = BatchRunner.DEFAULT_LIMIT;
+		List<String> options = new ArrayList<String>();
+		Config config;
+		try {
+			config = Config.parse(args,options);
+		}
+		catch (IllegalArgumentException e){
+			System.out.println("ERROR: " + e.getMessage());
+			return;
+		}
+		List<String> paths = new ArrayList<String>();
+		try {
+			for (int i = 0; i < options.size(); i++){
+				switch (options.get(i)){
+					case "-size":
+						sizes = numbers(options.get(++i));
+						break;
+					case "-line":
+						lines = numbers(options.get(++i));
+						break;
+					case "-ways":
+						ways = numbers(options.get(++i));
+						break;
+					case "-replace":
+						replacements = constants(Replacement.class,options.get(++i));
+						break;
+					case "-write":
+						writePolicies = constants(WritePolicy.class,options.get(++i));
+						break;
+					case "-miss":
+						miss = Integer.parseInt(options.get(++i));
+						break;
+					case "-write-penalty":
+						write = Integer.parseInt(options.get(++i));
+						break;
+					case "-top":
+						top = Integer.parseInt(options.get(++i));
+						break;
+					case "-limit":
+						limit = Long.parseLong(options.get(++i));
+						break;
+					default:
+						paths.add(options.get(i));
+				}
+			}
+		}
+		catch (RuntimeException e){
+			System.out.println("usage: DataCache [-size N,...] [-line N,...] [-ways N,...] [-replace lru|fifo|random,...] [-write back|through,...] [-miss CYCLES] [-write-penalty CYCLES] [-top N] [-limit CYCLES] (file.isa | file.trace | directory)...");
+			return;
+		}
+		if (replacements.isEmpty()) replacements.add(Replacement.LRU);
+		if (writePolicies.isEmpty()) writePolicies.add(WritePolicy.WRITE_BACK);
+		if (paths.isEmpty()) paths.add(WorkloadRunner.DIRECTORY);
+
+		List<DataCache> sweep = new ArrayList<DataCache>();
+		for (int size : sizes){
+			for (int line : lines){
+				for (int way : ways){
+					if (line * way > size) continue;
+					for (Replacement r : replacements){
+						for (WritePolicy w : writePolicies){
+							try {
+								DataCache c = new DataCache(size,line,way,r,w,config.imemSize);
+								c.setPenalties(miss,write);
+								sweep.add(c);
+							}
+							catch (IllegalArgumentException e){
+								System.out.println("ERROR: " + e.getMessage());
+								return;
+							}
+						}
+					}
+				}
+			}
+		}
+		DataCache[] caches = sweep.toArray(new DataCache[0]);
+
+		System.out.println(String.format("miss penalty %d cycles, write-through penalty %d cycles",miss,write));
+		System.out.println("program\tcache\taccesses\thits\tmisses\tmiss_rate\tevictions\twritebacks\twritten_through\tcycles\test_cycles\tCPI");
+		for (String input : BatchRunner.programs(paths)){
+			for (DataCache c : caches) c.clear();
+			long instructions;
+			try {
+				if (input.endsWith(".trace")){
+					instructions = replay(input,caches);
+				}
+				else {
+					Processor p = config.newProcessor(Assembler.assemble(input,config.imemSize,config.wordWidth),null,Engine.INTERPRETER);
+					for (DataCache c : caches) p.addCache(c);
+					p.execute(limit);
+					instructions = p.getCycles();
+				}
+			}
+			catch (IOException | IllegalArgumentException e){
+				System.out.println(input + "\terror: " + e.getMessage());
+				continue;
+			}
+			String name = new File(input).getName();
+			for (DataCache c : caches){
+				long estimate = c.estimateCycles(instructions);
+				System.out.println(String.format("%s\t%s\t%d\t%d\t%d\t%.4f\t%d\t%d\t%d\t%d\t%d\t%.3f",name,c,c.reads + c.writes,
+						c.hits,c.misses,c.getMissRate(),c.evictions,c.writebacks,c.writesThrough,instructions,estimate,
+						instructions == 0 ? 0 : (double)estimate / instructions));
+				if (top > 0) System.out.print(c.report(top));
+			}
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Predecoded instruction cache used
+* by the ISA simulator package "isasim".
+*
+* <p> The DecodeCache sits in front of the Controller.
+* The first time an instruction memory address is fetched,
+* its word is decoded into a DecodedInstruction and kept;
+* every later fetch of that address is a single array
+* lookup.
+*
+* <p> The cache has no way to see the instruction memory
+* change underneath it, so the Processor invalidates it
+* whenever the version of the instruction memory changes
+* (a recompile, or a reset after it was modified).
+*
+* <p> Contained methods:
+*		get(): the decoded instruction at an address.
+*		invalidate(): forget every decoded instruction.
+*		copyFrom(): take the decoded instructions of another cache.
+*
+**/
+
+public class DecodeCache {
+
+	private final Memory memory;
+	private final Controller controller;
+	private final SignExtend signEx;
+	private final DecodedInstruction[] lines;
+	private final DecodedInstruction outOfRange;
+
+	/**
+	* DecodeCache constructor.
+	*
+	* @param instructionMemory the memory holding the instruction words
+	* @param control the control unit providing the MCWs
+	* @param signExtend the sign-extend unit for immediates
+	**/
+	public DecodeCache(Memory instructionMemory, Controller control, SignExtend signExtend){
+		memory = instructionMemory;
+		controller = control;
+		signEx = signExtend;
+		lines = new DecodedInstruction[instructionMemory.getSize()];
+		outOfRange = new DecodedInstruction(0,controller,signEx);
+	}
+
+	/**
+	* Retrieve the decoded instruction at an address.
+	*
+	* Addresses outside of the instruction memory hold
+	* the empty (halt) instruction.
+	*
+	* @param address the instruction memory address
+	* @return the decoded instruction stored there
+	**/
+	public DecodedInstruction get(int address){
+		if (address < 0 || address >= lines.length) return outOfRange;
+		DecodedInstruction d = lines[address];
+		if (d == null){
+			d = new DecodedInstruction(memory.getWord(address),controller,signEx);
+			lines[address] = d;
+		}
+		return d;
+	}
+
+	/**
+	* Forget every decoded instruction.
+	*
+	* Must be called whenever the contents of the
+	* instruction memory are replaced.
+	**/
+	public void invalidate(){
+		for (int i = 0; i < lines.length; i++) lines[i] = null;
+	}
+
+	/**
+	* Take the decoded instructions of another cache.
+	*
+	* DecodedInstructions are immutable, so they are shared.
+	* Only valid while both instruction memories hold the
+	* same words.
+	*
+	* @param source a cache of the same size
+	**/
+	public void copyFrom(DecodeCache source){
+		System.arraycopy(source.lines,0,lines,0,Math.min(lines.length,source.lines.length));
+	}
+}
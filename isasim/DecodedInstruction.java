@@ -0,0 +1,79 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: An instruction word of the ISA simulator
+* package "isasim" with every field already extracted.
+*
+* <p> A DecodedInstruction is created once per instruction
+* memory word by the DecodeCache, so that the Processor
+* does not have to pull the operation, register addresses
+* and immediate out of the word on every cycle.
+*
+* <p> Fields:
+*		word: the raw instruction word.
+*		opcode: the operation of this instruction.
+*		ra, rb: the register addresses (unsigned). A
+*				field the operation does not read or write
+*				(rb of an I-type word, ra of j) is 0, so
+*				that every engine may index the register
+*				file with both.
+*		immediate: the 8-bit immediate sign-extended
+*				   to the register width.
+*		jump: the 12-bit pseudo-direct jump target.
+*		mcw: the bitfield mode control word given
+*			 by the Controller (Controller.INVALID if
+*			 the word does not decode).
+*
+**/
+
+public final class DecodedInstruction {
+
+	public final int word;
+	public final Opcode opcode;
+	public final int ra;
+	public final int rb;
+	public final int immediate;
+	public final int jump;
+	public final int mcw;
+
+	/**
+	* DecodedInstruction constructor.
+	*
+	* @param instruction the 16-bit instruction word
+	* @param controller the control unit providing the MCW
+	* @param signEx the sign-extend unit for the immediate,
+	* extending to the register width
+	**/
+	public DecodedInstruction(int instruction, Controller controller, SignExtend signEx){
+		word = instruction;
+		opcode = Opcode.of(instruction);
+		ra = usesRa(opcode) ? (instruction >>> 8) & 0xF : 0;
+		rb = opcode.isRType() ? (instruction >>> 4) & 0xF : 0;
+		immediate = signEx.signExtend(instruction & 0xFF,8);
+		jump = instruction & 0xFFF;
+		mcw = instruction == 0 ? 0 : controller.controlWord(((instruction >>> 8) & 0xF0) | (instruction & 0xF));
+	}
+
+	/**
+	* The highest register an instruction word names.
+	*
+	* @param instruction the instruction word
+	* @return the highest register address it reads or
+	* writes, or -1 if it uses none
+	**/
+	public static int highestRegister(int instruction){
+		Opcode op = Opcode.of(instruction);
+		if (!usesRa(op)) return -1;
+		int r = (instruction >>> 8) & 0xF;
+		return op.isRType() ? Math.max(r,(instruction >>> 4) & 0xF) : r;
+	}
+
+	/**
+	* Check whether an operation reads or writes register ra.
+	**/
+	private static boolean usesRa(Opcode op){
+		return op != Opcode.J && op != Opcode.HALT && op != Opcode.INVALID;
+	}
+}
@@ -0,0 +1,37 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: The execution engines available
+* to a Processor of the ISA simulator package "isasim".
+*
+* <p> STRUCTURAL runs each cycle through the datapath
+* Objects (Mux, ALU, SignExtend...) as the hardware would.
+* This is the reference behaviour of the simulator.
+*
+* <p> INTERPRETER runs each instruction directly on the
+* architectural state with a single switch; it produces
+* the same state as STRUCTURAL much faster.
+*
+* <p> CROSS_CHECK runs the interpreter and a structural
+* copy of the Processor in lockstep, and stops at the
+* first cycle where their state differs.
+*
+* <p> JIT interprets cold code and translates hot basic
+* blocks to JVM classes (see Translator). Single steps
+* are always interpreted, one instruction at a time.
+*
+* <p> JIT_CHECK runs the JIT engine against a structural
+* copy of the Processor, comparing their state after every
+* translated block or interpreted instruction.
+*
+**/
+
+public enum Engine {
+	STRUCTURAL,
+	INTERPRETER,
+	CROSS_CHECK,
+	JIT,
+	JIT_CHECK
+}
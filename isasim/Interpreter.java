@@ -0,0 +1,95 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Functional interpreter engine of the
+* ISA simulator package "isasim".
+*
+* <p> The Interpreter executes the instructions of a
+* Processor without going through its datapath Objects.
+* Each step fetches the predecoded instruction at the PC
+* and performs its effect on the registers, MAR and data
+* memory with one switch over the Opcode.
+*
+* <p> The resulting architectural state is the same as
+* that of Processor.tick(): la, mr, mw, addi, add, sub,
+* nor, beq and j behave exactly as their MCWs drive
+* the datapath.
+*
+* <p> Contained methods:
+*		step(): execute the instruction at the PC.
+*
+**/
+
+public class Interpreter {
+
+	private final Register PC;
+	private final Register MAR;
+	private final Register[] regFile;
+	private final Memory dataMemory;
+	private final DecodeCache decodeCache;
+
+	/**
+	* Interpreter constructor.
+	*
+	* The Interpreter works directly on the state
+	* held by the given Processor.
+	*
+	* @param p the Processor to execute.
+	**/
+	public Interpreter(Processor p){
+		PC = p.PC;
+		MAR = p.MAR;
+		regFile = p.regFile;
+		dataMemory = p.dataMemory;
+		decodeCache = p.decodeCache;
+	}
+
+	/**
+	* Execute one instruction.
+	*
+	* @return false if the instruction at the PC is empty or invalid.
+	**/
+	public boolean step(){
+		int pc = PC.getWord();
+		DecodedInstruction ins = decodeCache.get(pc);
+		Register RA = regFile[ins.ra];
+		switch (ins.opcode){
+			case LA:
+				MAR.setWord(RA.getWord() + ins.immediate);
+				break;
+			case MR:
+				RA.setWord(dataMemory.readWord());
+				break;
+			case MW:
+				dataMemory.writeWord(RA.getWord());
+				break;
+			case ADDI:
+				RA.setWord(RA.getWord() + ins.immediate);
+				break;
+			case ADD:
+				RA.setWord(RA.getWord() + regFile[ins.rb].getWord());
+				break;
+			case SUB:
+				RA.setWord(RA.getWord() - regFile[ins.rb].getWord());
+				break;
+			case NOR:
+				RA.setWord(~(RA.getWord() | regFile[ins.rb].getWord()));
+				break;
+			case BEQ:
+				if (RA.getWord() == 0){
+					PC.setWord(pc + ins.immediate);
+					return true;
+				}
+				break;
+			case J:
+				PC.setWord((pc & ~0xFFF) | ins.jump);
+				return true;
+			default:
+				return false;
+		}
+		PC.setWord(pc + 1);
+		return true;
+	}
+}
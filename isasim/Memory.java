@@ -36,6 +36,41 @@ package isasim;
 *			-writes the current data files to the 
 *			 data file assigned to this Object.
 *			 Utilized in termination of a running Process.
+*			-once the file is known to hold this Memory's
+*			 words, only the pages written since the last
+*			 store are rewritten, in place.
+*		readWord()/writeWord(): the primitive forms of
+*			 read() and write() used by the datapath.
+*		getValue()/getWord(): inspect any address
+*			 without going through the assigned Register.
+*		load()/restore(): replace the contents with an
+*			 in-memory image, and return to the image last
+*			 loaded without reading the file again.
+*		writeTo()/readFrom(): save the contents to, or load
+*			 them from, any file. Files named "*.img" use the
+*			 binary MemoryImage format; others are text.
+*		getMappedPages(): count the pages holding storage.
+*		snapshot()/restore(Snapshot): capture the contents
+*			 and return to them later.
+*		getWord(Snapshot): inspect a word of a snapshot.
+*
+*<p> Words are stored as primitive ints masked to
+* the word length. The binary String form of a word is
+* only created when it is requested (e.g. by the Gui).
+*
+*<p> The words are kept in pages of PAGE_WORDS words
+* that are only allocated when a non-zero word is stored
+* in them. A page that was never written costs one null
+* entry in the page table and reads as empty words, so a
+* Memory can span the whole address space of its Register
+* while only paying for the words a program uses.
+*
+*<p> Pages are shared copy-on-write: the image kept for
+* restore(), a snapshot() and a copy made by the copy
+* constructor or copyFrom() all hold the same page arrays,
+* and a page is only copied the first time it is written
+* after being shared. Taking a snapshot or a copy costs one
+* reference per page, and restoring one is as cheap.
 *
 *		Constructor:
 *			-given values for the Register,
@@ -55,16 +90,37 @@ import java.io.FileReader;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
 
 public class Memory {
  
-	private String emptyWord;
-	String[] data;
-	private int wordCount; 
-	private int wordLength;
-	private int size; 
-  	private Register register;
-	private String file;	
+	// words per page, the unit of allocation and of dirty tracking.
+	public static final int PAGE_WORDS = 256;
+	static final int PAGE_SHIFT = 8;
+	static final int PAGE_MASK = PAGE_WORDS - 1;
+	// the heap of one entry of a page table, as counted by snapshots
+	static final int REFERENCE_BYTES = 8;
+
+	private int[][] pages;
+	private boolean[] shared;
+	private boolean[] dirty;
+	private boolean synced;
+	private long syncedLength;
+	private long syncedModified;
+	private int[][] pristine;
+	boolean modified;
+	int version;
+	int wordCount; 
+	int wordLength;
+	int wordMask;
+	int size; 
+  	Register register;
+	String file;	
  
 	/**
 	* Memory object constructor.
@@ -94,19 +150,278 @@ public class Memory {
 	*
 	*******/
 	public Memory(int capacity,int length, String filename, Register addrRegister) {
-		data = new String[capacity];
+		pages = new int[pageCount(capacity)][];
+		shared = new boolean[pages.length];
+		dirty = new boolean[pages.length];
 		size = capacity;
 		wordCount = 0;
 		wordLength = length;
+		wordMask = Utilities.mask(length);
 		register = addrRegister;
 		file = filename;
-		emptyWord = "";
-		while (emptyWord.length() < wordLength) emptyWord = "0" + emptyWord;
 		
 		readFromMem();
 
 	}
 
+	/**
+	* Memory object constructor for an in-memory image.
+	*
+	* <p>The memory is filled from image instead of a file;
+	* missing words are empty and every word is masked to
+	* the word length. The object is not tied to any file.
+	*
+	* @param capacity overall size of this Memory object
+	* @param length word size for this Memory object
+	* @param image the initial words of this Memory object
+	* @param addrRegister the Register to use for addressing
+	**/
+	public Memory(int capacity, int length, int[] image, Register addrRegister) {
+		pages = new int[pageCount(capacity)][];
+		shared = new boolean[pages.length];
+		dirty = new boolean[pages.length];
+		size = capacity;
+		wordLength = length;
+		wordMask = Utilities.mask(length);
+		register = addrRegister;
+		file = null;
+		load(image);
+	}
+
+	/**
+	* Memory object constructor for subclasses that keep
+	* their words somewhere else than in pages.
+	*
+	* @param capacity overall size of this Memory object
+	* @param length word size for this Memory object
+	* @param addrRegister the Register to use for addressing
+	**/
+	Memory(int capacity, int length, Register addrRegister) {
+		size = capacity;
+		wordCount = capacity;
+		wordLength = length;
+		wordMask = Utilities.mask(length);
+		register = addrRegister;
+	}
+
+	/**
+	* Replace the contents of this object with an image.
+	*
+	* @param image the new words; missing words are empty.
+	**/
+	public void load(int[] image) {
+		int n = image == null ? 0 : Math.min(image.length,size);
+		for (int p = 0; p < pages.length; p++) pages[p] = null;
+		for (int i = 0; i < n; i++) put(i,image[i] & wordMask);
+		wordCount = size;
+		pristine = share();
+		modified = false;
+		version++;
+		synced = false;
+	}
+
+	/**
+	* Return this object to the contents it was loaded with.
+	*
+	* The pages last loaded by readFromMem() or load()
+	* are kept in memory and shared again, so this is
+	* neither a file read nor a copy of the words.
+	**/
+	public void restore() {
+		if (pristine == null || !modified) return;
+		setPages(pristine);
+		wordCount = size;
+		modified = false;
+		version++;
+	}
+
+	/**
+	* A capture of the contents of a Memory.
+	*
+	* A Snapshot shares its pages with the Memory it was
+	* taken from and is never changed, so it can be restored
+	* any number of times, into that Memory only.
+	*
+	* Its bytes, counted against an earlier snapshot of the
+	* same Memory, are the heap it holds that the earlier one
+	* does not: its page table and the pages written in
+	* between. Other snapshots taken in between do not change
+	* the count.
+	**/
+	public static final class Snapshot {
+		final int[][] pages;
+		final ByteBuffer words;
+		// an OffHeapMemory: its page copies, and what the others read
+		final ByteBuffer[] packed;
+		final OffHeapMemory.Origin origin;
+
+		Snapshot(int[][] p, ByteBuffer w){
+			pages = p;
+			words = w;
+			packed = null;
+			origin = null;
+		}
+
+		Snapshot(ByteBuffer[] p, OffHeapMemory.Origin o){
+			pages = null;
+			words = null;
+			packed = p;
+			origin = o;
+		}
+
+		/**
+		* The heap this snapshot holds that an earlier one does not.
+		*
+		* @param earlier a snapshot of the same Memory, or null
+		* @return an estimate in bytes
+		**/
+		public long getBytes(Snapshot earlier){
+			if (words != null) return words.capacity();
+			Object[] table = pages != null ? pages : packed;
+			Object[] before = earlier == null ? null : earlier.pages != null ? earlier.pages : earlier.packed;
+			long bytes = (long)table.length * REFERENCE_BYTES;
+			for (int p = 0; p < table.length; p++){
+				if (table[p] == null || (before != null && p < before.length && before[p] == table[p])) continue;
+				bytes += pages != null ? PAGE_WORDS * 4L : packed[p].capacity();
+			}
+			return bytes;
+		}
+	}
+
+	/**
+	* Capture the current contents of this object.
+	*
+	* No words are copied: the pages become shared with
+	* the snapshot and are copied on their next write.
+	*
+	* @return the snapshot
+	**/
+	public Snapshot snapshot() {
+		return new Snapshot(share(),null);
+	}
+
+	/**
+	* Return this object to the contents of a snapshot.
+	*
+	* Only the pages written since the snapshot differ, and
+	* only those are marked as changed. If none were written
+	* the version is kept, so decoded instructions stay valid.
+	*
+	* @param s a snapshot of this object
+	**/
+	public void restore(Snapshot s) {
+		if (s.pages == null) throw new IllegalArgumentException("not a snapshot of a paged Memory");
+		boolean same = true;
+		for (int p = 0; p < pages.length && same; p++) same = pages[p] == s.pages[p];
+		if (same) return;
+		setPages(s.pages);
+		wordCount = size;
+		modified = true;
+		version++;
+	}
+
+	/**
+	* Inspect a word of a snapshot of this object.
+	*
+	* The snapshot never changes, so this may be called by
+	* any thread while another one runs the Processor.
+	*
+	* @param s a snapshot of this object
+	* @param address the location to inspect
+	* @return the word at address, or 0 if it is out of range
+	**/
+	public int getWord(Snapshot s, int address) {
+		if (address < 0 || address >= size) return 0;
+		if (s.words != null) return s.words.getInt(address * 4);
+		int[] page = s.pages[address >>> PAGE_SHIFT];
+		return page == null ? 0 : page[address & PAGE_MASK];
+	}
+
+	/**
+	* Identify the current contents of this object.
+	*
+	* The version changes whenever the contents are
+	* replaced or return to the loaded image after a
+	* change, so anything derived from the words (such as
+	* decoded instructions) can tell when it is stale.
+	* Single word writes mark the contents as modified;
+	* the version moves when they are undone by restore().
+	*
+	* @return the version of the contents
+	**/
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	* Memory object copy constructor.
+	*
+	* <p>Creates a Memory with the same capacity,
+	* word length and contents as source, addressed
+	* by a different Register. The copy is not tied to
+	* any file; writeToMem() and readFromMem() leave it alone.
+	*
+	* @param source the Memory to copy
+	* @param addrRegister the Register to use for addressing
+	**/
+	public Memory(Memory source, Register addrRegister) {
+		pages = new int[pageCount(source.size)][];
+		shared = new boolean[pages.length];
+		dirty = new boolean[pages.length];
+		size = source.size;
+		wordLength = source.wordLength;
+		wordMask = source.wordMask;
+		register = addrRegister;
+		file = null;
+		copyFrom(source);
+		pristine = source.pristine;
+	}
+
+	/**
+	* Replace the contents of this object.
+	*
+	* @param source a Memory of the same capacity to copy from
+	**/
+	public void copyFrom(Memory source) {
+		if (source.pages == null){
+			for (int p = 0; p < pages.length; p++) pages[p] = null;
+			for (int i = 0; i < size; i++) put(i,source.getWord(i));
+			markAllDirty();
+		}
+		else setPages(source.share());
+		wordCount = source.wordCount;
+		modified = true;
+		version++;
+	}
+
+	/**
+	* Compare the contents of two Memory objects.
+	*
+	* @param other the Memory to compare against
+	* @return the first address holding different words, or -1
+	**/
+	public int firstDifference(Memory other) {
+		int n = Math.min(size,other.size);
+		if (other.pages == null){
+			for (int i = 0; i < n; i++){
+				if (getWord(i) != other.getWord(i)) return i;
+			}
+			return size == other.size ? -1 : n;
+		}
+		for (int p = 0; p < pages.length && p < other.pages.length; p++){
+			int[] a = pages[p];
+			int[] b = other.pages[p];
+			if (a == b) continue;
+			int from = p << PAGE_SHIFT;
+			int to = Math.min(n,from + PAGE_WORDS);
+			for (int i = from; i < to; i++){
+				int j = i & PAGE_MASK;
+				if ((a == null ? 0 : a[j]) != (b == null ? 0 : b[j])) return i;
+			}
+		}
+		return size == other.size ? -1 : n;
+	}
+
 	/**
 	* Store the current contents of this object.
 	* 
@@ -117,15 +432,184 @@ public class Memory {
 	*
 	**/
 	public void writeToMem(){
-		try (BufferedWriter outFile = new BufferedWriter(new FileWriter(file))){
+		if (file == null) return;
+		if (synced && unchangedOnDisk()){
+			flushDirty();
+			return;
+		}
+		if (writeTo(file) && wordCount == size) markSynced();
+		else synced = false;
+	}
+
+	/**
+	* Write the dirty pages of this object in place.
+	*
+	* Only valid while the file holds exactly the words
+	* of this object apart from its dirty pages: every word
+	* then sits at a fixed offset, in either format.
+	**/
+	private void flushDirty(){
+		boolean any = false;
+		for (boolean d : dirty) any |= d;
+		if (!any) return;
+		try {
+			if (MemoryImage.isImage(file)){
+				MemoryImage.update(file,pages,dirty);
+			}
+			else {
+				int line = wordLength + 1;
+				try (FileChannel channel = FileChannel.open(Paths.get(file),StandardOpenOption.WRITE)){
+					for (int p = 0; p < dirty.length; p++){
+						if (!dirty[p]) continue;
+						int from = p << PAGE_SHIFT;
+						int to = Math.min(size,from + PAGE_WORDS);
+						ByteBuffer buf = ByteBuffer.allocate((to - from) * line);
+						for (int i = from; i < to; i++){
+							int w = getWord(i);
+							for (int b = wordLength - 1; b > -1; b--) buf.put((byte)(((w >>> b) & 1) == 1 ? '1' : '0'));
+							buf.put((byte)'\n');
+						}
+						buf.flip();
+						long at = (long)from * line;
+						while (buf.hasRemaining()) at += channel.write(buf,at);
+					}
+				}
+			}
+			markSynced();
+		}
+		catch (IOException e){
+			synced = false;
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	* Record that the file now holds exactly this object's words.
+	**/
+	private void markSynced(){
+		for (int p = 0; p < dirty.length; p++) dirty[p] = false;
+		File f = new File(file);
+		synced = true;
+		syncedLength = f.length();
+		syncedModified = f.lastModified();
+	}
+
+	/**
+	* Check that nothing else has rewritten the file since it was synced.
+	**/
+	private boolean unchangedOnDisk(){
+		File f = new File(file);
+		return f.length() == syncedLength && f.lastModified() == syncedModified;
+	}
+
+	/**
+	* Mark every page as needing to be written.
+	**/
+	private void markAllDirty(){
+		for (int p = 0; p < dirty.length; p++) dirty[p] = true;
+	}
+
+	/**
+	* The number of pages needed for a capacity.
+	**/
+	private static int pageCount(int capacity){
+		return (int)(((long)capacity + PAGE_WORDS - 1) >>> PAGE_SHIFT);
+	}
+
+	/**
+	* Share every page of this object.
+	*
+	* @return a copy of the page table; every page in it
+	* will be copied before this object writes to it.
+	**/
+	private int[][] share(){
+		for (int p = 0; p < shared.length; p++) shared[p] = true;
+		return pages.clone();
+	}
+
+	/**
+	* Take the pages of a shared page table.
+	*
+	* Pages that are not already in place are marked as
+	* changed for the file.
+	**/
+	private void setPages(int[][] table){
+		for (int p = 0; p < pages.length; p++){
+			if (pages[p] != table[p]) dirty[p] = true;
+			pages[p] = table[p];
+			shared[p] = true;
+		}
+	}
+
+	/**
+	* Store a masked word, allocating its page only for a
+	* non-zero word and copying it if it is shared.
+	*
+	* @return false if the word was not changed
+	**/
+	private boolean put(int address, int word){
+		int p = address >>> PAGE_SHIFT;
+		int[] page = pages[p];
+		if (page == null){
+			if (word == 0) return false;
+			page = new int[PAGE_WORDS];
+			pages[p] = page;
+			shared[p] = false;
+		}
+		else if (shared[p]){
+			if (page[address & PAGE_MASK] == word) return false;
+			page = page.clone();
+			pages[p] = page;
+			shared[p] = false;
+		}
+		page[address & PAGE_MASK] = word;
+		return true;
+	}
+
+	/**
+	* Count the pages that hold storage.
+	*
+	* @return the number of allocated pages
+	**/
+	public int getMappedPages(){
+		int n = 0;
+		for (int[] page : pages) if (page != null) n++;
+		return n;
+	}
+
+	/**
+	* Store the current contents of this object in a file.
+	*
+	* Files named "*.img" are written in the binary
+	* MemoryImage format; any other file gets one binary
+	* word per line, in the text format. This is how a
+	* Memory that is not tied to a file can be saved
+	* explicitly, or exported to text.
+	*
+	* @param filename the file to write
+	* @return false if the file could not be written
+	**/
+	public boolean writeTo(String filename){
+		if (MemoryImage.isImage(filename)){
+			try {
+				MemoryImage.write(filename,pages,wordCount,wordLength);
+			}
+			catch (IOException e){
+				e.printStackTrace();
+				return false;
+			}
+			return true;
+		}
+		try (BufferedWriter outFile = new BufferedWriter(new FileWriter(filename))){
 			for (int i = 0; i < wordCount; i++){
-				outFile.write(data[i]+"\n");	
+				outFile.write(Utilities.wordToBin(getWord(i),wordLength)+"\n");	
 			}
-			outFile.close();
 		}
 		catch (IOException e){
 			e.printStackTrace();
+			return false;
 		}
+		return true;
 	}
 	
 	/**
@@ -137,17 +621,59 @@ public class Memory {
 	*
 	**/
 	public void readFromMem(){	
+		if (file == null) return;
+		readFrom(file);
+	}
+
+	/**
+	* Retrieve the data stored in a file.
+	*
+	* Files named "*.img" are read in the binary
+	* MemoryImage format, any other file as text. The
+	* words read become the image that restore() returns to.
+	*
+	* @param filename the file to read
+	**/
+	public void readFrom(String filename){
+		if (MemoryImage.isImage(filename)){
+			try {
+				boolean exact = MemoryImage.read(filename,pages,size,wordLength);
+				wordCount = size;
+				pristine = share();
+				modified = false;
+				version++;
+				synced = false;
+				if (exact && filename.equals(file)) markSynced();
+			}
+			catch (IOException e){
+				for (int p = 0; p < pages.length; p++) pages[p] = null;
+				wordCount = size;
+				synced = false;
+				e.printStackTrace();
+			}
+			return;
+		}
 		wordCount = 0;
-		try (BufferedReader inFile = new BufferedReader(new FileReader(file))){
+		boolean exact = true;
+		synced = false;
+		for (int p = 0; p < pages.length; p++) pages[p] = null;
+		try (BufferedReader inFile = new BufferedReader(new FileReader(filename))){
 			String word = inFile.readLine();
-			while (inFile.ready() && wordCount < size && word != null){
+			while (wordCount < size && word != null){
+				 exact &= word.length() == wordLength;
 				 addWord(word);
 				 word = inFile.readLine();
 			}
-			inFile.close();
-			while (wordCount <size) addWord(emptyWord);	
+			exact &= wordCount == size;
+			wordCount = size;
+			pristine = share();
+			modified = false;
+			version++;
+			if (exact && filename.equals(file)
+					&& new File(filename).length() == (long)size * (wordLength + 1)) markSynced();
 		}
 		catch (IOException e){
+			wordCount = size;
 			e.printStackTrace();
 		}
 	}
@@ -165,14 +691,26 @@ public class Memory {
 	* @param word the data word to be added to memory.
 	**/	
 	private void addWord(String word){
-		while (word.length() < wordLength) {
-			word = "0"+word;
-		}
-		if (word.length() > wordLength) word = word.substring(0,wordLength);
-		data[wordCount++] = word;
+		put(wordCount,toWord(word,wordLength));
+		wordCount++;
 		return;
 	}
 
+	/**
+	* Convert a line of a memory file to a word.
+	*
+	* The line is read as if it were prepadded with "0"'s
+	* or truncated to the given word length.
+	*
+	* @param word the binary data of the line.
+	* @param length the word length.
+	* @return the word bits.
+	**/
+	public static int toWord(String word, int length){
+		if (word.length() > length) word = word.substring(0,length);
+		return Utilities.binToWord(word);
+	}
+
 	/**
 	* Retrieve a data word from this object.
 	* This method will provide the data value
@@ -182,11 +720,23 @@ public class Memory {
 	* @return the data string stored at Memory[register.value]
 	**/
 	public String read(){
-		int address = Utilities.binToInt(register.getValue());
-		if(address >= size) return emptyWord;
-		return data[address];	
+		return Utilities.wordToBin(readWord(),wordLength);
 	}	
 
+	/**
+	* Retrieve a data word from this object as raw bits.
+	*
+	* The address held by the assigned Register is
+	* treated as unsigned; addresses beyond the capacity
+	* of this object, or in a page that was never written,
+	* read as an empty word (0).
+	*
+	* @return the word stored at Memory[register.value]
+	**/
+	public int readWord(){
+		return getWord(register.getWord());
+	}
+
 	/**
 	* Update this object's memory.
 	* This method will write the provided
@@ -197,10 +747,76 @@ public class Memory {
 	* @param dataIn the data to be written
 	**/
 	public void write(String dataIn) {
-		int address = Utilities.binToInt(register.getValue());
-		if(address >= size) return;
-		data[address] = dataIn;
+		writeWord(Utilities.binToWord(dataIn));
 	}	
+
+	/**
+	* Update this object's memory from raw bits.
+	*
+	* The word is masked to the word length of this
+	* object. Writes beyond the capacity are ignored.
+	*
+	* @param word the data to be written
+	**/
+	public void writeWord(int word) {
+		setWord(register.getWord(),word);
+	}
+
+	/**
+	* Inspect a word of this object.
+	*
+	* @param address the location to inspect
+	* @return the word at address, or 0 if it is out of range
+	**/
+	public int getWord(int address){
+		if(address < 0 || address >= size) return 0;
+		int[] page = pages[address >>> PAGE_SHIFT];
+		return page == null ? 0 : page[address & PAGE_MASK];
+	}
+
+	/**
+	* Update a word of this object by address.
+	*
+	* The word is masked to the word length of this
+	* object. Writes beyond the capacity are ignored.
+	*
+	* @param address the location to write
+	* @param word the data to be written
+	**/
+	public void setWord(int address, int word){
+		if(address < 0 || address >= size) return;
+		if (!put(address,word & wordMask)) return;
+		dirty[address >>> PAGE_SHIFT] = true;
+		modified = true;
+	}
+
+	/**
+	* Inspect a word of this object as a binary String.
+	*
+	* @param address the location to inspect
+	* @return the binary data at address
+	**/
+	public String getValue(int address){
+		return Utilities.wordToBin(getWord(address),wordLength);
+	}
+
+	/**
+	* Read the capacity of this object.
+	*
+	* @return the number of words held by this Memory
+	**/
+	public int getSize(){
+		return size;
+	}
+
+	/**
+	* Read the word length of this object.
+	*
+	* @return the number of bits in each word
+	**/
+	public int getWordLength(){
+		return wordLength;
+	}
 	
 	/**
 	* Empty the data memory.
@@ -208,11 +824,13 @@ public class Memory {
 	* The current data in this object
 	* will be replaced by zero data.
 	* the current state of this memory will
-	* be lost.
+	* be lost, and every page is released.
 	*/
 	public void clear(){
-		data = new String[size];
-		for (int i = 0; i < size; i++) data[i] = emptyWord;
+		for (int p = 0; p < pages.length; p++) pages[p] = null;
+		modified = true;
+		version++;
+		markAllDirty();
 		writeToMem();
 	}
 
@@ -0,0 +1,363 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Binary memory image format of the
+* ISA simulator package "isasim".
+*
+* <p> A memory image holds the words of a Memory packed
+* in binary, after a small header:
+*		bytes 0-3:	magic "ISAM"
+*		byte 4:		format version (1)
+*		byte 5:		word width in bits
+*		bytes 6-7:	bytes per stored word (1, 2 or 4)
+*		bytes 8-11:	capacity in words
+*		bytes 12-15: CRC32 of the words that follow
+* Words are stored big-endian in the smallest of 1, 2 or
+* 4 bytes that holds the word width, so a 16-bit word takes
+* 2 bytes instead of the 17 of a line in a text .dat file.
+*
+* <p> Images are read and written through memory-mapped
+* FileChannel buffers. Any file whose name ends in ".img"
+* is treated as an image by Memory; every other file is
+* read and written as text, which remains the import and
+* export format.
+*
+* <p> Contained methods:
+*		isImage(): check whether a file name is an image.
+*		read(): load the words of an image.
+*		write(): store words as an image.
+*		update(): rewrite only some pages of an image.
+*		map(): open an image as a private mapping.
+*		main(): convert between text and image files.
+*
+**/
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.zip.CRC32;
+
+public class MemoryImage {
+
+	public static final int MAGIC = 0x4953414D;		// "ISAM"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 16;
+	public static final String EXTENSION = ".img";
+
+	/**
+	* Check whether a file is stored in the image format.
+	*
+	* @param filename the name of the file
+	* @return true if the name ends in ".img"
+	**/
+	public static boolean isImage(String filename){
+		return filename.endsWith(EXTENSION);
+	}
+
+	/**
+	* The number of bytes used to store a word.
+	*
+	* @param width the word width in bits
+	* @return 1, 2 or 4
+	**/
+	public static int bytesPerWord(int width){
+		if (width <= 8) return 1;
+		if (width <= 16) return 2;
+		return 4;
+	}
+
+	/**
+	* Load the words of an image into a page table.
+	*
+	* Words beyond the capacity are skipped and missing
+	* words are left empty (0). Every word is masked to the
+	* word length of the reader. Pages of the table are only
+	* allocated for non-zero words; every other page is null.
+	*
+	* @param filename the image file
+	* @param pages the page table to fill (Memory.PAGE_WORDS words per page)
+	* @param capacity the number of words of the reader
+	* @param length the word length of the reader
+	* @return true if the image has exactly the layout that
+	* write() would give the reader (same capacity and width),
+	* so that its words can be updated in place.
+	* @throws IOException if the file is not a valid image
+	**/
+	public static boolean read(String filename, int[][] pages, int capacity, int length) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filename),StandardOpenOption.READ)){
+			long size = channel.size();
+			if (size < HEADER_SIZE) throw new IOException(filename + ": not a memory image");
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,0,size);
+			if (buf.getInt(0) != MAGIC) throw new IOException(filename + ": not a memory image");
+			if (buf.get(4) != VERSION) throw new IOException(filename + ": unsupported image version " + buf.get(4));
+			int stride = buf.getShort(6);
+			int stored = buf.getInt(8);
+			int checksum = buf.getInt(12);
+			if ((stride != 1 && stride != 2 && stride != 4) || stored < 0 || HEADER_SIZE + (long)stored * stride > size){
+				throw new IOException(filename + ": truncated memory image");
+			}
+
+			ByteBuffer payload = buf.duplicate();
+			payload.position(HEADER_SIZE);
+			payload.limit(HEADER_SIZE + stored * stride);
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			if ((int)crc.getValue() != checksum) throw new IOException(filename + ": checksum mismatch");
+
+			for (int p = 0; p < pages.length; p++) pages[p] = null;
+			int mask = Utilities.mask(length);
+			int n = Math.min(stored,capacity);
+			int at = HEADER_SIZE;
+			for (int i = 0; i < n; i++, at += stride){
+				int w;
+				if (stride == 1) w = buf.get(at) & 0xFF;
+				else if (stride == 2) w = buf.getShort(at) & 0xFFFF;
+				else w = buf.getInt(at);
+				w &= mask;
+				if (w == 0) continue;
+				int[] page = pages[i >>> Memory.PAGE_SHIFT];
+				if (page == null){
+					page = new int[Memory.PAGE_WORDS];
+					pages[i >>> Memory.PAGE_SHIFT] = page;
+				}
+				page[i & Memory.PAGE_MASK] = w;
+			}
+			return stored == capacity && buf.get(5) == length
+					&& stride == bytesPerWord(length) && size == HEADER_SIZE + (long)stored * stride;
+		}
+	}
+
+	/**
+	* Rewrite some pages of an image in place.
+	*
+	* The image must have the layout write() gives to
+	* the page table. Only the words of the dirty pages are
+	* stored, then the checksum is brought up to date.
+	*
+	* @param filename the image file
+	* @param pages the page table of the memory (null pages are empty)
+	* @param dirty one flag per page
+	* @throws IOException if the file cannot be written
+	**/
+	public static void update(String filename, int[][] pages, boolean[] dirty) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filename),StandardOpenOption.READ,StandardOpenOption.WRITE)){
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE,0,channel.size());
+			int stride = buf.getShort(6);
+			int capacity = buf.getInt(8);
+			for (int p = 0; p < dirty.length; p++){
+				if (!dirty[p]) continue;
+				putPage(buf,pages[p],p,capacity,stride);
+			}
+			ByteBuffer payload = buf.duplicate();
+			payload.position(HEADER_SIZE);
+			payload.limit(HEADER_SIZE + capacity * stride);
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			buf.putInt(12,(int)crc.getValue());
+		}
+	}
+
+	/**
+	* Store one page of words at its place in an image.
+	**/
+	private static void putPage(ByteBuffer buf, int[] page, int p, int count, int stride){
+		int from = p << Memory.PAGE_SHIFT;
+		int to = Math.min(count,from + Memory.PAGE_WORDS);
+		int at = HEADER_SIZE + from * stride;
+		for (int i = from; i < to; i++, at += stride){
+			int w = page == null ? 0 : page[i & Memory.PAGE_MASK];
+			if (stride == 1) buf.put(at,(byte)w);
+			else if (stride == 2) buf.putShort(at,(short)w);
+			else buf.putInt(at,w);
+		}
+	}
+
+	/**
+	* Store words as an image.
+	*
+	* @param filename the image file to (over)write
+	* @param pages the page table of the memory (null pages are empty)
+	* @param count the number of words to store
+	* @param length the word length in bits
+	* @throws IOException if the file cannot be written
+	**/
+	public static void write(String filename, int[][] pages, int count, int length) throws IOException {
+		int stride = bytesPerWord(length);
+		long size = HEADER_SIZE + (long)count * stride;
+		try (RandomAccessFile file = new RandomAccessFile(filename,"rw");
+				FileChannel channel = file.getChannel()){
+			file.setLength(size);
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE,0,size);
+			buf.putInt(0,MAGIC);
+			buf.put(4,(byte)VERSION);
+			buf.put(5,(byte)length);
+			buf.putShort(6,(short)stride);
+			buf.putInt(8,count);
+			for (int p = 0; p < pages.length && p << Memory.PAGE_SHIFT < count; p++){
+				putPage(buf,pages[p],p,count,stride);
+			}
+			ByteBuffer payload = buf.duplicate();
+			payload.position(HEADER_SIZE);
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			buf.putInt(12,(int)crc.getValue());
+		}
+	}
+
+	/**
+	* Store words packed in a buffer as an image.
+	*
+	* @param filename the image file to (over)write
+	* @param words count words packed at the stride of length,
+	* from position 0 (the buffer itself is not moved)
+	* @param count the number of words to store
+	* @param length the word length in bits
+	* @throws IOException if the file cannot be written
+	**/
+	public static void write(String filename, ByteBuffer words, int count, int length) throws IOException {
+		int stride = bytesPerWord(length);
+		ByteBuffer payload = words.duplicate();
+		payload.position(0);
+		payload.limit(count * stride);
+		try (RandomAccessFile file = new RandomAccessFile(filename,"rw");
+				FileChannel channel = file.getChannel()){
+			file.setLength(HEADER_SIZE + (long)count * stride);
+			ByteBuffer header = header(length,stride,count,checksum(payload.duplicate()));
+			while (header.hasRemaining()) channel.write(header,header.position());
+			long at = HEADER_SIZE;
+			while (payload.hasRemaining()) at += channel.write(payload,at);
+		}
+	}
+
+	/**
+	* Open an image as a private (copy-on-write) mapping.
+	*
+	* A missing file is first created as an empty image
+	* of the given capacity and width. Nothing is read, so
+	* this takes the same time for any size of image; the
+	* checksum is not verified. Stores to the mapping are not
+	* seen by the file until they are written with update().
+	*
+	* @param filename the image file
+	* @param capacity the number of words
+	* @param length the word length in bits
+	* @return the whole image (header included), or null if
+	* the file is not an image of exactly this layout.
+	* @throws IOException if the file cannot be opened or created
+	**/
+	public static MappedByteBuffer map(String filename, int capacity, int length) throws IOException {
+		int stride = bytesPerWord(length);
+		long size = HEADER_SIZE + (long)capacity * stride;
+		if (size > Integer.MAX_VALUE) throw new IOException(filename + ": image too large to map");
+		if (!new java.io.File(filename).exists()){
+			try (RandomAccessFile file = new RandomAccessFile(filename,"rw");
+					FileChannel channel = file.getChannel()){
+				file.setLength(size);
+				CRC32 crc = new CRC32();
+				ByteBuffer zeros = ByteBuffer.allocate(65536);
+				for (long left = size - HEADER_SIZE; left > 0; left -= zeros.capacity()){
+					zeros.clear();
+					if (left < zeros.capacity()) zeros.limit((int)left);
+					crc.update(zeros);
+				}
+				ByteBuffer header = header(length,stride,capacity,(int)crc.getValue());
+				while (header.hasRemaining()) channel.write(header,header.position());
+			}
+		}
+		try (FileChannel channel = FileChannel.open(Paths.get(filename),StandardOpenOption.READ,StandardOpenOption.WRITE)){
+			if (channel.size() != size) return null;
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.PRIVATE,0,size);
+			if (buf.getInt(0) != MAGIC || buf.get(4) != VERSION || buf.get(5) != length
+					|| buf.getShort(6) != stride || buf.getInt(8) != capacity) return null;
+			return buf;
+		}
+	}
+
+	/**
+	* Rewrite some pages of a mapped image in its file.
+	*
+	* The pages are copied from the mapping, then the
+	* checksum of the mapping is stored in both.
+	*
+	* @param filename the image file the mapping was made from
+	* @param image the mapping returned by map()
+	* @param dirty one flag per page of Memory.PAGE_WORDS words
+	* @throws IOException if the file cannot be written
+	**/
+	public static void update(String filename, ByteBuffer image, boolean[] dirty) throws IOException {
+		int stride = image.getShort(6);
+		int capacity = image.getInt(8);
+		try (FileChannel channel = FileChannel.open(Paths.get(filename),StandardOpenOption.WRITE)){
+			for (int p = 0; p < dirty.length; p++){
+				if (!dirty[p]) continue;
+				int from = p << Memory.PAGE_SHIFT;
+				int to = Math.min(capacity,from + Memory.PAGE_WORDS);
+				ByteBuffer page = image.duplicate();
+				page.limit(HEADER_SIZE + to * stride);
+				page.position(HEADER_SIZE + from * stride);
+				long at = page.position();
+				while (page.hasRemaining()) at += channel.write(page,at);
+			}
+			ByteBuffer payload = image.duplicate();
+			payload.limit(HEADER_SIZE + capacity * stride);
+			payload.position(HEADER_SIZE);
+			int crc = checksum(payload);
+			image.putInt(12,crc);
+			ByteBuffer header = image.duplicate();
+			header.position(0);
+			header.limit(HEADER_SIZE);
+			while (header.hasRemaining()) channel.write(header,header.position());
+		}
+	}
+
+	/**
+	* The CRC32 of the remaining bytes of a buffer.
+	**/
+	private static int checksum(ByteBuffer payload){
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		return (int)crc.getValue();
+	}
+
+	/**
+	* Build the header of an image.
+	**/
+	private static ByteBuffer header(int length, int stride, int capacity, int crc){
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(0,MAGIC);
+		header.put(4,(byte)VERSION);
+		header.put(5,(byte)length);
+		header.putShort(6,(short)stride);
+		header.putInt(8,capacity);
+		header.putInt(12,crc);
+		return header;
+	}
+
+	/**
+	* Convert a memory file between the text and image formats.
+	*
+	* The format of each file is given by its name.
+	*
+	* @param args the input file, the output file, and
+	* optionally the capacity and word length (default 128 16)
+	**/
+	public static void main(String[] args){
+		if (args.length < 2){
+			System.out.println("usage: MemoryImage in.(dat|img) out.(dat|img) [capacity] [wordLength]");
+			return;
+		}
+		int capacity = args.length > 2 ? Integer.parseInt(args[2]) : Simulator.DATA_MEM_SIZE;
+		int length = args.length > 3 ? Integer.parseInt(args[3]) : Simulator.WORD_WIDTH;
+		Memory m = new Memory(capacity,length,(int[])null,new Register(32));
+		m.readFrom(args[0]);
+		m.writeTo(args[1]);
+	}
+}
@@ -0,0 +1,255 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Memory panel of the Gui of the ISA
+* simulator package "isasim".
+*
+* <p> A MemoryView lists the words of a Memory in a JTable
+* whose model reads straight from a snapshot of the Memory,
+* so only the rows that are visible are ever read or
+* rendered and a memory of any size scrolls at the same speed. Each row
+* shows the address, the word in binary and either its
+* signed value or, for the instruction memory, the
+* instruction as the Simulator shows it.
+*
+* <p> One address is marked (the PC for the instruction
+* memory, the MAR for the data memory). With "Follow"
+* checked, the view scrolls to keep the mark visible. An
+* address typed in the jump field (decimal or 0x hex) is
+* selected and scrolled to, and stops following.
+*
+* <p> The live Memory is never read by the view, since a
+* program running on another thread may be changing it.
+* The Simulator takes a snapshot (copy-on-write, so cheap)
+* on that thread with each frame it shows, and refresh()
+* repaints the visible rows whose words differ from those
+* of the previous snapshot.
+*
+* <p> Contained methods:
+*		refresh(): move the mark and repaint changed rows.
+*		jumpTo(): select and show an address.
+*
+**/
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.Point;
+import java.awt.Rectangle;
+
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+public class MemoryView extends JPanel {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Memory memory;
+	private final boolean instructions;
+	private final Model model;
+	private final JTable table;
+	private final JTextField jump;
+	private final JCheckBox follow;
+	// the contents shown, never changed by the running program
+	private Memory.Snapshot contents;
+	// the marked address, -1 for none
+	private int mark = -1;
+	// the words of rows first.. as last refreshed
+	private int first;
+	private int[] shownWords = new int[0];
+
+	/**
+	* MemoryView constructor.
+	*
+	* @param m the Memory to list, which no thread may be
+	* running a program on while the view is created
+	* @param ins true to show the words as instructions
+	* @param markName the name of the register marking an
+	* address, e.g. "PC"
+	* @param following true to start following the mark
+	**/
+	public MemoryView(Memory m, boolean ins, String markName, boolean following){
+		memory = m;
+		contents = m.snapshot();
+		instructions = ins;
+		model = new Model();
+		table = new JTable(model);
+		table.setFont(new Font(Font.MONOSPACED,Font.PLAIN,12));
+		table.setRowHeight(table.getFontMetrics(table.getFont()).getHeight() + 2);
+		table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		table.setDefaultRenderer(Object.class,new Renderer());
+		table.getTableHeader().setReorderingAllowed(false);
+		table.getColumnModel().getColumn(0).setPreferredWidth(50);
+		table.getColumnModel().getColumn(1).setPreferredWidth(130);
+		table.getColumnModel().getColumn(2).setPreferredWidth(instructions ? 110 : 60);
+
+		jump = new JTextField(6);
+		jump.setToolTipText("address to show, decimal or 0x hex");
+		jump.addActionListener(e -> jumpTo(jump.getText()));
+		follow = new JCheckBox("Follow " + markName,following);
+		follow.addActionListener(e -> {
+			if (follow.isSelected()) show(mark);
+		});
+
+		JPanel controls = new JPanel();
+		controls.add(new JLabel("Go to"));
+		controls.add(jump);
+		controls.add(follow);
+		JScrollPane scroll = new JScrollPane(table);
+		scroll.getVerticalScrollBar().setUnitIncrement(table.getRowHeight());
+		setLayout(new BorderLayout());
+		add(scroll,BorderLayout.CENTER);
+		add(controls,BorderLayout.SOUTH);
+	}
+
+	/**
+	* Show a new snapshot, move the mark and repaint the
+	* visible rows whose words changed since the last refresh.
+	*
+	* Must be called on the Swing event thread.
+	*
+	* @param address the address to mark, or -1 for none
+	* @param s a snapshot of the Memory, taken by the thread
+	* running the program (or while none runs)
+	**/
+	public void refresh(int address, Memory.Snapshot s){
+		contents = s;
+		int old = mark;
+		mark = address >= 0 && address < memory.getSize() ? address : -1;
+		if (follow.isSelected()) show(mark);
+
+		Rectangle visible = table.getVisibleRect();
+		int top = table.rowAtPoint(visible.getLocation());
+		int bottom = table.rowAtPoint(new Point(visible.x,visible.y + visible.height - 1));
+		if (top < 0) top = 0;
+		if (bottom < 0) bottom = model.getRowCount() - 1;
+		int rows = Math.max(0,bottom - top + 1);
+		if (top != first || rows != shownWords.length){
+			// scrolled: everything visible is repainted once
+			first = top;
+			shownWords = new int[rows];
+			for (int i = 0; i < rows; i++) shownWords[i] = memory.getWord(contents,top + i);
+			if (rows > 0) model.fireTableRowsUpdated(top,bottom);
+		}
+		else {
+			for (int i = 0; i < rows; i++){
+				int w = memory.getWord(contents,top + i);
+				if (w == shownWords[i]) continue;
+				shownWords[i] = w;
+				model.fireTableRowsUpdated(top + i,top + i);
+			}
+		}
+		if (old != mark){
+			repaintRow(old);
+			repaintRow(mark);
+		}
+	}
+
+	/**
+	* Select and show an address, and stop following the mark.
+	*
+	* @param text the address, decimal or 0x hex
+	**/
+	public void jumpTo(String text){
+		int address;
+		try {
+			address = Integer.decode(text.trim());
+		}
+		catch (NumberFormatException e){
+			JOptionPane.showMessageDialog(this,"Not an address: " + text);
+			return;
+		}
+		if (address < 0 || address >= memory.getSize()){
+			JOptionPane.showMessageDialog(this,"Address " + address + " is outside 0.." + (memory.getSize() - 1));
+			return;
+		}
+		follow.setSelected(false);
+		table.getSelectionModel().setSelectionInterval(address,address);
+		show(address);
+	}
+
+	/**
+	* Scroll so that a row is visible.
+	**/
+	private void show(int row){
+		if (row < 0 || row >= model.getRowCount()) return;
+		Rectangle cell = table.getCellRect(row,0,true);
+		if (!table.getVisibleRect().contains(cell)) table.scrollRectToVisible(cell);
+	}
+
+	/**
+	* Repaint one row, if it exists.
+	**/
+	private void repaintRow(int row){
+		if (row < 0 || row >= model.getRowCount()) return;
+		Rectangle cell = table.getCellRect(row,0,true);
+		table.repaint(0,cell.y,table.getWidth(),cell.height);
+	}
+
+	/**
+	* The words of the Memory, one row per address.
+	**/
+	private class Model extends AbstractTableModel {
+
+		private static final long serialVersionUID = 1L;
+
+		public int getRowCount(){
+			return memory.getSize();
+		}
+
+		public int getColumnCount(){
+			return 3;
+		}
+
+		public String getColumnName(int column){
+			switch (column){
+				case 0:
+					return "address";
+				case 1:
+					return "word";
+				default:
+					return instructions ? "instruction" : "value";
+			}
+		}
+
+		public Object getValueAt(int row, int column){
+			int word = memory.getWord(contents,row);
+			int width = memory.getWordLength();
+			switch (column){
+				case 0:
+					return row;
+				case 1:
+					return Utilities.wordToBin(word,width);
+				default:
+					if (!instructions) return Utilities.toSigned(word,width);
+					return width == 16 ? Simulator.instString(Utilities.wordToBin(word,width)) : "";
+			}
+		}
+	}
+
+	/**
+	* Draws the marked row grey, as the Simulator always has.
+	**/
+	private class Renderer extends DefaultTableCellRenderer {
+
+		private static final long serialVersionUID = 1L;
+
+		public Component getTableCellRendererComponent(JTable t, Object value, boolean selected,
+				boolean focus, int row, int column){
+			Component c = super.getTableCellRendererComponent(t,value,selected,focus,row,column);
+			if (!selected) c.setBackground(row == mark ? Color.GRAY : Color.WHITE);
+			return c;
+		}
+	}
+}
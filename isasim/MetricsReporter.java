@@ -0,0 +1,34 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Receiver of the execution counters of the
+* ISA simulator package "isasim".
+*
+* <p> A MetricsReporter connects the counters of running
+* Processors to a dashboard, a log or any other metrics
+* system. Once added with ProcessorMetrics.addReporter(), it
+* is called periodically on a background thread with the
+* counters of every Processor that has metrics enabled, and
+* with their total under the name "total".
+*
+* <p> Contained methods:
+*		report(): receive the counters of one Processor.
+*
+**/
+
+import java.util.Map;
+
+public interface MetricsReporter {
+
+	/**
+	* Receive the counters of one Processor.
+	*
+	* @param name the name the Processor's metrics were enabled with
+	* @param counters the counters by name, in the order of
+	* ProcessorMetricsMXBean (e.g. "cycles", "retired.la",
+	* "instructionsPerSecond")
+	**/
+	void report(String name, Map<String,Number> counters);
+}
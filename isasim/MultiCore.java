@@ -0,0 +1,311 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Multi-core runner of the ISA simulator
+* package "isasim".
+*
+* <p> A MultiCore is a set of Processors (cores), each with
+* its own instruction memory, register file and PC, that
+* share one data memory (see SharedMemory). Each core is
+* told which one it is by a register (the last one unless
+* chosen otherwise) holding its number when it starts, so
+* that one program can split its work between the cores.
+*
+* <p> The cores are run on one of two schedules:
+*		THREADS: each core on its own thread, all at once,
+*			with the stores of one reaching the others as the
+*			Ordering of the SharedMemory allows. Runs on as
+*			many host cores as there are simulated ones, and
+*			two runs of a program that races may differ.
+*		ROUND_ROBIN: one thread runs every core for quantum
+*			cycles in turn, from core 0, so every run of a
+*			program is the same.
+* A core stops when it halts, leaves its instruction memory
+* or reaches the cycle limit; the others go on. The cross-
+* checked engines are not available, since their shadow
+* would keep a private copy of the data memory.
+*
+* <p> Usage:
+*		java isasim.MultiCore [-cores N]
+*			[-schedule threads|round_robin] [-quantum CYCLES]
+*			[-ordering plain|opaque|acquire_release|volatile]
+*			[-engine NAME] [-id REGISTER] [-limit CYCLES]
+*			[-data FILE] [-out FILE] [Config options] file.isa...
+* runs one program on every core, or one program per core,
+* and prints the status, cycles and registers of each core,
+* and the hash of the shared data memory.
+*
+* <p> Contained methods:
+*		run(): run every core until it stops.
+*		getCore(): one of the Processors.
+*		getMemory(): the shared data memory.
+*
+**/
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MultiCore {
+
+	public static final int DEFAULT_QUANTUM = 1000;
+
+	/** How the cores take turns. */
+	public enum Schedule { THREADS, ROUND_ROBIN }
+
+	private final SharedMemory memory;
+	private final Processor[] cores;
+	private final Throwable[] errors;
+
+	/**
+	* MultiCore constructor.
+	*
+	* @param c the sizes of each core and of the shared memory
+	* @param programs the initial instruction memory of each core
+	* @param data initial data memory words (null for empty)
+	* @param o the ordering of the shared memory
+	* @param e the engine of every core
+	* @param idRegister the register that holds the number of
+	* the core when it starts, or -1 for none
+	**/
+	public MultiCore(Config c, int[][] programs, int[] data, SharedMemory.Ordering o, Engine e, int idRegister){
+		if (programs.length < 1) throw new IllegalArgumentException("a MultiCore needs at least one core");
+		if (e == Engine.CROSS_CHECK || e == Engine.JIT_CHECK){
+			throw new IllegalArgumentException("engine " + e.name().toLowerCase() + " cannot share its data memory");
+		}
+		if (idRegister == 0 || idRegister >= c.regFileSize){
+			throw new IllegalArgumentException("core number register must be 1.." + (c.regFileSize - 1) + " or -1, not " + idRegister);
+		}
+		memory = new SharedMemory(c.dmemSize,c.wordWidth,data,o);
+		cores = new Processor[programs.length];
+		errors = new Throwable[programs.length];
+		for (int i = 0; i < cores.length; i++){
+			cores[i] = c.newCore(programs[i],memory,e);
+			if (idRegister > 0) cores[i].regFile[idRegister].setWord(i);
+		}
+	}
+
+	/**
+	* Run every core until it stops.
+	*
+	* @param limit the number of cycles each core may run
+	* @param s the schedule
+	* @param quantum the cycles of a turn of ROUND_ROBIN
+	* @throws InterruptedException if interrupted while
+	* waiting for the threads of the cores
+	**/
+	public void run(long limit, Schedule s, int quantum) throws InterruptedException {
+		if (s == Schedule.ROUND_ROBIN){
+			if (quantum < 1) throw new IllegalArgumentException("quantum must be positive");
+			boolean[] stopped = new boolean[cores.length];
+			int running = cores.length;
+			while (running > 0){
+				for (int i = 0; i < cores.length; i++){
+					if (stopped[i]) continue;
+					if (!turn(i,Math.min(quantum,limit - cores[i].getCycles()))){
+						stopped[i] = true;
+						running--;
+					}
+				}
+			}
+			return;
+		}
+
+		Thread[] threads = new Thread[cores.length];
+		for (int i = 0; i < cores.length; i++){
+			int core = i;
+			threads[i] = new Thread(() -> turn(core,limit - cores[core].getCycles()),"isasim core " + i);
+			threads[i].start();
+		}
+		for (Thread t : threads) t.join();
+	}
+
+	/**
+	* Run one core for some cycles.
+	*
+	* @return true if it ran all of them, false if it stopped
+	**/
+	private boolean turn(int core, long cycles){
+		if (cycles <= 0 || errors[core] != null) return false;
+		Processor p = cores[core];
+		long before = p.getCycles();
+		try {
+			p.execute(cycles);
+		}
+		catch (RuntimeException e){
+			errors[core] = e;
+			return false;
+		}
+		return p.getCycles() - before >= cycles;
+	}
+
+	/**
+	* The number of cores.
+	*
+	* @return the Processors sharing the data memory
+	**/
+	public int getCores(){
+		return cores.length;
+	}
+
+	/**
+	* One of the cores.
+	*
+	* @param i its number
+	* @return the Processor
+	**/
+	public Processor getCore(int i){
+		return cores[i];
+	}
+
+	/**
+	* The data memory every core shares.
+	*
+	* @return the SharedMemory
+	**/
+	public SharedMemory getMemory(){
+		return memory;
+	}
+
+	/**
+	* Describe how a core stopped.
+	*
+	* @param i its number
+	* @param limit the number of cycles it was allowed
+	* @return a status of BatchRunner, or "error" and the reason
+	**/
+	public String status(int i, long limit){
+		if (errors[i] != null) return "error: " + errors[i];
+		return BatchRunner.status(cores[i],limit);
+	}
+
+	/**
+	* Run a program on several cores.
+	*
+	* @param args options followed by .isa files
+	**/
+	public static void main(String[] args){
+		int count = 0;
+		Schedule schedule = Schedule.THREADS;
+		int quantum = DEFAULT_QUANTUM;
+		SharedMemory.Ordering ordering = SharedMemory.Ordering.ACQUIRE_RELEASE;
+		Engine engine = Engine.JIT;
+		int id = -2;
+		long limit = BatchRunner.DEFAULT_LIMIT;
+		String data = null;
+		String out = null;
+		List<String> options = new ArrayList<String>();
+		Config config;
+		try {
+			config = Config.parse(args,options);
+		}
+		catch (IllegalArgumentException e){
+			System.out.println("ERROR: " + e.getMessage());
+			return;
+		}
+		List<String> files = new ArrayList<String>();
+		try {
+			for (int i = 0; i < options.size(); i++){
+				switch (options.get(i)){
+					case "-cores":
+						count = Integer.parseInt(options.get(++i));
+						break;
+					case "-schedule":
+						schedule = Schedule.valueOf(options.get(++i).toUpperCase());
+						break;
+					case "-quantum":
+						quantum = Integer.parseInt(options.get(++i));
+						break;
+					case "-ordering":
+						ordering = SharedMemory.Ordering.valueOf(options.get(++i).toUpperCase());
+						break;
+					case "-engine":
+						engine = Engine.valueOf(options.get(++i).toUpperCase());
+						break;
+					case "-id":
+						id = Integer.parseInt(options.get(++i));
+						break;
+					case "-limit":
+						limit = Long.parseLong(options.get(++i));
+						break;
+					case "-data":
+						data = options.get(++i);
+						break;
+					case "-out":
+						out = options.get(++i);
+						break;
+					default:
+						files.add(options.get(i));
+				}
+			}
+			if (files.isEmpty()) throw new IllegalArgumentException("no program");
+		}
+		catch (RuntimeException e){
+			System.out.println("usage: MultiCore [-cores N] [-schedule threads|round_robin] [-quantum CYCLES] [-ordering plain|opaque|acquire_release|volatile] [-engine NAME] [-id REGISTER] [-limit CYCLES] [-data FILE] [-out FILE] file.isa...");
+			return;
+		}
+		if (count == 0) count = files.size() == 1 ? Runtime.getRuntime().availableProcessors() : files.size();
+		if (files.size() != 1 && files.size() != count){
+			System.out.println("ERROR: " + files.size() + " programs for " + count + " cores");
+			return;
+		}
+		if (id == -2) id = config.regFileSize - 1;
+
+		String[] names = new String[count];
+		int[][] programs = new int[count][];
+		try {
+			for (int i = 0; i < count; i++){
+				names[i] = files.get(files.size() == 1 ? 0 : i);
+				programs[i] = i > 0 && files.size() == 1 ? programs[0] : Assembler.assemble(names[i],config.imemSize,config.wordWidth);
+			}
+		}
+		catch (IOException e){
+			System.out.println("ERROR: " + e.getMessage());
+			return;
+		}
+
+		MultiCore machine;
+		try {
+			machine = new MultiCore(config,programs,null,ordering,engine,id);
+		}
+		catch (IllegalArgumentException e){
+			System.out.println("ERROR: " + e.getMessage());
+			return;
+		}
+		if (data != null) machine.getMemory().readFrom(data);
+
+		long start = System.nanoTime();
+		try {
+			machine.run(limit,schedule,quantum);
+		}
+		catch (InterruptedException e){
+			e.printStackTrace();
+			return;
+		}
+		long nanos = System.nanoTime() - start;
+
+		System.out.println(String.format("%d cores, schedule %s, ordering %s, engine %s",count,
+				schedule.name().toLowerCase(),ordering.name().toLowerCase(),engine.name().toLowerCase()));
+		StringBuilder header = new StringBuilder("core\tprogram\tstatus\tcycles");
+		for (int i = 0; i < config.regFileSize; i++) header.append("\t&r").append(i);
+		System.out.println(header);
+		long cycles = 0;
+		for (int i = 0; i < count; i++){
+			Processor p = machine.getCore(i);
+			StringBuilder row = new StringBuilder();
+			row.append(i).append('\t').append(new File(names[i]).getName()).append('\t').append(machine.status(i,limit))
+					.append('\t').append(p.getCycles());
+			for (int r = 0; r < p.regFileSize; r++) row.append('\t').append(p.regFile[r].getSigned());
+			System.out.println(row);
+			cycles += p.getCycles();
+		}
+		System.out.println(String.format("dmem_hash\t%016x",BatchRunner.hash(machine.getMemory())));
+		if (out != null) machine.getMemory().writeTo(out);
+		System.err.println(String.format("%d cores, %d cycles in %.3f s (%.2f MIPS)",count,cycles,nanos / 1e9,
+				cycles / (nanos / 1e3)));
+	}
+}
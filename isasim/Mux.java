@@ -26,10 +26,15 @@ package isasim;
 *				the corresponding input to the
 *				mux.
 *
+*<p> The datapath drives the primitive forms of these
+* methods, which select between two words without
+* creating any Objects.
+*
 *************************************/
 
 public class Mux {
 	private String[] inputs;
+	private int[] words;
 	
 	/**
 	* Constuctor for Mux object.
@@ -37,6 +42,7 @@ public class Mux {
 	**/	
 	public Mux (){	
 		inputs = new String[2];
+		words = new int[2];
 	}
 
 	/**
@@ -70,4 +76,25 @@ public class Mux {
 		return null;
 	}
 
+	/**
+	* Changes the word inputs stored in this Mux.
+	*
+	* @param a the word assigned to output 0.
+	* @param b the word assigned to output 1.
+	**/
+	public void update(int a, int b){
+		words[0] = a;
+		words[1] = b;
+	}
+
+	/**
+	* Provides the word output from this Mux.
+	*
+	* @param select the control signal for this mux (0 or 1)
+	* @return the stored word appropriate to the provided signal.
+	**/
+	public int output(int select){
+		return words[select & 1];
+	}
+
 }
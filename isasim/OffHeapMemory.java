@@ -0,0 +1,540 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Off-heap Memory of the ISA simulator
+* package "isasim".
+*
+* <p> An OffHeapMemory keeps its words outside of the
+* Java heap, packed at the width of the MemoryImage format
+* (2 bytes for a 16-bit word). The garbage collector never
+* scans or copies them, so a data memory of many megawords
+* costs the heap a few objects.
+*
+* <p> When the file of the memory is an image ("*.img") of
+* exactly its capacity and word length, or does not exist
+* yet, the file itself is mapped copy-on-write: opening it
+* reads nothing, and the words a program never touches are
+* never loaded. Stores stay private to the mapping until
+* writeToMem() writes the pages they changed back to the file.
+* Any other file is read into a direct buffer instead.
+*
+* <p> The Processor reads and writes an OffHeapMemory through
+* its address Register exactly as it does a Memory. A mapped
+* memory keeps no separate image of its initial contents:
+* restore() maps the file again, so it returns to the words
+* last stored in the file.
+*
+* <p> A memory (with its header, when mapped) is limited to
+* 2GB, the reach of a ByteBuffer. A copy of it is a copy of
+* every word, but a snapshot is incremental: it holds one
+* reference per page, and copies only the pages written
+* since the previous snapshot (or since the memory was
+* loaded) to the heap. The other pages are shared with that
+* snapshot, or read from the initial contents when restored.
+*
+* <p> Contained methods:
+*		getWord()/setWord(): access a word by address.
+*		writeToMem(): store the pages changed since the last store.
+*		restore(): return to the initial (or stored) contents.
+*		snapshot()/restore(Snapshot): capture the contents
+*			 and return to them later.
+*
+**/
+
+import java.io.IOException;
+
+import java.lang.ref.WeakReference;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class OffHeapMemory extends Memory {
+
+	private final int stride;
+	private final boolean[] dirty;
+	// pages written since the last snapshot, and the pages of it
+	private final boolean[] written;
+	private ByteBuffer[] saved;
+	private Origin origin;
+	// the origins mapping the file, which writeToMem() must preserve
+	private final List<WeakReference<Origin>> fileOrigins = new ArrayList<WeakReference<Origin>>();
+	private ByteBuffer segment;
+	private ByteBuffer initial;
+	private int base;
+	private boolean mapped;
+
+	/**
+	* OffHeapMemory constructor.
+	*
+	* @param capacity overall size of this Memory object
+	* @param length word size for this Memory object
+	* @param filename input file to initialize the data
+	* (null for an empty memory that is not tied to a file)
+	* @param addrRegister the Register to use for addressing
+	**/
+	public OffHeapMemory(int capacity, int length, String filename, Register addrRegister) {
+		super(capacity,length,addrRegister);
+		stride = MemoryImage.bytesPerWord(length);
+		if ((long)capacity * stride + MemoryImage.HEADER_SIZE > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("off-heap memory of " + capacity + " words is too large");
+		}
+		dirty = new boolean[(int)(((long)capacity + PAGE_WORDS - 1) >>> PAGE_SHIFT)];
+		written = new boolean[dirty.length];
+		saved = new ByteBuffer[dirty.length];
+		file = filename;
+		readFromMem();
+	}
+
+	/**
+	* OffHeapMemory copy constructor.
+	*
+	* The copy is a direct buffer that is not tied to any file.
+	*
+	* @param source the Memory to copy
+	* @param addrRegister the Register to use for addressing
+	**/
+	public OffHeapMemory(Memory source, Register addrRegister) {
+		this(source.getSize(),source.getWordLength(),null,addrRegister);
+		copyFrom(source);
+		modified = false;
+	}
+
+	/**
+	* Inspect a word of this object.
+	*
+	* @param address the location to inspect
+	* @return the word at address, or 0 if it is out of range
+	**/
+	public int getWord(int address){
+		if (address < 0 || address >= size) return 0;
+		int at = base + address * stride;
+		if (stride == 2) return segment.getShort(at) & 0xFFFF;
+		if (stride == 4) return segment.getInt(at);
+		return segment.get(at) & 0xFF;
+	}
+
+	/**
+	* Update a word of this object by address.
+	*
+	* The word is masked to the word length of this
+	* object. Writes beyond the capacity are ignored.
+	*
+	* @param address the location to write
+	* @param word the data to be written
+	**/
+	public void setWord(int address, int word){
+		if (address < 0 || address >= size) return;
+		int at = base + address * stride;
+		word &= wordMask;
+		if (stride == 2) segment.putShort(at,(short)word);
+		else if (stride == 4) segment.putInt(at,word);
+		else segment.put(at,(byte)word);
+		dirty[address >>> PAGE_SHIFT] = true;
+		written[address >>> PAGE_SHIFT] = true;
+		modified = true;
+	}
+
+	/**
+	* Replace the contents of this object with an image.
+	*
+	* @param image the new words; missing words are empty.
+	**/
+	public void load(int[] image) {
+		zero();
+		int n = image == null ? 0 : Math.min(image.length,size);
+		for (int i = 0; i < n; i++) setWord(i,image[i]);
+		if (!mapped){
+			initial = n == 0 ? null : copy(segment);
+			resetSnapshots(new Origin(initial,false,0));
+		}
+		modified = false;
+		version++;
+	}
+
+	/**
+	* Return this object to the contents it was loaded with.
+	*
+	* A mapped memory returns to the words last stored in its file.
+	**/
+	public void restore() {
+		if (!modified) return;
+		if (mapped) readFromMem();
+		else if (initial == null) zero();
+		else {
+			segment.clear();
+			segment.put(initial.duplicate().clear());
+			segment.clear();
+			markAllDirty();
+		}
+		if (!mapped) resetSnapshots(new Origin(initial,false,0));
+		modified = false;
+		version++;
+	}
+
+	/**
+	* Capture the current contents of this object.
+	*
+	* Only the pages written since the last snapshot (or
+	* since the memory was loaded) are copied, to the heap;
+	* the others are shared with the previous snapshot.
+	*
+	* @return the snapshot
+	**/
+	public Snapshot snapshot() {
+		ByteBuffer[] pages = saved.clone();
+		for (int p = 0; p < pages.length; p++){
+			if (!written[p]) continue;
+			ByteBuffer c = ByteBuffer.allocate(pageBytes(p));
+			c.put(page(words(),p));
+			pages[p] = c;
+			written[p] = false;
+		}
+		saved = pages;
+		return new Snapshot(pages,origin);
+	}
+
+	/**
+	* Return this object to the contents of a snapshot.
+	*
+	* Only the pages that differ from the snapshot are
+	* copied back and marked as changed. If none differ the
+	* version is kept, so decoded instructions stay valid.
+	*
+	* @param s a snapshot of this object
+	**/
+	public void restore(Snapshot s) {
+		if (s.packed == null || s.packed.length != saved.length) throw new IllegalArgumentException("not a snapshot of an off-heap Memory");
+		boolean same = true;
+		for (int p = 0; p < saved.length; p++){
+			if (!written[p] && saved[p] == s.packed[p] && (saved[p] != null || origin == s.origin)) continue;
+			ByteBuffer from = s.packed[p] != null ? s.packed[p].duplicate().clear() : s.origin.page(p,this);
+			page(words(),p).put(from);
+			written[p] = false;
+			dirty[p] = true;
+			same = false;
+		}
+		saved = s.packed;
+		origin = s.origin;
+		if (same) return;
+		modified = true;
+		version++;
+	}
+
+	/**
+	* Inspect a word of a snapshot of this object.
+	*
+	* @param s a snapshot of this object
+	* @param address the location to inspect
+	* @return the word at address, or 0 if it is out of range
+	**/
+	public int getWord(Snapshot s, int address) {
+		if (address < 0 || address >= size) return 0;
+		int p = address >>> PAGE_SHIFT;
+		if (s.packed[p] != null) return word(s.packed[p],(address & PAGE_MASK) * stride);
+		return s.origin.getWord(address,this);
+	}
+
+	/**
+	* Replace the contents of this object.
+	*
+	* @param source a Memory of the same capacity to copy from
+	**/
+	public void copyFrom(Memory source) {
+		if (source instanceof OffHeapMemory && ((OffHeapMemory)source).stride == stride && source.size == size){
+			OffHeapMemory s = (OffHeapMemory)source;
+			segment.duplicate().position(base).put(s.words());
+		}
+		else {
+			for (int i = 0; i < size; i++) setWord(i,source.getWord(i));
+		}
+		markAllDirty();
+		modified = true;
+		version++;
+	}
+
+	/**
+	* Compare the contents of two Memory objects.
+	*
+	* @param other the Memory to compare against
+	* @return the first address holding different words, or -1
+	**/
+	public int firstDifference(Memory other) {
+		int n = Math.min(size,other.getSize());
+		if (other instanceof OffHeapMemory && ((OffHeapMemory)other).stride == stride){
+			int at = words().mismatch(((OffHeapMemory)other).words());
+			if (at >= 0 && at / stride < n) return at / stride;
+		}
+		else {
+			for (int i = 0; i < n; i++){
+				if (getWord(i) != other.getWord(i)) return i;
+			}
+		}
+		return size == other.getSize() ? -1 : n;
+	}
+
+	/**
+	* Empty the data memory.
+	**/
+	public void clear(){
+		zero();
+		modified = true;
+		version++;
+		writeToMem();
+	}
+
+	/**
+	* Count the pages that hold storage.
+	*
+	* @return every page; off-heap storage is not sparse
+	**/
+	public int getMappedPages(){
+		return dirty.length;
+	}
+
+	/**
+	* Store the current contents of this object.
+	*
+	* A mapped memory writes only the pages changed since
+	* the last store; a memory read from any other file
+	* rewrites it completely.
+	**/
+	public void writeToMem(){
+		if (file == null) return;
+		if (!mapped){
+			writeTo(file);
+			return;
+		}
+		boolean any = false;
+		for (boolean d : dirty) any |= d;
+		if (!any) return;
+		preserveOrigins();
+		try {
+			MemoryImage.update(file,segment,dirty);
+			for (int p = 0; p < dirty.length; p++) dirty[p] = false;
+		}
+		catch (IOException e){
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	* Store the current contents of this object in a file.
+	*
+	* @param filename the file to write
+	* @return false if the file could not be written
+	**/
+	public boolean writeTo(String filename){
+		if (!MemoryImage.isImage(filename)) return super.writeTo(filename);
+		try {
+			MemoryImage.write(filename,words(),size,wordLength);
+		}
+		catch (IOException e){
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	* Retrieve the data stored for this memory.
+	*
+	* An image of the right layout (or a missing image)
+	* is mapped; any other file is read into a direct buffer.
+	**/
+	public void readFromMem(){
+		mapped = false;
+		if (file != null && MemoryImage.isImage(file)){
+			try {
+				ByteBuffer image = MemoryImage.map(file,size,wordLength);
+				if (image != null){
+					segment = image;
+					base = MemoryImage.HEADER_SIZE;
+					mapped = true;
+					initial = null;
+					for (int p = 0; p < dirty.length; p++) dirty[p] = false;
+					Origin o = new Origin(MemoryImage.map(file,size,wordLength),true,dirty.length);
+					fileOrigins.add(new WeakReference<Origin>(o));
+					resetSnapshots(o);
+					modified = false;
+					version++;
+					return;
+				}
+			}
+			catch (IOException e){
+				e.printStackTrace();
+			}
+		}
+		if (segment == null || base != 0) segment = ByteBuffer.allocateDirect(size * stride);
+		base = 0;
+		if (file == null) load(null);
+		else readFrom(file);
+	}
+
+	/**
+	* Retrieve the data stored in a file.
+	*
+	* The file is read by a heap Memory one page at a
+	* time into this object.
+	*
+	* @param filename the file to read
+	**/
+	public void readFrom(String filename){
+		Memory m = new Memory(size,wordLength,filename,new Register(32));
+		copyFrom(m);
+		if (!mapped){
+			initial = copy(segment);
+			resetSnapshots(new Origin(initial,false,0));
+		}
+		modified = false;
+	}
+
+	/**
+	* The words of this object, packed at their stride.
+	**/
+	private ByteBuffer words(){
+		ByteBuffer w = segment.duplicate();
+		w.limit(base + size * stride);
+		w.position(base);
+		return w.slice();
+	}
+
+	/**
+	* Empty every word of this object.
+	**/
+	private void zero(){
+		ByteBuffer w = words();
+		ByteBuffer zeros = ByteBuffer.allocate(Math.min(w.capacity(),65536));
+		while (w.hasRemaining()){
+			zeros.clear();
+			if (w.remaining() < zeros.capacity()) zeros.limit(w.remaining());
+			w.put(zeros);
+		}
+		markAllDirty();
+	}
+
+	/**
+	* Mark every page as needing to be written.
+	**/
+	private void markAllDirty(){
+		for (int p = 0; p < dirty.length; p++) dirty[p] = true;
+		for (int p = 0; p < written.length; p++) written[p] = true;
+	}
+
+	/**
+	* Start the next snapshot from initial contents.
+	**/
+	private void resetSnapshots(Origin o){
+		origin = o;
+		saved = new ByteBuffer[dirty.length];
+		for (int p = 0; p < written.length; p++) written[p] = false;
+	}
+
+	/**
+	* Keep the file pages writeToMem() is about to store
+	* over, for the snapshots that still read them.
+	**/
+	private void preserveOrigins(){
+		for (Iterator<WeakReference<Origin>> i = fileOrigins.iterator(); i.hasNext(); ){
+			Origin o = i.next().get();
+			if (o == null){
+				i.remove();
+				continue;
+			}
+			for (int p = 0; p < dirty.length; p++){
+				if (dirty[p]) o.keep(p,this);
+			}
+		}
+	}
+
+	/**
+	* Read a packed word of a buffer.
+	**/
+	private int word(ByteBuffer b, int at){
+		if (stride == 2) return b.getShort(at) & 0xFFFF;
+		if (stride == 4) return b.getInt(at);
+		return b.get(at) & 0xFF;
+	}
+
+	/**
+	* The number of bytes of a page.
+	**/
+	private int pageBytes(int p){
+		return (Math.min(size,(p + 1) << PAGE_SHIFT) - (p << PAGE_SHIFT)) * stride;
+	}
+
+	/**
+	* A page of packed words, as a buffer of its own.
+	**/
+	private ByteBuffer page(ByteBuffer words, int p){
+		ByteBuffer w = words.duplicate();
+		w.limit(((p << PAGE_SHIFT) * stride) + pageBytes(p));
+		w.position((p << PAGE_SHIFT) * stride);
+		return w.slice();
+	}
+
+	/**
+	* The contents an OffHeapMemory was loaded with, read
+	* by snapshots for the pages they did not copy.
+	*
+	* It is a copy of the loaded words, none (empty words),
+	* or a second mapping of the image file. The file changes
+	* when the memory is stored, so the pages about to be
+	* stored are kept first.
+	**/
+	static final class Origin {
+		private final ByteBuffer words;
+		private final ByteBuffer[] kept;
+
+		Origin(ByteBuffer w, boolean file, int pages){
+			if (w != null && file){
+				w.position(MemoryImage.HEADER_SIZE);
+				w = w.slice();
+			}
+			words = w;
+			kept = file ? new ByteBuffer[pages] : null;
+		}
+
+		/**
+		* A page as it was loaded.
+		**/
+		ByteBuffer page(int p, OffHeapMemory m){
+			if (kept != null && kept[p] != null) return kept[p].duplicate().clear();
+			if (words == null) return ByteBuffer.allocate(m.pageBytes(p));
+			return m.page(words,p);
+		}
+
+		/**
+		* A word as it was loaded.
+		**/
+		int getWord(int address, OffHeapMemory m){
+			int p = address >>> PAGE_SHIFT;
+			if (kept != null && kept[p] != null) return m.word(kept[p],(address & PAGE_MASK) * m.stride);
+			return words == null ? 0 : m.word(words,address * m.stride);
+		}
+
+		/**
+		* Copy a page before its file is written.
+		**/
+		void keep(int p, OffHeapMemory m){
+			if (kept == null || kept[p] != null || words == null) return;
+			ByteBuffer c = ByteBuffer.allocate(m.pageBytes(p));
+			c.put(m.page(words,p));
+			kept[p] = c;
+		}
+	}
+
+	/**
+	* Copy a buffer to a new direct buffer.
+	**/
+	private static ByteBuffer copy(ByteBuffer source){
+		ByteBuffer c = ByteBuffer.allocateDirect(source.capacity());
+		c.put(source.duplicate().clear());
+		c.clear();
+		return c;
+	}
+}
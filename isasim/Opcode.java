@@ -0,0 +1,95 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: The operations of the instruction
+* set simulated by the ISA simulator package "isasim".
+*
+* <p> Each constant names one operation of this
+* architecture. HALT stands for the empty instruction
+* word, which stops the Processor, and INVALID for any
+* opcode/func that the Controller does not recognise.
+*
+* <p> Contained methods:
+*		mnemonic(): the name used for this operation
+*					in the assembly source.
+*		isRType(): true for the operations that
+*				   take two registers.
+*
+**/
+
+public enum Opcode {
+	LA("la"),
+	MR("mr"),
+	MW("mw"),
+	ADDI("addi"),
+	ADD("add"),
+	SUB("sub"),
+	NOR("nor"),
+	BEQ("beq"),
+	J("j"),
+	HALT("nop"),
+	INVALID("NONE");
+
+	private final String mnemonic;
+
+	Opcode(String m){
+		mnemonic = m;
+	}
+
+	/**
+	* The assembly name of this operation.
+	*
+	* @return the mnemonic used in .isa source
+	**/
+	public String mnemonic(){
+		return mnemonic;
+	}
+
+	/**
+	* Check for a register-register operation.
+	*
+	* @return true for add, sub and nor
+	**/
+	public boolean isRType(){
+		return this == ADD || this == SUB || this == NOR;
+	}
+
+	/**
+	* Find the operation of an instruction word.
+	*
+	* @param instruction the 16-bit instruction word
+	* @return the operation encoded by its opcode and func
+	**/
+	public static Opcode of(int instruction){
+		if (instruction == 0) return HALT;
+		switch ((instruction >>> 12) & 0xF) {
+			case 0x0:
+				switch (instruction & 0xF) {
+					case 0x8:
+						return ADD;
+					case 0x1:
+						return SUB;
+					case 0x2:
+						return NOR;
+					default:
+						return INVALID;
+				}
+			case 0x1:
+				return LA;
+			case 0x2:
+				return MR;
+			case 0x6:
+				return MW;
+			case 0x4:
+				return ADDI;
+			case 0x7:
+				return BEQ;
+			case 0x8:
+				return J;
+			default:
+				return INVALID;
+		}
+	}
+}
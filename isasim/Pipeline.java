@@ -0,0 +1,515 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Five-stage pipeline model of the ISA
+* simulator package "isasim".
+*
+* <p> A Pipeline runs the program of a Processor on the
+* classic in-order pipeline, one clock cycle at a time:
+*		IF	fetch the instruction at the PC, predict pc + 1
+*		ID	read the registers, detect hazards, resolve j
+*			(and beq when resolved in decode)
+*		EX	the ALU, with the operands of the Controller's
+*			MCW (ALUSRC, ALUOP), and beq when resolved here
+*		MEM	la writes the MAR, mr reads and mw writes the
+*			data memory at the MAR
+*		WB	mr and the ALU operations write RA
+* It uses the state of the Processor (registers, PC, MAR,
+* memories and decoded instructions) and its own ALU and
+* Mux objects, and leaves the Processor in the state the
+* single-cycle datapath would: only the timing differs.
+*
+* <p> Because the MAR is written and read in MEM only, in
+* order, the la/mr/mw pairs never conflict; the hazards are
+* on the registers:
+*		load-use: an instruction needs the RA of an mr
+*			that has not yet read the memory.
+*		data: an instruction needs a register an ALU
+*			operation has not yet written (or, without
+*			forwarding, any register still in flight).
+*		branch: the cycles lost to each beq: the
+*			instructions fetched behind it and discarded
+*			when it is taken (PREDICT_NOT_TAKEN) or the
+*			fetches held until it is resolved (STALL).
+*		jump: the one fetch lost to each j, whose target
+*			is known in ID.
+* With Forwarding.FULL, results are forwarded from the
+* EX/MEM and MEM/WB latches to EX (and to ID for a beq
+* resolved there) and to MEM for the data of mw; with NONE,
+* registers are read in ID only, in the half cycle after WB
+* has written them.
+*
+* <p> A cycle counts from the first fetch to the cycle in
+* which the stopping instruction (an empty or invalid word,
+* or the first address past the instruction memory) reaches
+* WB, so cycles = instructions + 5 + stall cycles.
+*
+* <p> Usage:
+*		java isasim.Pipeline [-forwarding full|none]
+*			[-branch predict_not_taken|stall]
+*			[-resolve execute|decode] [-limit CYCLES]
+*			[Config options] (file.isa | directory)...
+* prints the CPI and the stall cycles by cause of each
+* program, and checks that its final state is the one of
+* the single-cycle Processor.
+*
+* <p> Contained methods:
+*		cycle(): run one clock cycle.
+*		run(): run until the program stops.
+*		getCPI()/getStalls(): the statistics.
+*		report(): the statistics as text.
+*
+**/
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Pipeline {
+
+	/** Where operands may come from besides the register file. */
+	public enum Forwarding { FULL, NONE }
+
+	/** What IF does behind a beq it has not yet seen resolved. */
+	public enum BranchPolicy { PREDICT_NOT_TAKEN, STALL }
+
+	/** The stage that resolves a beq. */
+	public enum Resolve { EXECUTE, DECODE }
+
+	/** The causes of lost cycles. */
+	public enum Stall { LOAD_USE, DATA, BRANCH, JUMP }
+
+	/**
+	* A pipeline latch: the instruction leaving a stage.
+	**/
+	static final class Slot {
+		boolean valid;
+		// the stopping instruction, which ends the run in WB
+		boolean end;
+		int pc;
+		DecodedInstruction ins;
+		// RA and RB as read in ID
+		int a;
+		int b;
+		// the ALU result, then the value written to RA
+		int result;
+
+		void clear(){
+			valid = false;
+			end = false;
+			ins = null;
+		}
+
+		void copy(Slot s){
+			valid = s.valid; end = s.end; pc = s.pc; ins = s.ins;
+			a = s.a; b = s.b; result = s.result;
+		}
+	}
+
+	private final Processor processor;
+	private final Forwarding forwarding;
+	private final BranchPolicy policy;
+	private final Resolve resolve;
+	private final int mask;
+
+	private final ALU alu = new ALU("00");
+	private final ALU pcAdder = new ALU("00");
+	private final Mux aluMux = new Mux();
+	private final Mux branchMux = new Mux();
+	private final Mux jumpMux = new Mux();
+	private final Mux regMux = new Mux();
+
+	private final Slot ifid = new Slot();
+	private final Slot idex = new Slot();
+	private final Slot exmem = new Slot();
+	private final Slot memwb = new Slot();
+	// nothing is fetched behind a stopping instruction
+	private boolean fetchStopped;
+	private boolean done;
+
+	private long cycles;
+	private long instructions;
+	private final long[] stalls = new long[Stall.values().length];
+	private long branches;
+	private long taken;
+	private long jumps;
+
+	/**
+	* Pipeline constructor with forwarding, predict not taken
+	* and beq resolved in EX.
+	*
+	* @param p the Processor whose program and state to use
+	**/
+	public Pipeline(Processor p){
+		this(p,Forwarding.FULL,BranchPolicy.PREDICT_NOT_TAKEN,Resolve.EXECUTE);
+	}
+
+	/**
+	* Pipeline constructor.
+	*
+	* @param p the Processor whose program and state to use
+	* @param f the forwarding paths
+	* @param b what IF does behind a beq
+	* @param r the stage that resolves a beq
+	**/
+	public Pipeline(Processor p, Forwarding f, BranchPolicy b, Resolve r){
+		processor = p;
+		forwarding = f;
+		policy = b;
+		resolve = r;
+		mask = Utilities.mask(p.regWidth);
+	}
+
+	private static boolean writes(Slot s){
+		return s.valid && !s.end && (s.ins.mcw & Controller.MCW_RWRITE) != 0;
+	}
+
+	private static boolean writes(Slot s, int r){
+		return writes(s) && s.ins.ra == r;
+	}
+
+	// RA comes from the data memory (mr)
+	private static boolean loads(Slot s){
+		return writes(s) && (s.ins.mcw & Controller.MCW_RSEL) == 0;
+	}
+
+	private static boolean readsRa(Opcode op){
+		return op != Opcode.MR && op != Opcode.J;
+	}
+
+	/**
+	* The value of a register for an instruction in EX (or
+	* a beq in ID), given the instruction now in MEM.
+	*
+	* The register file already holds the result of the
+	* instruction in WB; an ALU result in MEM is forwarded.
+	**/
+	private int operand(int r, int read){
+		if (forwarding == Forwarding.NONE) return read;
+		if (writes(memwb,r) && !loads(memwb)) return memwb.result & mask;
+		return processor.regFile[r].getWord();
+	}
+
+	/**
+	* The cause of a stall of the instruction in ID, or null.
+	*
+	* Called once the latches hold the instructions now in
+	* EX (exmem) and MEM (memwb).
+	**/
+	private Stall hazard(DecodedInstruction ins){
+		Opcode op = ins.opcode;
+		if (op == Opcode.BEQ && resolve == Resolve.DECODE) return hazard(ins.ra,true);
+		Stall s = null;
+		// mw needs its data in MEM only
+		if (readsRa(op) && (op != Opcode.MW || forwarding == Forwarding.NONE)) s = hazard(ins.ra,false);
+		if (s == null && op.isRType()) s = hazard(ins.rb,false);
+		return s;
+	}
+
+	private Stall hazard(int r, boolean inDecode){
+		if (forwarding == Forwarding.NONE || inDecode){
+			if (writes(exmem,r)) return loads(exmem) ? Stall.LOAD_USE : Stall.DATA;
+			if (forwarding == Forwarding.NONE && writes(memwb,r)) return loads(memwb) ? Stall.LOAD_USE : Stall.DATA;
+			if (loads(memwb) && memwb.ins.ra == r) return Stall.LOAD_USE;
+			return null;
+		}
+		return loads(exmem) && exmem.ins.ra == r ? Stall.LOAD_USE : null;
+	}
+
+	/**
+	* Run one clock cycle.
+	*
+	* The stages run from WB back to IF, so each reads the
+	* latch its predecessor filled in the previous cycle.
+	*
+	* @return false once the program has stopped
+	**/
+	public boolean cycle(){
+		if (done) return false;
+		cycles++;
+		Register PC = processor.PC;
+
+		// WB: the register file is written in the first half of the cycle
+		if (memwb.valid){
+			if (memwb.end){
+				finish();
+				return false;
+			}
+			if (writes(memwb)) processor.regFile[memwb.ins.ra].setWord(memwb.result);
+			instructions++;
+		}
+
+		// MEM
+		if (exmem.valid && !exmem.end){
+			int mcw = exmem.ins.mcw;
+			if ((mcw & Controller.MCW_MEMWRITE) != 0){
+				int data = forwarding == Forwarding.NONE ? exmem.a : processor.regFile[exmem.ins.ra].getWord();
+				processor.dataMemory.writeWord(data);
+			}
+			if ((mcw & Controller.MCW_MAR) != 0) processor.MAR.setWord(exmem.result);
+			if (loads(exmem)){
+				regMux.update(processor.dataMemory.readWord(),exmem.result);
+				exmem.result = regMux.output(mcw & Controller.MCW_RSEL);
+			}
+		}
+		memwb.copy(exmem);
+
+		// EX
+		boolean redirect = false;
+		int target = 0;
+		if (idex.valid && !idex.end){
+			DecodedInstruction ins = idex.ins;
+			int a = operand(ins.ra,idex.a);
+			int b = operand(ins.rb,idex.b);
+			aluMux.update(b,ins.immediate);
+			alu.update((ins.mcw & Controller.MCW_ALUOP) >>> Controller.MCW_ALUOP_SHIFT);
+			idex.result = alu.operate(a,aluMux.output((ins.mcw & Controller.MCW_ALUSRC) != 0 ? 1 : 0));
+			if (ins.opcode == Opcode.BEQ && resolve == Resolve.EXECUTE){
+				branches++;
+				if (a == 0){
+					taken++;
+					branchMux.update(1,ins.immediate);
+					target = pcAdder.operate(idex.pc,branchMux.output(1));
+					redirect = true;
+				}
+				// the fetches behind it are discarded, or under STALL
+				// the one of this cycle is lost (the one before was held)
+				if (redirect) stalls[Stall.BRANCH.ordinal()] += policy == BranchPolicy.STALL ? 1 : 2;
+			}
+		}
+		exmem.copy(idex);
+
+		// ID
+		boolean stall = false;
+		boolean holdFetch = false;
+		if (redirect){
+			idex.clear();
+		}
+		else if (ifid.valid){
+			DecodedInstruction ins = ifid.ins;
+			Stall cause = ifid.end ? null : hazard(ins);
+			if (cause != null){
+				stall = true;
+				stalls[cause.ordinal()]++;
+				idex.clear();
+			}
+			else {
+				idex.copy(ifid);
+				if (!ifid.end){
+					idex.a = processor.regFile[ins.ra].getWord();
+					idex.b = processor.regFile[ins.rb].getWord();
+					if (ins.opcode == Opcode.J){
+						jumps++;
+						jumpMux.update(ifid.pc + 1,(ifid.pc & ~0xFFF) | ins.jump);
+						target = jumpMux.output(1);
+						redirect = true;
+						stalls[Stall.JUMP.ordinal()]++;
+					}
+					else if (ins.opcode == Opcode.BEQ){
+						if (resolve == Resolve.DECODE){
+							branches++;
+							if (operand(ins.ra,idex.a) == 0){
+								taken++;
+								branchMux.update(1,ins.immediate);
+								target = pcAdder.operate(ifid.pc,branchMux.output(1));
+								redirect = true;
+								stalls[Stall.BRANCH.ordinal()]++;
+							}
+						}
+						// IF does not yet know where to fetch
+						if (policy == BranchPolicy.STALL && !redirect) holdFetch = true;
+					}
+				}
+			}
+		}
+		else idex.clear();
+		// a beq resolved in EX is still unresolved while it is in EX
+		if (policy == BranchPolicy.STALL && !redirect && resolve == Resolve.EXECUTE
+				&& exmem.valid && !exmem.end && exmem.ins.opcode == Opcode.BEQ) holdFetch = true;
+
+		// IF
+		if (redirect){
+			PC.setWord(target);
+			ifid.clear();
+			fetchStopped = false;
+		}
+		else if (stall){
+			// the instruction in ID is fetched again
+		}
+		else if (holdFetch){
+			stalls[Stall.BRANCH.ordinal()]++;
+			ifid.clear();
+		}
+		else if (fetchStopped){
+			ifid.clear();
+		}
+		else {
+			int pc = PC.getWord();
+			DecodedInstruction ins = processor.decodeCache.get(pc);
+			ifid.valid = true;
+			ifid.pc = pc;
+			ifid.ins = ins;
+			ifid.end = ins.opcode == Opcode.HALT || ins.mcw == Controller.INVALID || pc >= processor.imemSize;
+			if (ifid.end) fetchStopped = true;
+			else PC.setWord(pc + 1);
+		}
+		return true;
+	}
+
+	/**
+	* Leave the Processor as the single-cycle datapath would
+	* at the stopping instruction.
+	**/
+	private void finish(){
+		done = true;
+		processor.PC.setWord(memwb.pc);
+		processor.cycles += instructions;
+		if (memwb.pc < processor.imemSize) processor.terminate();
+	}
+
+	/**
+	* Run until the program stops.
+	*
+	* @param limit the number of clock cycles to run at most
+	* @return true if the program stopped
+	**/
+	public boolean run(long limit){
+		long stop = cycles + limit < 0 ? Long.MAX_VALUE : cycles + limit;
+		while (cycles < stop && cycle());
+		return done;
+	}
+
+	/** @return the clock cycles run */
+	public long getCycles(){ return cycles; }
+
+	/** @return the instructions that reached WB */
+	public long getInstructions(){ return instructions; }
+
+	/** @return the beq instructions resolved */
+	public long getBranches(){ return branches; }
+
+	/** @return the beq instructions that branched */
+	public long getTaken(){ return taken; }
+
+	/** @return the j instructions decoded */
+	public long getJumps(){ return jumps; }
+
+	/**
+	* The cycles lost to one cause.
+	*
+	* @param cause the cause
+	* @return the stall cycles
+	**/
+	public long getStalls(Stall cause){
+		return stalls[cause.ordinal()];
+	}
+
+	/**
+	* The clock cycles per instruction.
+	*
+	* @return cycles / instructions, 0 before any instruction
+	**/
+	public double getCPI(){
+		return instructions == 0 ? 0 : (double)cycles / instructions;
+	}
+
+	/**
+	* Describe the run.
+	*
+	* @return the configuration, CPI, stall cycles by cause
+	* and branch penalty
+	**/
+	public String report(){
+		StringBuilder s = new StringBuilder();
+		s.append(String.format("forwarding %s, branches %s, resolved in %s%n",forwarding.name().toLowerCase(),
+				policy.name().toLowerCase(),resolve.name().toLowerCase()));
+		s.append(String.format("%d cycles, %d instructions, CPI %.3f%n",cycles,instructions,getCPI()));
+		for (Stall c : Stall.values()){
+			s.append(String.format("%-9s %10d stall cycles (%.1f%%)%n",c.name().toLowerCase(),stalls[c.ordinal()],
+					cycles == 0 ? 0 : 100.0 * stalls[c.ordinal()] / cycles));
+		}
+		s.append(String.format("beq: %d, %d taken, %.2f cycles lost per beq%n",branches,taken,
+				branches == 0 ? 0 : (double)stalls[Stall.BRANCH.ordinal()] / branches));
+		s.append(String.format("j: %d, %d cycles lost%n",jumps,stalls[Stall.JUMP.ordinal()]));
+		return s.toString();
+	}
+
+	/**
+	* Run programs on the pipeline and report their timing.
+	*
+	* @param args options followed by .isa files and directories
+	**/
+	public static void main(String[] args){
+		Forwarding f = Forwarding.FULL;
+		BranchPolicy b = BranchPolicy.PREDICT_NOT_TAKEN;
+		Resolve r = Resolve.EXECUTE;
+		long limit = BatchRunner.DEFAULT_LIMIT;
+		List<String> options = new ArrayList<String>();
+		Config config;
+		try {
+			config = Config.parse(args,options);
+		}
+		catch (IllegalArgumentException e){
+			System.out.println("ERROR: " + e.getMessage());
+			return;
+		}
+		List<String> paths = new ArrayList<String>();
+		try {
+			for (int i = 0; i < options.size(); i++){
+				switch (options.get(i)){
+					case "-forwarding":
+						f = Forwarding.valueOf(options.get(++i).toUpperCase());
+						break;
+					case "-branch":
+						b = BranchPolicy.valueOf(options.get(++i).toUpperCase());
+						break;
+					case "-resolve":
+						r = Resolve.valueOf(options.get(++i).toUpperCase());
+						break;
+					case "-limit":
+						limit = Long.parseLong(options.get(++i));
+						break;
+					default:
+						paths.add(options.get(i));
+				}
+			}
+		}
+		catch (RuntimeException e){
+			System.out.println("usage: Pipeline [-forwarding full|none] [-branch predict_not_taken|stall] [-resolve execute|decode] [-limit CYCLES] (file.isa | directory)...");
+			return;
+		}
+		if (paths.isEmpty()) paths.add(WorkloadRunner.DIRECTORY);
+
+		WorkloadRunner states = new WorkloadRunner(config,limit);
+		System.out.println(String.format("forwarding %s, branches %s, resolved in %s",f.name().toLowerCase(),
+				b.name().toLowerCase(),r.name().toLowerCase()));
+		System.out.println("program\tcycles\tinstructions\tCPI\tload_use\tdata\tbranch\tjump\tbeq\ttaken\tlost_per_beq\tstate");
+		for (String program : BatchRunner.programs(paths)){
+			int[] image;
+			Processor p;
+			try {
+				image = Assembler.assemble(program,config.imemSize,config.wordWidth);
+				p = config.newProcessor(image,null,Engine.STRUCTURAL);
+			}
+			catch (IOException | IllegalArgumentException e){
+				System.out.println(program + "\terror: " + e.getMessage());
+				continue;
+			}
+			Pipeline pipe = new Pipeline(p,f,b,r);
+			String state = "limit";
+			if (pipe.run(limit)){
+				Processor single = config.newProcessor(image,null,Engine.INTERPRETER);
+				single.execute(limit);
+				state = states.state(p).equals(states.state(single)) ? "match" : "MISMATCH";
+			}
+			System.out.println(String.format("%s\t%d\t%d\t%.3f\t%d\t%d\t%d\t%d\t%d\t%d\t%.2f\t%s",new File(program).getName(),
+					pipe.cycles,pipe.instructions,pipe.getCPI(),pipe.getStalls(Stall.LOAD_USE),pipe.getStalls(Stall.DATA),
+					pipe.getStalls(Stall.BRANCH),pipe.getStalls(Stall.JUMP),pipe.branches,pipe.taken,
+					pipe.branches == 0 ? 0 : (double)pipe.getStalls(Stall.BRANCH) / pipe.branches,state));
+		}
+	}
+}
@@ -26,6 +26,22 @@ package isasim;
 *			-write the values stored in the memory
 *			 objects to their data files in order
 *		  	 to create a restorable state.
+*		checkpoint()/restore(): capture the whole state
+*			 (PC, MAR, registers, both memories) and
+*			 return to it later.
+*		fork(): a copy of this processor that runs on
+*			 independently.
+*		stepBack()/rewind()/reverseContinue(): run
+*			 backwards through the cycles recorded by the
+*			 UndoLog, once enableUndo() was called.
+*		startTrace()/stopTrace(): write every cycle to
+*			 a binary trace file (see TraceRecorder).
+*		enableMetrics(): count executed instructions by
+*			 type and publish them through JMX.
+*		enableProfiler(): count executions per address
+*			 for a hotspot report.
+*		getBreakpoints(): stop execute() at instruction
+*			 addresses or data accesses (see Breakpoints).
 *		Constructor:
 *			-The constructor Processor() requires
 *			 various configuration values to create
@@ -33,9 +49,23 @@ package isasim;
 *			-The methods called by the constructor
 *			 instantiate groups of Objects associated
 *			 with the Processor module.
+*<p> The datapath carries primitive words between its
+* Objects; a cycle creates no Strings. Binary String views
+* of the registers and memories are built on demand.
+*
+*<p> Checkpoints and forks share memory pages with this
+* processor copy-on-write, so they cost one reference per
+* page of memory and each side copies a page only when it
+* first writes to it.
+*
 *<p> Updated: 06/29/2017
 ***********************************************/
 
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 public class Processor{
    	/**************************************
@@ -62,7 +92,17 @@ public class Processor{
 	*
 	*<p> One SignExtend Object that carries out
 	* the sign-extend function of the immediate value
-	* in this architecture
+	* in this architecture, to the register width
+	*
+	*<p> One DecodeCache Object that holds each
+	* instruction memory word already decoded by the
+	* Controller and SignExtend, so a cycle only
+	* indexes an array.
+	*
+	*<p> The Engine that executes instructions, with
+	* the Interpreter used by the fast engines and, when
+	* cross-checking, a structural shadow copy of this
+	* Processor that runs in lockstep with it.
 	*
 	*<p> **Further description of each of the objects
 	* mentioned above can be found in the various modules
@@ -82,12 +122,51 @@ public class Processor{
 	Mux regMux;
 	Mux aluMux;  
 	
-	SignExtend signEx16;
+	SignExtend signEx;
 
 	ALU alu;
 	ALU pcAdder;
 	
 	Controller controller; 
+	DecodeCache decodeCache;
+
+	Engine engine;
+	Interpreter interpreter;
+	Translator translator;
+	Processor shadow;
+	String divergence;
+	long cycles;
+	int decodedVersion;
+	// the checkpoints not yet discarded, by id
+	Map<Integer,Checkpoint> checkpoints = new HashMap<Integer,Checkpoint>();
+	int nextCheckpoint;
+	UndoLog undo;
+	TraceRecorder trace;
+	ProcessorMetrics metrics;
+	Profiler profiler;
+	// the data caches watching the mr and mw instructions, null while none is
+	DataCache[] caches;
+	// the branch predictors watching beq and j, null while none is
+	BranchPredictor[] predictors;
+	Breakpoints breakpoints;
+	// the breakpoints while any is set, null while none is
+	volatile Breakpoints armed;
+
+	/**
+	* The state of a processor at one point of its execution.
+	**/
+	static final class Checkpoint {
+		final int pc;
+		final int mar;
+		final int[] registers;
+		final long cycles;
+		final Memory.Snapshot instructions;
+		final Memory.Snapshot data;
+
+		Checkpoint(int p, int m, int[] r, long c, Memory.Snapshot i, Memory.Snapshot d){
+			pc = p; mar = m; registers = r; cycles = c; instructions = i; data = d;
+		}
+	}
 	
 	String InsFile;
 	String DatFile;
@@ -97,6 +176,7 @@ public class Processor{
 	int imemSize;
 	int dmemSize;
 	int wordWidth;
+	int offHeapSize = Config.DEFAULT_OFF_HEAP;
 	
 
 	/**
@@ -116,22 +196,186 @@ public class Processor{
 	*
 	**/ 
     Processor(int rw, int rfs, int ims,int dms, int ww, String ifi, String dfi){
-		regWidth = rw; regFileSize = rfs; imemSize = ims;dmemSize = dms; wordWidth = ww;
-		InsFile = ifi; DatFile = dfi;
+		this(rw,rfs,ims,dms,ww,ifi,dfi,Engine.STRUCTURAL);
+	}
+
+	/**
+	* Constructor for a processor object with a chosen engine.
+	*
+	* @param rw Size of the registers of this processor.
+	* @param rfs number of registers in the register file
+	* @param ims size of the instruction memory
+	* @param dms size of the data memory
+	* @param ww size of a word in this system
+	* @param ifi input filename for instruction memory
+	* @param dfi input filename for data memory
+	* @param e the engine that executes instructions
+	*
+	**/ 
+    Processor(int rw, int rfs, int ims,int dms, int ww, String ifi, String dfi, Engine e){
+		this(new Config(rw,rfs,ims,dms,ww,ifi,dfi),e);
+	}
+
+	/**
+	* Constructor for a processor of a configuration.
+	*
+	* @param c the sizes and memory files of this processor
+	* @param e the engine that executes instructions
+	*
+	**/ 
+    Processor(Config c, Engine e){
+		configure(c);
+		InsFile = c.instructionFile; DatFile = c.dataFile;
 	
-		controller = new Controller();
-		
 		initializeRegisters();
 		initializeMemory();
+		checkRegisters();
+		initializeDatapath();
+		initializeEngine(e);
+		decodedVersion = instructionMemory.getVersion();
+	}
+
+	/**
+	* Constructor for a processor with in-memory images.
+	*
+	* The memories are filled from the given words
+	* instead of files, and the processor never reads or
+	* writes any file; several such processors can run
+	* side by side in one JVM.
+	*
+	* @param rw Size of the registers of this processor.
+	* @param rfs number of registers in the register file
+	* @param ims size of the instruction memory
+	* @param dms size of the data memory
+	* @param ww size of a word in this system
+	* @param instructions initial instruction memory words
+	* @param data initial data memory words (null for empty)
+	* @param e the engine that executes instructions
+	*
+	**/ 
+    Processor(int rw, int rfs, int ims,int dms, int ww, int[] instructions, int[] data, Engine e){
+		this(new Config(rw,rfs,ims,dms,ww,null,null),instructions,data,e);
+	}
+
+	/**
+	* Constructor for a processor of a configuration with in-memory images.
+	*
+	* The memory files of the configuration are ignored.
+	*
+	* @param c the sizes of this processor
+	* @param instructions initial instruction memory words
+	* @param data initial data memory words (null for empty)
+	* @param e the engine that executes instructions
+	*
+	**/ 
+    Processor(Config c, int[] instructions, int[] data, Engine e){
+		configure(c);
+
+		initializeRegisters();
+		instructionMemory = new Memory(imemSize,wordWidth,instructions,PC);
+		checkRegisters();
+		if (dmemSize >= offHeapSize){
+			dataMemory = new OffHeapMemory(dmemSize,wordWidth,null,MAR);
+			dataMemory.load(data);
+		}
+		else dataMemory = new Memory(dmemSize,wordWidth,data,MAR);
+		initializeDatapath();
+		initializeEngine(e);
+		decodedVersion = instructionMemory.getVersion();
+	}
+
+	/**
+	* Constructor for a core of a MultiCore.
+	*
+	* The data memory is a view of a SharedMemory that
+	* other processors read and write at the same time; its
+	* size replaces the data memory size of the configuration.
+	*
+	* @param c the sizes of this processor
+	* @param instructions initial instruction memory words
+	* @param data the shared data memory
+	* @param e the engine that executes instructions
+	*
+	**/ 
+    Processor(Config c, int[] instructions, SharedMemory data, Engine e){
+		configure(c);
+		dmemSize = data.getSize();
+
+		initializeRegisters();
+		instructionMemory = new Memory(imemSize,wordWidth,instructions,PC);
+		checkRegisters();
+		dataMemory = data.port(MAR);
+		initializeDatapath();
+		initializeEngine(e);
+		decodedVersion = instructionMemory.getVersion();
+	}
+
+	/**
+	* Create a copy of a processor.
+	*
+	* The copy starts with the registers and memories
+	* of source, and is not tied to any file. It is used
+	* as the structural shadow of a cross-checked processor
+	* and by fork().
+	*
+	* @param source the processor to copy
+	* @param e the engine of the copy
+	**/
+	private Processor(Processor source, Engine e){
+		regWidth = source.regWidth; regFileSize = source.regFileSize;
+		imemSize = source.imemSize; dmemSize = source.dmemSize; wordWidth = source.wordWidth;
+		offHeapSize = source.offHeapSize;
+
+		initializeRegisters();
+		instructionMemory = new Memory(source.instructionMemory,PC);
+		if (source.dataMemory instanceof OffHeapMemory) dataMemory = new OffHeapMemory(source.dataMemory,MAR);
+		else dataMemory = new Memory(source.dataMemory,MAR);
+		initializeDatapath();
+		copyState(source);
+		initializeEngine(e);
+	}
+
+	/**
+	* Take the sizes of this processor from a configuration.
+	*
+	* @param c the configuration
+	**/
+	private void configure(Config c){
+		regWidth = c.regWidth; regFileSize = c.regFileSize; imemSize = c.imemSize;
+		dmemSize = c.dmemSize; wordWidth = c.wordWidth; offHeapSize = c.offHeapSize;
+	}
+
+	/**
+	* Instantiate the functional units of the datapath.
+	*
+	* Creates the Controller, ALUs, sign-extend unit,
+	* muxes and the decode cache in front of the Controller.
+	*
+	**/
+	private void initializeDatapath(){
+		controller = new Controller();
 		initializeAlu();
 		
-		signEx16 = new SignExtend(16);	
+		signEx = new SignExtend(regWidth);
+		decodeCache = new DecodeCache(instructionMemory,controller,signEx);
 		regMux = new Mux();
 		aluMux = new Mux();
 		jumpMux = new Mux();
 		branchMux = new Mux();
 	}
 
+	/**
+	* Prepare the engine that executes instructions.
+	*
+	* @param e the engine to use
+	**/
+	private void initializeEngine(Engine e){
+		engine = e;
+		if (engine != Engine.STRUCTURAL) interpreter = new Interpreter(this);
+		if (engine == Engine.JIT || engine == Engine.JIT_CHECK) translator = new Translator(this,interpreter);
+		if (engine == Engine.CROSS_CHECK || engine == Engine.JIT_CHECK) shadow = new Processor(this,Engine.STRUCTURAL);
+	}
+
 	/**
 	* Instantiate all registers for this system.
 	*
@@ -153,12 +397,14 @@ public class Processor{
 	* Instantiate memories for this sytem.	
 	*
 	* Creates the instruction and data memories for this
-	* Sytstem.
+	* Sytstem. A data memory of at least offHeapSize words
+	* is kept off the Java heap.
 	*
 	**/ 
 	private void initializeMemory() {
     	instructionMemory = new Memory(imemSize,wordWidth,InsFile,PC);
-		dataMemory = new Memory(dmemSize,wordWidth,DatFile,MAR);
+		if (dmemSize >= offHeapSize) dataMemory = new OffHeapMemory(dmemSize,wordWidth,DatFile,MAR);
+		else dataMemory = new Memory(dmemSize,wordWidth,DatFile,MAR);
 	}
 	
 	/**
@@ -181,11 +427,62 @@ public class Processor{
 	* instructions untill the end of instruction
 	* memory is reached, or there are no more
 	* valid instructions stored.
+	* With the JIT engines, hot basic blocks are
+	* translated and run as compiled code.
 	*
 	**/ 
 	public void execute(){
-		while (Utilities.binToInt(PC.getValue()) < imemSize && tick());
-		return;
+		execute(Long.MAX_VALUE);
+	}
+
+	/**
+	* Run the processor for a limited number of cycles.
+	*
+	* Same as execute(), but stops once about 'limit'
+	* more instructions have executed (a translated block
+	* always runs to its end), so that a program that never
+	* halts can still be run. While cycles are recorded for
+	* undo or traced, or any breakpoint is set, the JIT
+	* engines run one instruction at a time. Execution
+	* stops early before an instruction with a breakpoint
+	* (see getBreakpoints()).
+	*
+	* @param limit the number of cycles to run at most
+	**/
+	public void execute(long limit){
+		ProcessorMetrics m = metrics;
+		if (m == null){
+			run(limit);
+			return;
+		}
+		long before = cycles;
+		long start = System.nanoTime();
+		run(limit);
+		m.time(cycles - before,System.nanoTime() - start);
+	}
+
+	/**
+	* Run the processor with the selected engine.
+	*
+	* @param limit the number of cycles to run at most
+	**/
+	private void run(long limit){
+		Breakpoints b = armed;
+		if (translator != null && undo == null && trace == null && caches == null && predictors == null && b == null){
+			if (divergence != null) return;
+			cycles += translator.execute(shadow != null,limit);
+			if (translator.halted()){
+				if (metrics != null) metrics.halt();
+				terminate();
+			}
+			return;
+		}
+		long stop = cycles + limit < 0 ? Long.MAX_VALUE : cycles + limit;
+		if (b == null){
+			while (cycles < stop && PC.getSigned() < imemSize && step());
+			return;
+		}
+		while (cycles < stop && PC.getSigned() < imemSize && !b.check() && step());
 	}
 
 	/**
@@ -197,7 +494,8 @@ public class Processor{
 	* @return false if there are no more instructions to execute.
 	**/ 
 	public boolean oneCycle(){
-		if (Utilities.binToInt(PC.getValue()) < imemSize && Utilities.binToInt(PC.getValue()) >= 0) return tick();
+		int pc = PC.getSigned();
+		if (pc < imemSize && pc >= 0) return step();
 		terminate();
 		return false;
 	}
@@ -207,17 +505,642 @@ public class Processor{
 	* 
 	* This method sets all registers
 	* in this system to 0 (including PC)
-	* and updates the instruction memory object using
-	* the assigned input files.
+	* and returns the instruction memory to the image
+	* it was last loaded with. The image is kept in
+	* memory, so no file is read. Decoded and translated
+	* instructions are kept unless the instruction memory
+	* has changed since they were made.
 	*
 	**/ 
 	public void reset(){
-		PC.update("");
-		MAR.update("");
+		reset(false);
+	}
+
+	/**
+	* Restart the sytem, optionally with fresh data.
+	*
+	* @param data true to also return the data memory
+	* to the image it was loaded with.
+	**/
+	public void reset(boolean data){
+		PC.setWord(0);
+		MAR.setWord(0);
 		for(int i = 0; i < regFileSize; i++) {
-			regFile[i].update("");
+			regFile[i].setWord(0);
 		}	
-		instructionMemory.readFromMem();
+		instructionMemory.restore();
+		if (data) dataMemory.restore();
+		cycles = 0;
+		resynchronize();
+		if (undo != null) undo.clear();
+	}
+
+	/**
+	* Bring derived state up to date after the state was replaced.
+	*
+	* Decoded and translated instructions are discarded
+	* if the instruction memory changed, and the shadow
+	* of a cross-checked processor starts over from this state.
+	**/
+	private void resynchronize(){
+		if (instructionMemory.getVersion() != decodedVersion) {
+			decodeCache.invalidate();
+			if (translator != null) translator.invalidate();
+			decodedVersion = instructionMemory.getVersion();
+		}
+		if (shadow != null) {
+			shadow.copyState(this);
+			divergence = null;
+		}
+	}
+
+	/**
+	* Capture the state of the processor.
+	*
+	* The PC, MAR, register file, cycle count and both
+	* memories are kept until discarded. The memories
+	* are shared with the checkpoint copy-on-write, so this
+	* costs no copy of their words (an off-heap data memory
+	* copies the pages written since its last snapshot).
+	*
+	* @return the id of the checkpoint, for restore()
+	**/
+	public int checkpoint(){
+		int[] registers = new int[regFileSize];
+		for (int i = 0; i < regFileSize; i++) registers[i] = regFile[i].getWord();
+		int id = nextCheckpoint++;
+		checkpoints.put(id,new Checkpoint(PC.getWord(),MAR.getWord(),registers,cycles,
+				instructionMemory.snapshot(),dataMemory.snapshot()));
+		return id;
+	}
+
+	/**
+	* Return to a checkpoint.
+	*
+	* The checkpoint is kept, so it can be restored again.
+	* Decoded and translated instructions are kept unless
+	* the instruction memory differs from the checkpoint.
+	*
+	* @param id the id returned by checkpoint()
+	* @throws IllegalArgumentException if there is no such checkpoint
+	**/
+	public void restore(int id){
+		Checkpoint c = checkpoints.get(id);
+		if (c == null) throw new IllegalArgumentException("no checkpoint " + id);
+		restoreState(c);
+		if (undo != null) undo.clear();
+	}
+
+	/**
+	* Return to the state of a checkpoint.
+	**/
+	private void restoreState(Checkpoint c){
+		PC.setWord(c.pc);
+		MAR.setWord(c.mar);
+		for (int i = 0; i < regFileSize; i++) regFile[i].setWord(c.registers[i]);
+		instructionMemory.restore(c.instructions);
+		dataMemory.restore(c.data);
+		cycles = c.cycles;
+		resynchronize();
+	}
+
+	/**
+	* Start recording cycles so they can be undone.
+	*
+	* Uses the UndoLog defaults: the last 1M cycles are
+	* kept (8MB), with a checkpoint every 64K cycles, and
+	* the checkpoints hold at most 32MB.
+	**/
+	public void enableUndo(){
+		enableUndo(UndoLog.DEFAULT_CAPACITY,UndoLog.DEFAULT_INTERVAL,UndoLog.DEFAULT_CHECKPOINT_BYTES);
+	}
+
+	/**
+	* Start recording cycles so they can be undone.
+	*
+	* @param capacity the number of cycles undone one by one
+	* @param interval cycles between checkpoints
+	* @param checkpointBytes the heap the checkpoints may hold,
+	* which bounds how far back the processor can rewind
+	**/
+	public void enableUndo(int capacity, long interval, long checkpointBytes){
+		disableUndo();
+		undo = new UndoLog(this,capacity,interval,checkpointBytes);
+		undo.clear();
+	}
+
+	/**
+	* Stop recording cycles and forget the recorded ones.
+	**/
+	public void disableUndo(){
+		if (undo == null) return;
+		undo.release();
+		undo = null;
+	}
+
+	/**
+	* Undo the last cycle.
+	*
+	* @return false if there is no recorded cycle to undo
+	**/
+	public boolean stepBack(){
+		return cycles > 0 && rewind(cycles - 1);
+	}
+
+	/**
+	* Go back to the earliest recorded cycle.
+	*
+	* @return false if there is nothing to go back to
+	**/
+	public boolean reverseContinue(){
+		if (undo == null || undo.earliest() >= cycles) return false;
+		return rewind(undo.earliest());
+	}
+
+	/**
+	* Go back to an earlier cycle.
+	*
+	* Recent cycles are undone one by one from the log.
+	* Older ones are reached by restoring the closest
+	* checkpoint before them and running forward from it;
+	* the cycles run again are neither traced nor counted
+	* by the metrics or the profiler a second time, nor
+	* shown to the data caches and branch predictors again.
+	*
+	* @param cycle the cycle count to return to
+	* @return false if that cycle is not recorded
+	**/
+	public boolean rewind(long cycle){
+		if (undo == null || cycle < 0 || cycle > cycles) return false;
+		if (cycles - cycle > undo.size()){
+			int i = undo.checkpointBefore(cycle);
+			if (i < 0) return false;
+			restoreState(checkpoints.get(undo.checkpointId(i)));
+			undo.clearRing();
+			replay(cycle);
+		}
+		while (cycles > cycle && undo.undo());
+		if (shadow != null) {
+			shadow.copyState(this);
+			divergence = null;
+		}
+		return cycles == cycle;
+	}
+
+	/**
+	* Run forward again to a cycle that was executed once,
+	* with the trace, the metrics, the profiler, the data
+	* caches and the branch predictors detached.
+	*
+	* @param cycle the cycle count to stop at
+	**/
+	private void replay(long cycle){
+		TraceRecorder t = trace;
+		ProcessorMetrics m = metrics;
+		Profiler f = profiler;
+		DataCache[] c = caches;
+		BranchPredictor[] b = predictors;
+		trace = null;
+		metrics = null;
+		profiler = null;
+		caches = null;
+		predictors = null;
+		try {
+			while (cycles < cycle && step());
+		}
+		finally {
+			trace = t;
+			metrics = m;
+			profiler = f;
+			caches = c;
+			predictors = b;
+		}
+	}
+
+	/**
+	* Start writing a binary trace of every cycle.
+	*
+	* Uses a ring of TraceRecorder.DEFAULT_CAPACITY records.
+	*
+	* @param filename the trace file to write
+	* @throws IOException if the file cannot be written
+	**/
+	public void startTrace(String filename) throws IOException {
+		startTrace(filename,TraceRecorder.DEFAULT_CAPACITY);
+	}
+
+	/**
+	* Start writing a binary trace of every cycle.
+	*
+	* Any trace being written is finished first. The
+	* first record is the next cycle executed; cycles
+	* replayed by rewind() are not recorded.
+	*
+	* @param filename the trace file to write
+	* @param capacity the number of records buffered before
+	* the processor waits for the file
+	* @throws IOException if the file cannot be written
+	**/
+	public void startTrace(String filename, int capacity) throws IOException {
+		stopTrace();
+		trace = new TraceRecorder(this,filename,capacity);
+	}
+
+	/**
+	* Finish the trace being written, if any.
+	*
+	* @return the number of cycles recorded
+	* @throws IOException if the trace could not be written
+	**/
+	public long stopTrace() throws IOException {
+		if (trace == null) return 0;
+		TraceRecorder t = trace;
+		trace = null;
+		t.close();
+		return t.getRecords();
+	}
+
+	/**
+	* Start counting the instructions this processor executes.
+	*
+	* The counters are published through JMX as
+	* "isasim:type=Processor,name=NAME" (see ProcessorMetrics).
+	* The JIT engines keep running translated code and count
+	* a block at a time.
+	*
+	* @param name the name to publish the counters under
+	* @return the counters
+	**/
+	public ProcessorMetrics enableMetrics(String name){
+		disableMetrics();
+		ProcessorMetrics m = new ProcessorMetrics(name);
+		m.register();
+		metrics = m;
+		return m;
+	}
+
+	/**
+	* Stop counting and withdraw the counters from JMX.
+	*
+	* The counts so far stay part of ProcessorMetrics.TOTAL.
+	**/
+	public void disableMetrics(){
+		if (metrics == null) return;
+		metrics.unregister();
+		metrics = null;
+	}
+
+	/**
+	* Start counting the executions of each instruction address.
+	*
+	* The JIT engines keep running translated code.
+	*
+	* @return the Profiler, whose report() describes where
+	* the cycles went
+	**/
+	public Profiler enableProfiler(){
+		profiler = new Profiler(this);
+		return profiler;
+	}
+
+	/**
+	* Stop counting executions.
+	**/
+	public void disableProfiler(){
+		profiler = null;
+	}
+
+	/**
+	* Let a data cache watch the mr and mw instructions.
+	*
+	* Any number of caches may watch the same run. While one
+	* does, the JIT engines run instruction by instruction.
+	*
+	* @param c the cache, which counts from where it is
+	**/
+	public void addCache(DataCache c){
+		if (caches == null) caches = new DataCache[] {c};
+		else {
+			caches = Arrays.copyOf(caches,caches.length + 1);
+			caches[caches.length - 1] = c;
+		}
+	}
+
+	/**
+	* Stop every data cache watching.
+	**/
+	public void removeCaches(){
+		caches = null;
+	}
+
+	/**
+	* Let a branch predictor watch the beq and j instructions.
+	*
+	* Any number of predictors may watch the same run. While
+	* one does, the JIT engines run instruction by instruction.
+	*
+	* @param b the predictor, which learns from where it is
+	**/
+	public void addPredictor(BranchPredictor b){
+		if (predictors == null) predictors = new BranchPredictor[] {b};
+		else {
+			predictors = Arrays.copyOf(predictors,predictors.length + 1);
+			predictors[predictors.length - 1] = b;
+		}
+	}
+
+	/**
+	* Stop every branch predictor watching.
+	**/
+	public void removePredictors(){
+		predictors = null;
+	}
+
+	/**
+	* The breakpoints and watchpoints of this processor.
+	*
+	* They are only checked while at least one is set.
+	*
+	* @return the breakpoints, initially none
+	**/
+	public Breakpoints getBreakpoints(){
+		if (breakpoints == null) breakpoints = new Breakpoints(this);
+		return breakpoints;
+	}
+
+	/**
+	* Discard a checkpoint, releasing the pages only it holds.
+	*
+	* @param id the id returned by checkpoint()
+	**/
+	public void discard(int id){
+		checkpoints.remove(id);
+	}
+
+	/**
+	* The heap a checkpoint holds that an earlier one does not.
+	*
+	* @param id the id returned by checkpoint()
+	* @param earlier the id of the earlier checkpoint, or -1
+	* @return an estimate in bytes, or 0 if there is no such checkpoint
+	**/
+	long checkpointBytes(int id, int earlier){
+		Checkpoint c = checkpoints.get(id);
+		if (c == null) return 0;
+		Checkpoint e = checkpoints.get(earlier);
+		return c.instructions.getBytes(e == null ? null : e.instructions) + c.data.getBytes(e == null ? null : e.data)
+				+ 4L * c.registers.length;
+	}
+
+	/**
+	* Create an independent copy of this processor.
+	*
+	* The copy has the same configuration, engine, state
+	* and cycle count, and starts with the decoded and
+	* translated instructions of this processor, so it
+	* continues as fast as this one runs. Memory pages are
+	* shared copy-on-write. The copy is not tied to any file
+	* and does not inherit checkpoints.
+	*
+	* Must not be called while this processor is running;
+	* the copy can then run on any thread, alongside this
+	* processor and other copies.
+	*
+	* @return the copy
+	**/
+	public Processor fork(){
+		Processor p = new Processor(this,engine);
+		p.cycles = cycles;
+		p.decodeCache.copyFrom(decodeCache);
+		if (translator != null && p.translator != null) p.translator.copyFrom(translator);
+		return p;
+	}
+
+	/**
+	* Load a new program.
+	*
+	* The instruction memory is replaced by the given
+	* words, which become the image that reset() returns
+	* to, and the processor is reset. Nothing is written
+	* to the instruction memory file.
+	*
+	* @param instructions the new instruction memory words
+	* @throws IllegalArgumentException if an instruction names
+	* a register beyond the register file; the program is
+	* then not loaded
+	**/
+	public void load(int[] instructions){
+		if (instructions != null){
+			for (int pc = 0; pc < instructions.length && pc < imemSize; pc++) checkRegisters(pc,instructions[pc]);
+		}
+		instructionMemory.load(instructions);
+		reset();
+	}
+
+	/**
+	* Check that the instruction memory only names registers
+	* that exist.
+	*
+	* @throws IllegalArgumentException naming the first
+	* instruction that uses a missing register
+	**/
+	private void checkRegisters(){
+		// 4-bit fields can only name &r0..&r15
+		if (regFileSize > 15) return;
+		for (int pc = 0; pc < imemSize; pc++) checkRegisters(pc,instructionMemory.getWord(pc));
+	}
+
+	/**
+	* Check that one instruction only names registers that exist.
+	**/
+	private void checkRegisters(int pc, int instruction){
+		int r = DecodedInstruction.highestRegister(instruction);
+		if (r >= regFileSize){
+			throw new IllegalArgumentException("instruction " + pc + " (" + Simulator.instString(Utilities.wordToBin(instruction & 0xFFFF,16))
+					+ ") uses &r" + r + ", but register.count is " + regFileSize);
+		}
+	}
+
+	/**
+	* Perform one cycle with the selected engine.
+	*
+	* @return false if the processor has stopped.
+	**/
+	private boolean step(){
+		boolean running;
+		long entry = undo != null ? undo.capture() : 0;
+		boolean watched = caches != null || predictors != null;
+		int pc = trace != null || profiler != null || watched ? PC.getWord() : 0;
+		DecodedInstruction counted = metrics != null ? decodeCache.get(PC.getWord()) : null;
+		DecodedInstruction observed = watched ? decodeCache.get(pc) : null;
+		boolean zero = counted != null && regFile[counted.ra].getWord() == 0;
+		switch (engine){
+			case INTERPRETER:
+			case JIT:
+				running = interpreter.step();
+				if (!running) terminate();
+				break;
+			case CROSS_CHECK:
+			case JIT_CHECK:
+				running = crossCheck();
+				break;
+			default:
+				running = tick();
+				break;
+		}
+		if (running) {
+			cycles++;
+			if (undo != null) undo.push(entry);
+			if (trace != null) trace.record(pc);
+			if (counted != null) metrics.retire(counted.opcode,zero);
+			if (profiler != null) profiler.count(pc,PC.getWord() != pc + 1);
+			if (observed != null) observe(pc,observed);
+		}
+		else if (counted != null) metrics.halt();
+		return running;
+	}
+
+	/**
+	* Show an executed instruction to the data caches and
+	* branch predictors.
+	*
+	* @param pc its address
+	* @param ins the instruction
+	**/
+	private void observe(int pc, DecodedInstruction ins){
+		switch (ins.opcode){
+			case MR:
+			case MW:
+				if (caches != null){
+					for (DataCache c : caches) c.access(pc,MAR.getWord(),ins.opcode == Opcode.MW);
+				}
+				break;
+			case BEQ:
+				if (predictors != null){
+					int target = BranchPredictor.target(pc,ins.immediate,regWidth);
+					for (BranchPredictor b : predictors) b.branch(pc,target,PC.getWord() != pc + 1);
+				}
+				break;
+			case J:
+				if (predictors != null){
+					for (BranchPredictor b : predictors) b.jump(pc,PC.getWord());
+				}
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	* Perform one cycle on both engines and compare them.
+	*
+	* The interpreter runs on this processor and the
+	* datapath runs on the shadow.
+	*
+	* @return false if the processor has stopped or diverged.
+	**/
+	private boolean crossCheck(){
+		if (divergence != null) return false;
+		int pc = PC.getWord();
+		boolean stores = decodeCache.get(pc).opcode == Opcode.MW;
+		boolean running = interpreter.step();
+		if (!checkShadow(0,pc,1,running,stores) || !running){
+			terminate();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	* Advance the structural shadow and compare it with this processor.
+	*
+	* The shadow performs the same number of cycles that
+	* this processor has just executed from pc. The first
+	* point where their state differs is recorded and printed.
+	*
+	* @param offset cycles executed since cycles was last updated
+	* @param pc the address the cycles started from
+	* @param count the number of cycles executed
+	* @param running false if this processor stopped at the last cycle
+	* @param stores true if the cycles may have written data memory
+	* @return false if the engines have diverged.
+	**/
+	boolean checkShadow(long offset, int pc, int count, boolean running, boolean stores){
+		if (divergence != null) return false;
+		boolean shadowRunning = true;
+		for (int i = 0; i < count && shadowRunning; i++) shadowRunning = shadow.tick();
+
+		String diff = null;
+		if (running != shadowRunning){
+			diff = "halt fast=" + !running + " structural=" + !shadowRunning;
+		}
+		else if (PC.getWord() != shadow.PC.getWord()){
+			diff = "PC fast=" + PC.getSigned() + " structural=" + shadow.PC.getSigned();
+		}
+		else if (MAR.getWord() != shadow.MAR.getWord()){
+			diff = "MAR fast=" + MAR.getSigned() + " structural=" + shadow.MAR.getSigned();
+		}
+		else {
+			for (int i = 0; i < regFileSize; i++){
+				if (regFile[i].getWord() != shadow.regFile[i].getWord()){
+					diff = "&r" + i + " fast=" + regFile[i].getSigned()
+							+ " structural=" + shadow.regFile[i].getSigned();
+					break;
+				}
+			}
+		}
+		if (diff == null && (stores || !running)){
+			int at = dataMemory.firstDifference(shadow.dataMemory);
+			if (at >= 0) diff = "Dmem[" + at + "] fast=" + dataMemory.getWord(at)
+					+ " structural=" + shadow.dataMemory.getWord(at);
+		}
+		if (diff == null) return true;
+
+		long first = cycles + offset;
+		String where = count == 1 ? "cycle " + first : "cycles " + first + "-" + (first + count - 1);
+		divergence = where + " from PC " + pc + " ("
+				+ Simulator.instString(Utilities.wordToBin(decodeCache.get(pc).word,16)) + "): " + diff;
+		System.out.println("Engines diverged: " + divergence);
+		return false;
+	}
+
+	/**
+	* Report the result of cross-checking.
+	*
+	* @return a description of the first divergence between
+	* the engines, or null if they have agreed so far.
+	**/
+	public String getDivergence(){
+		return divergence;
+	}
+
+	/**
+	* Count the instructions executed since the last reset.
+	*
+	* @return the number of completed cycles
+	**/
+	public long getCycles(){
+		return cycles;
+	}
+
+	/**
+	* Copy the architectural state of another processor.
+	*
+	* The PC, MAR, register file and both memories
+	* are copied; the two processors must share a configuration.
+	*
+	* @param source the processor to copy from
+	**/
+	private void copyState(Processor source){
+		PC.setWord(source.PC.getWord());
+		MAR.setWord(source.MAR.getWord());
+		for (int i = 0; i < regFileSize; i++) {
+			regFile[i].setWord(source.regFile[i].getWord());
+		}
+		instructionMemory.copyFrom(source.instructionMemory);
+		dataMemory.copyFrom(source.dataMemory);
+		decodeCache.invalidate();
+		decodedVersion = instructionMemory.getVersion();
 	}
 
 	/**
@@ -229,64 +1152,62 @@ public class Processor{
 	* control signals and data are passed between
 	* the various functional units of this system.
 	* 
-	* @return false if the current instruction is empty
+	* @return false if the current instruction is empty or invalid
 	**/ 
     private boolean tick(){
-		String instruction = instructionMemory.read();
+		DecodedInstruction ins = decodeCache.get(PC.getWord());
 
-		if (Utilities.binToInt(instruction) == 0){
+		if (ins.opcode == Opcode.HALT){
 			terminate();
 			return false;
 		}
 
-		String opfunc = instruction.substring(0,4) + instruction.substring(12,16);
-		String addrA = "0"+instruction.substring(4,8);//register addressing is unsigned
-		String addrB = "0"+instruction.substring(8,12);//register addressing is unsigned
-		String addrJ = instruction.substring(4,16);
-		
-
-		// potential operands
-		String immediate = signEx16.signExtend(instruction.substring(8,16));
-		Register RA = regFile[Utilities.binToInt(addrA)];
-		Register RB = regFile[Utilities.binToInt(addrB)];
+		// potential operands; I-type words have no rb
+		int immediate = ins.immediate;
+		Register RA = regFile[ins.ra];
+		int rb = ins.opcode.isRType() ? regFile[ins.rb].getWord() : 0;
 		
 		// MCW encoding: [PCsrc][Branch][Memory][ALUsrc][ALUop]][MAR][Rwrite][Rsel]	
-		String MCW = controller.controlWord(opfunc);	
-		char brsel;
-		if(MCW.substring(1,2).equals("1") && Utilities.binToInt(RA.getValue()) == 0){
-			brsel = '1';
+		int MCW = ins.mcw;
+		if (MCW == Controller.INVALID){
+			terminate();
+			return false;
+		}
+		int brsel;
+		if((MCW & Controller.MCW_BRANCH) != 0 && RA.getWord() == 0){
+			brsel = 1;
 		}
 		else{
-			brsel = '0';
+			brsel = 0;
 		}
 
-		aluMux.update(RB.getValue(),immediate);
-		branchMux.update(Utilities.intToBin(16,1),immediate);
+		aluMux.update(rb,immediate);
+		branchMux.update(1,immediate);
 		
 
-		String aluInputB = aluMux.output(MCW.charAt(3));
-		String pcAddend = branchMux.output(brsel);
-		String newPC = pcAdder.operate(PC.getValue(),pcAddend);	
+		int aluInputB = aluMux.output((MCW & Controller.MCW_ALUSRC) != 0 ? 1 : 0);
+		int pcAddend = branchMux.output(brsel);
+		int newPC = pcAdder.operate(PC.getWord(),pcAddend);	
 	
-		alu.update(MCW.substring(4,6));	
-		String aluRes = alu.operate(RA.getValue(),aluInputB);
+		alu.update((MCW & Controller.MCW_ALUOP) >>> Controller.MCW_ALUOP_SHIFT);	
+		int aluRes = alu.operate(RA.getWord(),aluInputB);
 		
-		if (MCW.charAt(2) == '1') {
-			dataMemory.write(RA.getValue());
+		if ((MCW & Controller.MCW_MEMWRITE) != 0) {
+			dataMemory.writeWord(RA.getWord());
 		}	
-		regMux.update(dataMemory.read(),aluRes);
-		if (MCW.charAt(7) == '1') {
-			RA.update(regMux.output(MCW.charAt(8)));
+		regMux.update(dataMemory.readWord(),aluRes);
+		if ((MCW & Controller.MCW_RWRITE) != 0) {
+			RA.setWord(regMux.output(MCW & Controller.MCW_RSEL));
 		}
 	
 
-		if (MCW.charAt(6) == '1') {
-			MAR.update(aluRes);
+		if ((MCW & Controller.MCW_MAR) != 0) {
+			MAR.setWord(aluRes);
 		}
 		
-		String Jump = PC.getValue().substring(0,4)+addrJ;
+		int Jump = (PC.getWord() & ~0xFFF) | ins.jump;
 		jumpMux.update(newPC,Jump);	
-		PC.update(jumpMux.output(MCW.charAt(0)));	
+		PC.setWord(jumpMux.output((MCW & Controller.MCW_PCSRC) != 0 ? 1 : 0));	
 		return true;
     }
 
@@ -300,6 +1221,8 @@ public class Processor{
 	*/
 	public void zeroData(){
 		dataMemory.clear();
+		if (shadow != null) shadow.dataMemory.clear();
+		if (undo != null) undo.clear();
 	}
 	
 	/**
@@ -0,0 +1,293 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Execution counters of a Processor of the
+* ISA simulator package "isasim".
+*
+* <p> Each Processor with metrics enabled owns one
+* ProcessorMetrics. Its counters are plain longs in one
+* array, written only by the thread running the Processor,
+* so counting costs an array increment and processors on
+* different threads never write the same counter: the
+* counters are striped by Processor. Readers (JMX, the
+* reporters) read them with opaque loads and may see values
+* a few cycles old; the total adds up every stripe when it
+* is read, so nothing is contended while the processors run.
+*
+* <p> The translated blocks of the JIT engines are counted
+* a block at a time: each block knows how many instructions
+* of each type it holds.
+*
+* <p> Contained methods:
+*		retire(): count executed instructions.
+*		register()/unregister(): publish the counters through JMX.
+*		addReporter(): call a MetricsReporter periodically.
+*		snapshot(): every counter by name.
+*
+**/
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class ProcessorMetrics implements ProcessorMetricsMXBean {
+
+	public static final String DOMAIN = "isasim";
+	public static final String TOTAL_NAME = "total";
+
+	// instructions retired per opcode use the Opcode ordinals LA..J
+	static final int OPCODES = Opcode.J.ordinal() + 1;
+	static final int TAKEN = OPCODES;
+	static final int NOT_TAKEN = OPCODES + 1;
+	static final int READS = OPCODES + 2;
+	static final int WRITES = OPCODES + 3;
+	static final int HALTS = OPCODES + 4;
+	static final int NANOS = OPCODES + 5;
+	static final int TIMED = OPCODES + 6;
+	static final int SIZE = OPCODES + 7;
+
+	private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private static final List<ProcessorMetrics> live = new ArrayList<ProcessorMetrics>();
+	private static final long[] finished = new long[SIZE];
+	private static ScheduledExecutorService reporters;
+
+	/** The sum of the counters of every Processor. */
+	public static final ProcessorMetrics TOTAL = new ProcessorMetrics(TOTAL_NAME,null);
+
+	private final String name;
+	private final long[] counts;
+	private ObjectName objectName;
+
+	/**
+	* ProcessorMetrics constructor.
+	*
+	* @param n the name to register the counters under
+	* @param c the counters, or null for the total
+	**/
+	private ProcessorMetrics(String n, long[] c){
+		name = n;
+		counts = c;
+	}
+
+	/**
+	* ProcessorMetrics constructor for one Processor.
+	*
+	* @param n the name to register the counters under
+	**/
+	public ProcessorMetrics(String n){
+		this(n,new long[SIZE]);
+	}
+
+	/**
+	* Count one executed instruction.
+	*
+	* @param op the operation of the instruction
+	* @param zero true if its RA register held 0, which
+	* decides whether a beq branched
+	**/
+	void retire(Opcode op, boolean zero){
+		switch (op){
+			case MR:
+				counts[READS]++;
+				break;
+			case MW:
+				counts[WRITES]++;
+				break;
+			case BEQ:
+				counts[zero ? TAKEN : NOT_TAKEN]++;
+				break;
+			default:
+				break;
+		}
+		counts[op.ordinal()]++;
+	}
+
+	/**
+	* Count the instructions of a translated block.
+	*
+	* @param mix the instructions of the block per opcode
+	* @param branch 1 if the block ended in a taken beq, 0 in
+	* one that fell through, -1 if it ends in no beq
+	**/
+	void retire(int[] mix, int branch){
+		for (int i = 0; i < OPCODES; i++) counts[i] += mix[i];
+		counts[READS] += mix[Opcode.MR.ordinal()];
+		counts[WRITES] += mix[Opcode.MW.ordinal()];
+		if (branch > 0) counts[TAKEN]++;
+		else if (branch == 0) counts[NOT_TAKEN]++;
+	}
+
+	/**
+	* Count a stop at an empty or invalid instruction.
+	**/
+	void halt(){
+		counts[HALTS]++;
+	}
+
+	/**
+	* Count the time of a call to execute().
+	*
+	* @param cycles the instructions it executed
+	* @param nanos the wall time it took
+	**/
+	void time(long cycles, long nanos){
+		counts[TIMED] += cycles;
+		counts[NANOS] += nanos;
+	}
+
+	/**
+	* Read one counter.
+	*
+	* The total adds the counters of every registered
+	* Processor to those of the unregistered ones.
+	**/
+	long get(int counter){
+		if (counts != null) return (long)COUNTS.getOpaque(counts,counter);
+		synchronized (live){
+			long sum = finished[counter];
+			for (ProcessorMetrics m : live) sum += m.get(counter);
+			return sum;
+		}
+	}
+
+	public String getName(){ return name; }
+	public long getRetiredLa(){ return get(Opcode.LA.ordinal()); }
+	public long getRetiredMr(){ return get(Opcode.MR.ordinal()); }
+	public long getRetiredMw(){ return get(Opcode.MW.ordinal()); }
+	public long getRetiredAddi(){ return get(Opcode.ADDI.ordinal()); }
+	public long getRetiredAdd(){ return get(Opcode.ADD.ordinal()); }
+	public long getRetiredSub(){ return get(Opcode.SUB.ordinal()); }
+	public long getRetiredNor(){ return get(Opcode.NOR.ordinal()); }
+	public long getRetiredBeq(){ return get(Opcode.BEQ.ordinal()); }
+	public long getRetiredJ(){ return get(Opcode.J.ordinal()); }
+	public long getBranchesTaken(){ return get(TAKEN); }
+	public long getBranchesNotTaken(){ return get(NOT_TAKEN); }
+	public long getMemoryReads(){ return get(READS); }
+	public long getMemoryWrites(){ return get(WRITES); }
+	public long getHalts(){ return get(HALTS); }
+	public double getWallSeconds(){ return get(NANOS) / 1e9; }
+
+	public long getCycles(){
+		long cycles = 0;
+		for (int i = 0; i < OPCODES; i++) cycles += get(i);
+		return cycles;
+	}
+
+	public double getInstructionsPerSecond(){
+		long nanos = get(NANOS);
+		return nanos == 0 ? 0 : get(TIMED) * 1e9 / nanos;
+	}
+
+	/**
+	* Read every counter.
+	*
+	* @return the counters by name, in the order of ProcessorMetricsMXBean
+	**/
+	public Map<String,Number> snapshot(){
+		Map<String,Number> s = new LinkedHashMap<String,Number>();
+		s.put("cycles",getCycles());
+		for (int i = 0; i < OPCODES; i++) s.put("retired." + Opcode.values()[i].mnemonic(),get(i));
+		s.put("branches.taken",getBranchesTaken());
+		s.put("branches.notTaken",getBranchesNotTaken());
+		s.put("memory.reads",getMemoryReads());
+		s.put("memory.writes",getMemoryWrites());
+		s.put("halts",getHalts());
+		s.put("wallSeconds",getWallSeconds());
+		s.put("instructionsPerSecond",getInstructionsPerSecond());
+		return s;
+	}
+
+	/**
+	* Publish these counters, and the total, through JMX.
+	*
+	* A name that is already registered gets a "#n" suffix.
+	**/
+	void register(){
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		synchronized (live){
+			try {
+				if (TOTAL.objectName == null){
+					TOTAL.objectName = objectName(TOTAL_NAME);
+					if (!server.isRegistered(TOTAL.objectName)) server.registerMBean(TOTAL,TOTAL.objectName);
+				}
+				ObjectName on = objectName(name);
+				for (int n = 2; server.isRegistered(on); n++) on = objectName(name + "#" + n);
+				server.registerMBean(this,on);
+				objectName = on;
+			}
+			catch (JMException e){
+				e.printStackTrace();
+			}
+			live.add(this);
+		}
+	}
+
+	/**
+	* Withdraw these counters from JMX.
+	*
+	* Their values stay part of the total.
+	**/
+	void unregister(){
+		synchronized (live){
+			if (!live.remove(this)) return;
+			for (int i = 0; i < SIZE; i++) finished[i] += get(i);
+			if (objectName == null) return;
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			}
+			catch (JMException e){
+				e.printStackTrace();
+			}
+			objectName = null;
+		}
+	}
+
+	/**
+	* The JMX name of a set of counters.
+	**/
+	private static ObjectName objectName(String n) throws JMException {
+		return new ObjectName(DOMAIN + ":type=Processor,name=" + ObjectName.quote(n));
+	}
+
+	/**
+	* Call a reporter periodically with the counters of every
+	* registered Processor and their total.
+	*
+	* @param reporter the reporter to call
+	* @param millis the period
+	* @return the schedule, cancel() it to stop reporting
+	**/
+	public static synchronized ScheduledFuture<?> addReporter(MetricsReporter reporter, long millis){
+		if (reporters == null){
+			reporters = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r,"isasim metrics");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return reporters.scheduleAtFixedRate(() -> {
+			List<ProcessorMetrics> current;
+			synchronized (live){
+				current = new ArrayList<ProcessorMetrics>(live);
+			}
+			for (ProcessorMetrics m : current) reporter.report(m.name,m.snapshot());
+			reporter.report(TOTAL_NAME,TOTAL.snapshot());
+		},millis,millis,TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,76 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Management interface of the execution
+* counters of the ISA simulator package "isasim".
+*
+* <p> Every Processor with metrics enabled is registered
+* as "isasim:type=Processor,name=NAME", and the sum over all
+* of them (including those already disabled) as
+* "isasim:type=Processor,name=total", so running processors
+* can be watched from JConsole or any JMX client.
+*
+* <p> Counters start at 0 when metrics are enabled and are
+* not cleared by reset(). Wall time and instructions per
+* second cover the cycles run by execute().
+*
+**/
+
+public interface ProcessorMetricsMXBean {
+
+	/** @return the name the counters are registered under */
+	String getName();
+
+	/** @return the instructions executed */
+	long getCycles();
+
+	/** @return the la instructions executed */
+	long getRetiredLa();
+
+	/** @return the mr instructions executed */
+	long getRetiredMr();
+
+	/** @return the mw instructions executed */
+	long getRetiredMw();
+
+	/** @return the addi instructions executed */
+	long getRetiredAddi();
+
+	/** @return the add instructions executed */
+	long getRetiredAdd();
+
+	/** @return the sub instructions executed */
+	long getRetiredSub();
+
+	/** @return the nor instructions executed */
+	long getRetiredNor();
+
+	/** @return the beq instructions executed */
+	long getRetiredBeq();
+
+	/** @return the j instructions executed */
+	long getRetiredJ();
+
+	/** @return the beq instructions that branched */
+	long getBranchesTaken();
+
+	/** @return the beq instructions that fell through */
+	long getBranchesNotTaken();
+
+	/** @return the data memory reads */
+	long getMemoryReads();
+
+	/** @return the data memory writes */
+	long getMemoryWrites();
+
+	/** @return the times execution stopped at an empty or invalid instruction */
+	long getHalts();
+
+	/** @return the seconds spent in execute() */
+	double getWallSeconds();
+
+	/** @return the instructions per second of execute() */
+	double getInstructionsPerSecond();
+}
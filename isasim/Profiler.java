@@ -0,0 +1,268 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Per-address profiler of the ISA simulator
+* package "isasim".
+*
+* <p> A Profiler counts how often each instruction memory
+* address is executed, and how often the beq or j there
+* changed the flow of the program, in primitive arrays
+* indexed by the PC. Counting costs an array increment per
+* cycle; translated blocks of the JIT engines are counted a
+* block at a time and spread over their addresses when the
+* counts are read.
+*
+* <p> The report ranks:
+*		the hottest instructions, disassembled as the
+*		Simulator shows them;
+*		the basic blocks of the program (split at every
+*		beq and j and at their targets) by cycles spent;
+*		the loops, i.e. the beq and j instructions that
+*		branch backwards, with how often the loop was
+*		entered and its average trip count.
+* It ends with the share of cycles spent in instructions
+* that do nothing but move to the next address (addi
+* with 0, beq over nothing, j to the next address). The
+* empty word (nop in the source) halts the processor, so
+* it never takes a cycle.
+*
+* <p> Contained methods:
+*		count(): count an executed instruction.
+*		getCount(): the executions of an address.
+*		report(): describe where the cycles went.
+*
+**/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class Profiler {
+
+	public static final int DEFAULT_TOP = 10;
+
+	private final Processor processor;
+	private final long[] counts;
+	private final long[] taken;
+	// entries of translated blocks, by first address, and their lengths
+	private final long[] blockEntries;
+	private final int[] blockLengths;
+	private boolean blocks;
+
+	/**
+	* Profiler constructor.
+	*
+	* @param p the Processor to profile
+	**/
+	public Profiler(Processor p){
+		processor = p;
+		counts = new long[p.imemSize];
+		taken = new long[p.imemSize];
+		blockEntries = new long[p.imemSize];
+		blockLengths = new int[p.imemSize];
+	}
+
+	/**
+	* Count one executed instruction.
+	*
+	* @param pc the address of the instruction
+	* @param branched true if the next PC is not pc + 1
+	**/
+	void count(int pc, boolean branched){
+		if (pc < 0 || pc >= counts.length) return;
+		counts[pc]++;
+		if (branched) taken[pc]++;
+	}
+
+	/**
+	* Count one run of a translated block.
+	*
+	* @param start the address of its first instruction
+	* @param length the number of instructions
+	* @param branched true if it left other than to start + length
+	**/
+	void countBlock(int start, int length, boolean branched){
+		blockEntries[start]++;
+		blockLengths[start] = length;
+		blocks = true;
+		if (branched) taken[start + length - 1]++;
+	}
+
+	/**
+	* Spread the entries of translated blocks over their addresses.
+	**/
+	private void fold(){
+		if (!blocks) return;
+		for (int s = 0; s < blockEntries.length; s++){
+			long n = blockEntries[s];
+			if (n == 0) continue;
+			for (int i = 0; i < blockLengths[s]; i++) counts[s + i] += n;
+			blockEntries[s] = 0;
+		}
+		blocks = false;
+	}
+
+	/**
+	* The number of times an address was executed.
+	*
+	* @param pc the address
+	* @return its executions
+	**/
+	public long getCount(int pc){
+		fold();
+		return pc < 0 || pc >= counts.length ? 0 : counts[pc];
+	}
+
+	/**
+	* The number of times the beq or j at an address branched.
+	*
+	* @param pc the address
+	* @return the times the next PC was not pc + 1
+	**/
+	public long getTaken(int pc){
+		return pc < 0 || pc >= taken.length ? 0 : taken[pc];
+	}
+
+	/**
+	* Forget every count.
+	**/
+	public void clear(){
+		for (int i = 0; i < counts.length; i++){
+			counts[i] = 0;
+			taken[i] = 0;
+			blockEntries[i] = 0;
+		}
+		blocks = false;
+	}
+
+	/**
+	* Describe where the cycles went.
+	*
+	* @param top the number of instructions and blocks to list
+	* @return the hotspot report
+	**/
+	public String report(int top){
+		fold();
+		long total = 0;
+		int used = 0;
+		for (long c : counts){
+			total += c;
+			if (c > 0) used++;
+		}
+		StringBuilder s = new StringBuilder();
+		s.append(String.format("Profile: %d cycles at %d addresses%n",total,used));
+		if (total == 0) return s.toString();
+
+		s.append(String.format("%nHot instructions:%n rank\t   pc\t%12s\t share\tinstruction%n","count"));
+		Integer[] order = new Integer[counts.length];
+		for (int i = 0; i < order.length; i++) order[i] = i;
+		Arrays.sort(order,(a, b) -> Long.compare(counts[b],counts[a]));
+		for (int r = 0; r < Math.min(top,used); r++){
+			int pc = order[r];
+			s.append(String.format("%5d\t%5d\t%12d\t%5.1f%%\t%s%n",r + 1,pc,counts[pc],
+					100.0 * counts[pc] / total,disassemble(pc)));
+		}
+
+		List<int[]> blockList = basicBlocks();
+		long[] cycles = new long[blockList.size()];
+		Integer[] ranked = new Integer[blockList.size()];
+		for (int b = 0; b < cycles.length; b++){
+			int[] block = blockList.get(b);
+			for (int pc = block[0]; pc < block[1]; pc++) cycles[b] += counts[pc];
+			ranked[b] = b;
+		}
+		Arrays.sort(ranked,(a, b) -> Long.compare(cycles[b],cycles[a]));
+		s.append(String.format("%nBasic blocks:%n rank\t  start-end\t%12s\t%12s\t share%n","entries","cycles"));
+		for (int r = 0; r < Math.min(top,ranked.length) && cycles[ranked[r]] > 0; r++){
+			int[] block = blockList.get(ranked[r]);
+			s.append(String.format("%5d\t%5d-%-5d\t%12d\t%12d\t%5.1f%%%n",r + 1,block[0],block[1] - 1,
+					counts[block[0]],cycles[ranked[r]],100.0 * cycles[ranked[r]] / total));
+		}
+
+		s.append(String.format("%nLoops (backward branches):%n branch\t  head\t%12s\t%12s\t   avg trips\tinstruction%n",
+				"taken","entries"));
+		for (int pc = 0; pc < counts.length; pc++){
+			int head = target(pc);
+			if (head < 0 || head > pc || taken[pc] == 0) continue;
+			long entries = Math.max(1,counts[head] - taken[pc]);
+			s.append(String.format("%7d\t%6d\t%12d\t%12d\t%12.1f\t%s%n",pc,head,taken[pc],entries,
+					(double)counts[head] / entries,disassemble(pc)));
+		}
+
+		long idle = 0;
+		int runs = 0;
+		boolean inRun = false;
+		for (int pc = 0; pc < counts.length; pc++){
+			boolean nothing = counts[pc] > 0 && doesNothing(pc);
+			if (nothing){
+				idle += counts[pc];
+				if (!inRun) runs++;
+			}
+			inRun = nothing;
+		}
+		s.append(String.format("%nNo-effect instructions: %d cycles (%.1f%%) in %d runs%n",idle,100.0 * idle / total,runs));
+		return s.toString();
+	}
+
+	/**
+	* Split the program into basic blocks.
+	*
+	* @return the blocks as {first address, end address}
+	**/
+	private List<int[]> basicBlocks(){
+		int n = counts.length;
+		boolean[] leader = new boolean[n + 1];
+		leader[0] = true;
+		for (int pc = 0; pc < n; pc++){
+			Opcode op = processor.decodeCache.get(pc).opcode;
+			if (op == Opcode.BEQ || op == Opcode.J || op == Opcode.HALT || op == Opcode.INVALID){
+				leader[pc + 1] = true;
+				int t = target(pc);
+				if (t >= 0 && t < n) leader[t] = true;
+			}
+		}
+		List<int[]> list = new ArrayList<int[]>();
+		int start = 0;
+		for (int pc = 1; pc <= n; pc++){
+			if (!leader[pc]) continue;
+			list.add(new int[] {start,pc});
+			start = pc;
+		}
+		return list;
+	}
+
+	/**
+	* The address a beq or j branches to, or -1.
+	**/
+	private int target(int pc){
+		DecodedInstruction ins = processor.decodeCache.get(pc);
+		if (ins.opcode == Opcode.BEQ) return Utilities.toSigned((pc + ins.immediate) & Utilities.mask(processor.regWidth),processor.regWidth);
+		if (ins.opcode == Opcode.J) return (pc & ~0xFFF) | ins.jump;
+		return -1;
+	}
+
+	/**
+	* Check whether an instruction only moves to the next address.
+	**/
+	private boolean doesNothing(int pc){
+		DecodedInstruction ins = processor.decodeCache.get(pc);
+		switch (ins.opcode){
+			case ADDI:
+				return ins.immediate == 0;
+			case BEQ:
+			case J:
+				return target(pc) == pc + 1;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	* The instruction at an address as the Simulator shows it.
+	**/
+	private String disassemble(int pc){
+		return Simulator.instString(Utilities.wordToBin(processor.decodeCache.get(pc).word,16));
+	}
+}
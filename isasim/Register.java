@@ -16,13 +16,23 @@ package isasim;
 *					in this register.
 *		update(): updates the data in the register to
 *				  the provided value.
+*		getWord(): returns the stored data as raw word bits.
+*		getSigned(): returns the stored data as a 2-complement
+*					 integer.
+*		setWord(): updates the register from raw word bits,
+*				   clipped to the width of this register.
+*
+*<p> The value is held as a primitive word masked to the
+* register width; the binary String form is only built
+* when getValue() is called.
 *
 **/
 
 public class Register {
 
-    private String value;
+    private int value;
 	private int width;
+	private int mask;
 	
 	/**
 	* Register constructor.
@@ -35,6 +45,7 @@ public class Register {
 	**/    
 	public Register(int size){
 		width = size;
+		mask = Utilities.mask(size);
 		update("");
     }
 	
@@ -50,6 +61,7 @@ public class Register {
 	**/
 	public Register(int size, String initVal) {
 		width = size;
+		mask = Utilities.mask(size);
 		update(initVal);
 	}
 
@@ -59,9 +71,36 @@ public class Register {
 	* @return the value currently stored
 	**/
 	public String getValue(){
+		return Utilities.wordToBin(value,width);
+	}
+
+	/**
+	* Read the raw bits of this Register.
+	*
+	* @return the value currently stored, masked to the register width
+	**/
+	public int getWord(){
 		return value;
 	}
 
+	/**
+	* Read the value of this Register as a 2-complement integer.
+	*
+	* @return the signed value currently stored
+	**/
+	public int getSigned(){
+		return Utilities.toSigned(value,width);
+	}
+
+	/**
+	* Read the size of this Register.
+	*
+	* @return the number of bits held by this Register
+	**/
+	public int getWidth(){
+		return width;
+	}
+
 	/**
 	* Update the value of this Register.
 	*
@@ -76,18 +115,29 @@ public class Register {
 	* @param newVal the data to store.
 	**/
 	public void update(String newVal) {
-		value = "";
+		value = 0;
 		if (newVal != null) {
 			if (newVal.length() > width){
-				value = newVal.substring(0,width);
+				value = Utilities.binToWord(newVal.substring(0,width));
 			}
 			else {
-				value = newVal;
+				value = Utilities.binToWord(newVal);
 			}
 		}
-		while (value.length() < width) value = "0" +value;
 		return;
 	}
 
+	/**
+	* Update the value of this Register from raw bits.
+	*
+	* Bits above the width of this register are
+	* discarded, as a hardware register would.
+	*
+	* @param word the data to store.
+	**/
+	public void setWord(int word) {
+		value = word & mask;
+	}
+
         
 }
@@ -0,0 +1,299 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Data memory shared by several Processors
+* of the ISA simulator package "isasim".
+*
+* <p> A SharedMemory keeps its words in one int array that
+* the cores of a MultiCore read and write from their own
+* threads without locks. Each Processor addresses it through
+* a port(), a Memory bound to the MAR of that Processor, so
+* the datapath and every engine use it like any data memory.
+*
+* <p> Every word is read and written through a VarHandle in
+* the access mode of the Ordering:
+*		PLAIN: plain loads and stores; a core may see the
+*			stores of another late or never.
+*		OPAQUE: every access reaches memory, in program order
+*			per word, with no ordering between words.
+*		ACQUIRE_RELEASE: an mr (acquire) that sees the value of
+*			an mw (release) also sees every store made before it.
+*		VOLATILE: one total order of all accesses (sequential
+*			consistency).
+* Words never tear: every mode reads and writes whole ints.
+*
+* <p> Contained methods:
+*		port(): the view of the memory for one Processor.
+*		getWord()/setWord(): access a word in the ordering.
+*		load()/restore(): replace the contents, and return to them.
+*		snapshot()/restore(Snapshot): capture the contents
+*			 and return to them later.
+*
+**/
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+public class SharedMemory extends Memory {
+
+	/** How the accesses of different cores are ordered. */
+	public enum Ordering { PLAIN, OPAQUE, ACQUIRE_RELEASE, VOLATILE }
+
+	private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(int[].class);
+
+	private final int[] words;
+	private final Ordering ordering;
+	private int[] initial;
+
+	/**
+	* SharedMemory constructor.
+	*
+	* @param capacity overall size of this Memory object
+	* @param length word size for this Memory object
+	* @param image the initial words (null for an empty memory)
+	* @param o the ordering of the accesses
+	**/
+	public SharedMemory(int capacity, int length, int[] image, Ordering o) {
+		super(capacity,length,new Register(32));
+		words = new int[capacity];
+		ordering = o;
+		load(image);
+	}
+
+	/**
+	* The ordering of the accesses to this object.
+	*
+	* @return the ordering it was created with
+	**/
+	public Ordering getOrdering(){
+		return ordering;
+	}
+
+	/**
+	* A view of this object for one Processor.
+	*
+	* The view reads and writes the words of this object,
+	* at the address held by the given Register.
+	*
+	* @param addrRegister the MAR of the Processor
+	* @return the view
+	**/
+	public Memory port(Register addrRegister){
+		return new Port(this,addrRegister);
+	}
+
+	/**
+	* Inspect a word of this object.
+	*
+	* @param address the location to inspect
+	* @return the word at address, or 0 if it is out of range
+	**/
+	public int getWord(int address){
+		if (address < 0 || address >= size) return 0;
+		switch (ordering){
+			case PLAIN:
+				return (int)WORDS.get(words,address);
+			case OPAQUE:
+				return (int)WORDS.getOpaque(words,address);
+			case ACQUIRE_RELEASE:
+				return (int)WORDS.getAcquire(words,address);
+			default:
+				return (int)WORDS.getVolatile(words,address);
+		}
+	}
+
+	/**
+	* Update a word of this object by address.
+	*
+	* The word is masked to the word length of this
+	* object. Writes beyond the capacity are ignored.
+	*
+	* @param address the location to write
+	* @param word the data to be written
+	**/
+	public void setWord(int address, int word){
+		if (address < 0 || address >= size) return;
+		word &= wordMask;
+		switch (ordering){
+			case PLAIN:
+				WORDS.set(words,address,word);
+				break;
+			case OPAQUE:
+				WORDS.setOpaque(words,address,word);
+				break;
+			case ACQUIRE_RELEASE:
+				WORDS.setRelease(words,address,word);
+				break;
+			default:
+				WORDS.setVolatile(words,address,word);
+				break;
+		}
+	}
+
+	/**
+	* Replace the contents of this object with an image.
+	*
+	* @param image the new words; missing words are empty.
+	**/
+	public void load(int[] image) {
+		int n = image == null ? 0 : Math.min(image.length,size);
+		for (int i = 0; i < size; i++) setWord(i,i < n ? image[i] : 0);
+		initial = n == 0 ? null : words.clone();
+		version++;
+	}
+
+	/**
+	* Return this object to the contents it was loaded with.
+	*
+	* Every word is copied back: a SharedMemory does not
+	* keep the modified flag of Memory, so that cores
+	* storing at once do not contend for it.
+	**/
+	public void restore() {
+		for (int i = 0; i < size; i++) setWord(i,initial == null ? 0 : initial[i]);
+		version++;
+	}
+
+	/**
+	* Capture the current contents of this object.
+	*
+	* @return the snapshot, holding a copy of every word
+	**/
+	public Snapshot snapshot() {
+		ByteBuffer copy = ByteBuffer.allocate(size * 4);
+		IntBuffer ints = copy.asIntBuffer();
+		for (int i = 0; i < size; i++) ints.put(getWord(i));
+		return new Snapshot(null,copy);
+	}
+
+	/**
+	* Return this object to the contents of a snapshot.
+	*
+	* @param s a snapshot of this object
+	**/
+	public void restore(Snapshot s) {
+		if (s.words == null || s.words.capacity() != size * 4) throw new IllegalArgumentException("not a snapshot of a shared Memory");
+		IntBuffer ints = s.words.duplicate().clear().asIntBuffer();
+		for (int i = 0; i < size; i++) setWord(i,ints.get(i));
+		version++;
+	}
+
+	/**
+	* Replace the contents of this object.
+	*
+	* @param source a Memory of the same capacity to copy from
+	**/
+	public void copyFrom(Memory source) {
+		for (int i = 0; i < size; i++) setWord(i,source.getWord(i));
+		version++;
+	}
+
+	/**
+	* Compare the contents of two Memory objects.
+	*
+	* @param other the Memory to compare against
+	* @return the first address holding different words, or -1
+	**/
+	public int firstDifference(Memory other) {
+		int n = Math.min(size,other.getSize());
+		for (int i = 0; i < n; i++){
+			if (getWord(i) != other.getWord(i)) return i;
+		}
+		return size == other.getSize() ? -1 : n;
+	}
+
+	/**
+	* Empty the data memory.
+	**/
+	public void clear(){
+		for (int i = 0; i < size; i++) setWord(i,0);
+		version++;
+	}
+
+	/**
+	* Count the pages that hold storage.
+	*
+	* @return every page; shared storage is not sparse
+	**/
+	public int getMappedPages(){
+		return (size + PAGE_WORDS - 1) >>> PAGE_SHIFT;
+	}
+
+	/**
+	* Store the current contents of this object.
+	*
+	* A SharedMemory is not tied to a file; see writeTo().
+	**/
+	public void writeToMem(){
+	}
+
+	/**
+	* Store the current contents of this object in a file.
+	*
+	* @param filename the file to write, text or "*.img"
+	* @return false if the file could not be written
+	**/
+	public boolean writeTo(String filename){
+		int[] copy = new int[size];
+		for (int i = 0; i < size; i++) copy[i] = getWord(i);
+		return new Memory(size,wordLength,copy,new Register(32)).writeTo(filename);
+	}
+
+	/**
+	* Retrieve the data stored for this memory.
+	*
+	* A SharedMemory is not tied to a file; see readFrom().
+	**/
+	public void readFromMem(){
+	}
+
+	/**
+	* Load the data stored in a file, as the initial contents.
+	*
+	* @param filename the file to read, text or "*.img"
+	**/
+	public void readFrom(String filename){
+		Memory m = new Memory(size,wordLength,filename,new Register(32));
+		int[] image = new int[size];
+		for (int i = 0; i < size; i++) image[i] = m.getWord(i);
+		load(image);
+	}
+
+	/**
+	* The view of a SharedMemory for one Processor.
+	*
+	* Every method is passed on to the SharedMemory; only
+	* the Register addressing readWord() and writeWord() is
+	* the port's own.
+	**/
+	private static final class Port extends Memory {
+
+		private final SharedMemory shared;
+
+		Port(SharedMemory s, Register addrRegister){
+			super(s.size,s.wordLength,addrRegister);
+			shared = s;
+		}
+
+		public int getWord(int address){ return shared.getWord(address); }
+		public void setWord(int address, int word){ shared.setWord(address,word); }
+		public void load(int[] image){ shared.load(image); }
+		public void restore(){ shared.restore(); }
+		public Snapshot snapshot(){ return shared.snapshot(); }
+		public void restore(Snapshot s){ shared.restore(s); }
+		public int getVersion(){ return shared.getVersion(); }
+		public void copyFrom(Memory source){ shared.copyFrom(source); }
+		public int firstDifference(Memory other){ return shared.firstDifference(other); }
+		public void clear(){ shared.clear(); }
+		public int getMappedPages(){ return shared.getMappedPages(); }
+		public void writeToMem(){ shared.writeToMem(); }
+		public boolean writeTo(String filename){ return shared.writeTo(filename); }
+		public void readFromMem(){ shared.readFromMem(); }
+		public void readFrom(String filename){ shared.readFrom(filename); }
+	}
+}
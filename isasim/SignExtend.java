@@ -19,10 +19,13 @@ package isasim;
 *					  the length matches the length
 *					  specified by this SignExtend's
 *					  "extendLen".
+*					  A primitive form extends a word of
+*					  a given width without creating Strings.
 **/
 
 public class SignExtend {
 	private int extendLen;
+	private int mask;
 
 	/**
 	* SignExtend constructor.
@@ -35,6 +38,7 @@ public class SignExtend {
 	**/
 	public SignExtend(int size) {
 		extendLen = size;
+		mask = Utilities.mask(size);
 	}
 	
 	/** 
@@ -57,6 +61,18 @@ public class SignExtend {
 		return output;
 	}
 
-
+	/**
+	* Perform the sign extend operation on a word.
+	*
+	* Bit (width-1) of the input is the sign bit and
+	* is repeated up to the extension length of this object.
+	*
+	* @param input the data to extend, in its low 'width' bits
+	* @param width the number of significant bits in input
+	* @return the sign-extended data
+	**/
+	public int signExtend(int input, int width){
+		return Utilities.toSigned(input,width) & mask;
+	}
 
 }
@@ -21,6 +21,20 @@ package isasim;
 *		creates the Gui object to display
 *		the processor's information. and
 *		waits for user action to continue.
+*		The Gui records the cycles it runs, so
+*		they can be stepped back one at a time or
+*		rewound to the earliest recorded cycle
+*		(unless the data memory is off-heap, which
+*		is too large to checkpoint by default).
+*		Execute runs the program on a separate thread
+*		that can be paused and stopped; the display is
+*		refreshed at most FRAME_RATE times a second,
+*		and only the values that changed are redrawn.
+*		The memories are listed by MemoryViews, which
+*		render only the visible rows, so memories of
+*		any size can be browsed.
+*		Execute stops at the breakpoints and watchpoints
+*		set in the Breakpoints window (see Breakpoints).
 *
 *<p>		compile():
 *			if the main method is provided
@@ -37,6 +51,10 @@ package isasim;
 *				another file during a simulation run.
 *
 *
+*<p>		compile() translates the source with the Assembler,
+*		which can also produce the instruction words in
+*		memory for Processors that are not tied to files.
+*
 *<p> Updated: 7/27/2017
 ***********************************/
 import java.io.BufferedReader;
@@ -48,26 +66,33 @@ import java.awt.*;
 import javax.swing.*;
 import java.io.*;
 import java.awt.event.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 public class Simulator {
 
-	//constants for the system. maybe make configurable?
-	private final static int REGISTER_WIDTH = 16;
-	private final static int REGISTER_FILE_SIZE = 16;
-	private final static int INSTRUCTION_MEM_SIZE = 128;
-	private final static int DATA_MEM_SIZE = 128;
-	private final static int WORD_WIDTH = 16;
+	//default configuration of the system, see Config.
+	final static int REGISTER_WIDTH = 16;
+	final static int REGISTER_FILE_SIZE = 16;
+	final static int INSTRUCTION_MEM_SIZE = 128;
+	final static int DATA_MEM_SIZE = 128;
+	final static int WORD_WIDTH = 16;
 	
-	private final static String INSTR_FILE = "Imem.dat";
-	private final static String DAT_FILE = "Dmem.dat";
+	final static String INSTR_FILE = "Imem.dat";
+	final static String DAT_FILE = "Dmem.dat";
+
+	// most display refreshes per second while executing.
+	final static int FRAME_RATE = 30;
+	// cycles executed between checks for Pause and Stop.
+	final static int CYCLES_PER_CHECK = 4096;
+
+	// the configuration of this run, set by main().
+	static Config config = new Config();
 
 	JFrame window;
     Container content;
     JLabel[] registers;
     JLabel[] registerName;
-    JLabel[] dmem;
-    JLabel[] imem;
     JLabel Mar;
     JLabel MAR;
     JLabel Pc; 
@@ -76,15 +101,24 @@ public class Simulator {
 
     JButton execute;
     JButton cycle;
+    JButton back;
+    JButton reverse;
     JButton reset;
     JButton load;
 	JButton zeroData;
     JButton exit;
+	JButton pause;
+	JButton stop;
+	JButton breaks;
+	// false when the cycles are not recorded
+	boolean undoable;
+	JDialog breakpointDialog;
+	Breakpoints breakpoints;
 
     JPanel[] regs;
     JPanel mem;
-    JPanel Imem;
-    JPanel Dmem;
+    MemoryView dataView;
+    MemoryView instView;
 	JPanel r;
     JPanel r2;
     JPanel buttons;
@@ -96,26 +130,63 @@ public class Simulator {
 
     Processor processor;
 
+	// the thread running Execute, null when the program is not running
+	Thread worker;
+	volatile boolean stopRequested;
+	// the breakpoint Execute stopped at, if any
+	volatile String stopReason;
+	boolean paused;
+	final Object pauseLock = new Object();
+	// the latest values copied by the worker, not yet shown
+	final AtomicReference<Frame> pending = new AtomicReference<Frame>();
+	// the values currently shown, null before the first update
+	Frame shown;
+	Timer refresh;
+
 	/**
 	* The main method of this isasim Simulator.
 	*
 	* This method creates a Processor object based on the 
-	* configuration settings stored as constants in this class.
+	* configuration: the constants of this class, changed by
+	* isasim.properties and the options described in Config.
 	*
 	* A Gui window is then instantiated that will be tied to
 	* that processor, and waits for user data.
 	*
-	* @param args will accepta filename string to compile
-	* to instruction memory.
+	* @param args configuration options, then optionally
+	* a filename string to compile to instruction memory.
+	* If one of the arguments is "-batch", the configuration
+	* and the other arguments are given to the headless
+	* BatchRunner and no window is created.
 	**/
 	public static void main(String[] args){
 
+		java.util.List<String> files = new java.util.ArrayList<String>();
+		try {
+			config = Config.parse(args,files);
+		}
+		catch (IllegalArgumentException e){
+			System.out.println("ERROR: " + e.getMessage());
+			return;
+		}
+
+		if (files.remove("-batch")){
+			BatchRunner.main(config,files);
+			return;
+		}
+
 		Processor processor;
-		if ( args.length < 1){
-    		processor = new Processor(REGISTER_WIDTH, REGISTER_FILE_SIZE, INSTRUCTION_MEM_SIZE, DATA_MEM_SIZE,WORD_WIDTH, INSTR_FILE, DAT_FILE);
-		}else{
-			compile(args[0]);
-			processor = new Processor(REGISTER_WIDTH, REGISTER_FILE_SIZE, INSTRUCTION_MEM_SIZE, DATA_MEM_SIZE,WORD_WIDTH, INSTR_FILE, DAT_FILE);
+		try {
+			if ( files.size() < 1){
+				processor = config.newProcessor(Engine.STRUCTURAL);
+			}else{
+				compile(files.get(0));
+				processor = config.newProcessor(Engine.STRUCTURAL);
+			}
+		}
+		catch (IllegalArgumentException e){
+			System.out.println("ERROR: " + e.getMessage());
+			return;
 		}
 		new Simulator(processor);
 
@@ -137,18 +208,22 @@ public class Simulator {
 	**/
 	public Simulator(Processor p){
         processor = p;
+		undoable = !(processor.dataMemory instanceof OffHeapMemory);
+		if (undoable) processor.enableUndo();
+		breakpoints = processor.getBreakpoints();
 
         window = new JFrame("IsaSimulator");
         content = window.getContentPane();
         content.setLayout(new GridLayout(1,2));
         window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         r = new JPanel();
-        regs = new JPanel[16];
-        r.setLayout(new GridLayout(16,1));
-        registers = new JLabel[16];
-        registerName = new JLabel[16];
-        for (int i = 0; i < 16; i++) {
-            registers[i] = new JLabel(processor.regFile[i].getValue()+" | "+Utilities.binToInt(processor.regFile[i].getValue()));
+        int regCount = processor.regFileSize;
+        regs = new JPanel[regCount];
+        r.setLayout(new GridLayout(regCount,1));
+        registers = new JLabel[regCount];
+        registerName = new JLabel[regCount];
+        for (int i = 0; i < regCount; i++) {
+            registers[i] = new JLabel();
             registers[i].setBorder(BorderFactory.createLineBorder(Color.black));
 			registers[i].setOpaque(true);
 			registers[i].setBackground(Color.WHITE);
@@ -165,27 +240,49 @@ public class Simulator {
         ButtonListener listener = new ButtonListener();
         execute = new JButton("Execute");
         cycle = new JButton("One Step");
+        back = new JButton("Step Back");
+        reverse = new JButton("Reverse");
         reset = new JButton("RESET");
         load = new JButton("Load instructions");
         exit = new JButton("EXIT");
 		zeroData = new JButton("Clear Data");
-        currentIns = new JLabel("Current Instruction: "+instString(processor.instructionMemory.read()));
+		pause = new JButton("Pause");
+		stop = new JButton("Stop");
+		breaks = new JButton("Breakpoints");
+        currentIns = new JLabel();
         execute.addActionListener(listener);
         cycle.addActionListener(listener);
+        back.addActionListener(listener);
+        reverse.addActionListener(listener);
         reset.addActionListener(listener);
         load.addActionListener(listener);
         exit.addActionListener(listener);
 		zeroData.addActionListener(listener);
+		pause.addActionListener(listener);
+		stop.addActionListener(listener);
+		breaks.addActionListener(listener);
+		if (!undoable){
+			back.setToolTipText("cycles are not recorded for an off-heap data memory");
+			reverse.setToolTipText(back.getToolTipText());
+		}
+		back.setEnabled(undoable);
+		reverse.setEnabled(undoable);
         buttons = new JPanel();
         buttons.setLayout( new GridLayout(2,1) );
         JPanel b = new JPanel();
-        b.setLayout(new GridLayout(2,3) );
+        b.setLayout(new GridLayout(2,6) );
+        b.add(back);
         b.add(cycle);
+        b.add(reverse);
         b.add(execute);
+		b.add(pause);
+		b.add(breaks);
         b.add(reset);
         b.add(load);
         b.add(zeroData);
+		b.add(stop);
 		b.add(exit);
+		b.add(new JLabel());
         buttons.add(currentIns);
         buttons.add(b);
 
@@ -194,8 +291,8 @@ public class Simulator {
 
         Mar = new JLabel("Memory Access Register");
         Pc = new JLabel("Program Counter");
-        MAR = new JLabel( processor.MAR.getValue()+" | "+Utilities.binToInt(processor.MAR.getValue()) );
-        PC = new JLabel( processor.PC.getValue() +" | "+Utilities.binToInt(processor.PC.getValue()) );
+        MAR = new JLabel();
+        PC = new JLabel();
         Mar.setBorder(BorderFactory.createLineBorder(Color.black));
         Pc.setBorder(BorderFactory.createLineBorder(Color.black));
         MAR.setBorder(BorderFactory.createLineBorder(Color.black));
@@ -220,31 +317,10 @@ public class Simulator {
 
         mem = new JPanel();
         mem.setLayout( new GridLayout(1,2) );
-        Dmem = new JPanel();
-        Dmem.setLayout( new GridLayout(128,1) );
-        Imem = new JPanel();
-        Imem.setLayout( new GridLayout(128,1) );
-        dmem = new JLabel[128];
-        imem = new JLabel[128];
-
-        for (int i = 0; i < 128; i++ ){
-            //add the memory values here;
-            dmem[i] = new JLabel(i+" | "+processor.dataMemory.data[i]);
-            imem[i] = new JLabel(i+" | "+processor.instructionMemory.data[i]);
-			imem[i].setOpaque(true);
-			imem[i].setBackground(Color.WHITE);
-            Dmem.add(dmem[i]);
-            Imem.add(imem[i]);
-        }
-		imem[0].setBackground(Color.GRAY);
-        JScrollPane dscroll = new JScrollPane(Dmem);
-        JScrollPane iscroll = new JScrollPane(Imem);
-        dscroll.setAutoscrolls(true);
-        iscroll.setAutoscrolls(true);
-        iscroll.getVerticalScrollBar().setUnitIncrement(16);
-        dscroll.getVerticalScrollBar().setUnitIncrement(16);
-        mem.add(dscroll);
-        mem.add(iscroll);
+        dataView = new MemoryView(processor.dataMemory,false,"MAR",false);
+        instView = new MemoryView(processor.instructionMemory,true,"PC",true);
+        mem.add(dataView);
+        mem.add(instView);
         mem.setBorder(BorderFactory.createLineBorder(Color.black));
         right = new JPanel();
         right.setLayout(new GridLayout(3,1) );
@@ -259,7 +335,13 @@ public class Simulator {
 
         content.add(r);
         content.add(right);
-        window.setSize(640,650);
+		refresh = new Timer(1000 / FRAME_RATE,e -> {
+			Frame f = pending.getAndSet(null);
+			if (f != null) show(f);
+		});
+		setRunning(false);
+		update();
+        window.setSize(760,650);
         window.setVisible(true);
     }
 	/**
@@ -274,18 +356,46 @@ public class Simulator {
         public void actionPerformed(ActionEvent e){
             Component whichOne = (Component)e.getSource();
             if (whichOne == execute){
-                do {
-                    update();
-                } while( processor.oneCycle() );
+                start();
             }
+			else if (whichOne == pause){
+				synchronized (pauseLock){
+					paused = !paused;
+					pauseLock.notifyAll();
+				}
+				pause.setText(paused ? "Resume" : "Pause");
+			}
+			else if (whichOne == breaks){
+				showBreakpoints();
+			}
+			else if (whichOne == stop){
+				stopRequested = true;
+				synchronized (pauseLock){
+					pauseLock.notifyAll();
+				}
+			}
             else if(whichOne == cycle){
                 if(processor.oneCycle()) update();
+            }
+            else if(whichOne == back){
+                if(processor.stepBack()) update();
+            }
+            else if(whichOne == reverse){
+                if(processor.reverseContinue()) update();
             }else if(whichOne == reset){
                 processor.reset();
                 update();
             }else if (whichOne == load) {
                 String path = JOptionPane.showInputDialog(window,"Enter the filename to compile:");
-                if (path != null) {Simulator.compile(path);processor.reset();}
+                if (path != null) {
+                    int[] image = Simulator.compile(path,true);
+                    try {
+                        if (image != null) processor.load(image);
+                    }
+                    catch (IllegalArgumentException ex){
+                        JOptionPane.showMessageDialog(window,ex.getMessage());
+                    }
+                }
                 update();
             }
 			else if (whichOne == zeroData){
@@ -294,12 +404,211 @@ public class Simulator {
 			}
             else if (whichOne == exit){
                 System.out.println("Exiting...");
+				Thread w = worker;
+				if (w != null){
+					stopRequested = true;
+					synchronized (pauseLock){
+						pauseLock.notifyAll();
+					}
+					try {
+						w.join();
+					}
+					catch (InterruptedException ie){
+						ie.printStackTrace();
+					}
+				}
                 processor.terminate();
                 System.exit(0);
             }
         }
     }
 
+	/**
+	* Execute the program on a separate thread.
+	*
+	* The Gui stays responsive: Pause suspends the program
+	* (and Resume continues it), Stop ends it where it is,
+	* and the other buttons wait until it has stopped.
+	**/
+	private void start(){
+		stopRequested = false;
+		stopReason = null;
+		window.setTitle("IsaSimulator");
+		paused = false;
+		setRunning(true);
+		worker = new Thread(this::runProgram,"isasim execute");
+		worker.setDaemon(true);
+		worker.start();
+		refresh.start();
+	}
+
+	/**
+	* Run the processor until it stops, reaches a breakpoint
+	* or Stop is pressed.
+	*
+	* The processor runs on its engine through execute(), in
+	* batches of CYCLES_PER_CHECK cycles (a translated block
+	* may take a batch past it); it has stopped once a batch
+	* runs fewer. Between batches, Pause and Stop are checked
+	* and the values shown are copied, at most FRAME_RATE
+	* times a second, for the refresh timer to pick up.
+	**/
+	private void runProgram(){
+		long frame = 1000000000L / FRAME_RATE;
+		long next = System.nanoTime() + frame;
+		boolean running = true;
+		while (running && !stopRequested){
+			long before = processor.getCycles();
+			processor.execute(CYCLES_PER_CHECK);
+			running = processor.getCycles() - before >= CYCLES_PER_CHECK;
+			if (System.nanoTime() >= next){
+				pending.set(capture());
+				next = System.nanoTime() + frame;
+			}
+			synchronized (pauseLock){
+				if (paused) pending.set(capture());
+				while (paused && !stopRequested){
+					try {
+						pauseLock.wait();
+					}
+					catch (InterruptedException e){
+						stopRequested = true;
+					}
+				}
+			}
+		}
+		if (!running){
+			stopReason = breakpoints.getHit();
+			// as oneCycle() does when the PC leaves the instruction memory
+			if (stopReason == null && processor.PC.getSigned() >= processor.imemSize) processor.terminate();
+		}
+		pending.set(capture());
+		SwingUtilities.invokeLater(this::finished);
+	}
+
+	/**
+	* Show the final values once the program has stopped.
+	**/
+	private void finished(){
+		refresh.stop();
+		worker = null;
+		Frame f = pending.getAndSet(null);
+		if (f != null) show(f);
+		setRunning(false);
+		if (stopReason != null) window.setTitle("IsaSimulator - stopped at " + stopReason);
+	}
+
+	/**
+	* Show the window listing the breakpoints and watchpoints.
+	*
+	* A breakpoint is added by typing it as Breakpoints.add()
+	* reads it (e.g. "pc 12", "pc 12 if &r3 == 0", "write 5")
+	* and removed by selecting it. They can be changed while
+	* the program executes.
+	**/
+	private void showBreakpoints(){
+		if (breakpointDialog == null){
+			DefaultListModel<String> items = new DefaultListModel<String>();
+			JList<String> list = new JList<String>(items);
+			Runnable refill = () -> {
+				items.clear();
+				for (String line : breakpoints.list()) items.addElement(line);
+			};
+			JTextField spec = new JTextField(16);
+			spec.setToolTipText("pc N [if &rX == V], read N, write N or access N");
+			spec.addActionListener(e -> {
+				try {
+					breakpoints.add(spec.getText());
+					spec.setText("");
+					refill.run();
+				}
+				catch (IllegalArgumentException ex){
+					JOptionPane.showMessageDialog(breakpointDialog,"ERROR: " + ex.getMessage());
+				}
+			});
+			JButton remove = new JButton("Remove");
+			remove.addActionListener(e -> {
+				for (String line : list.getSelectedValuesList()) breakpoints.remove(line);
+				refill.run();
+			});
+			JButton clear = new JButton("Clear");
+			clear.addActionListener(e -> {
+				breakpoints.clear();
+				refill.run();
+			});
+			JPanel add = new JPanel();
+			add.add(new JLabel("Add"));
+			add.add(spec);
+			JPanel edit = new JPanel();
+			edit.add(remove);
+			edit.add(clear);
+			breakpointDialog = new JDialog(window,"Breakpoints");
+			breakpointDialog.setLayout(new BorderLayout());
+			breakpointDialog.add(add,BorderLayout.NORTH);
+			breakpointDialog.add(new JScrollPane(list),BorderLayout.CENTER);
+			breakpointDialog.add(edit,BorderLayout.SOUTH);
+			breakpointDialog.setSize(320,300);
+			refill.run();
+		}
+		breakpointDialog.setVisible(true);
+	}
+
+	/**
+	* Enable the buttons that apply while, or while not, executing.
+	*
+	* @param running true while the program executes
+	**/
+	private void setRunning(boolean running){
+		execute.setEnabled(!running);
+		cycle.setEnabled(!running);
+		back.setEnabled(!running && undoable);
+		reverse.setEnabled(!running && undoable);
+		reset.setEnabled(!running);
+		load.setEnabled(!running);
+		zeroData.setEnabled(!running);
+		pause.setEnabled(running);
+		stop.setEnabled(running);
+		pause.setText("Pause");
+	}
+
+	/**
+	* The register values shown by the Gui, copied from the
+	* processor, and snapshots of its memories.
+	**/
+	static final class Frame {
+		final int[] registers;
+		final int pc;
+		final int mar;
+		// whether the PC is inside the instruction memory, and the word there
+		final boolean inImem;
+		final int instruction;
+		final Memory.Snapshot data;
+		final Memory.Snapshot instructions;
+
+		Frame(int[] r, int p, int m, boolean in, int ins, Memory.Snapshot d, Memory.Snapshot i){
+			registers = r; pc = p; mar = m; inImem = in; instruction = ins; data = d; instructions = i;
+		}
+	}
+
+	/**
+	* Copy the values shown by the Gui.
+	*
+	* Must be called by the thread running the processor,
+	* or while no thread is running it.
+	*
+	* @return the values of the registers, PC and MAR, and
+	* the memories as they are
+	**/
+	private Frame capture(){
+		int[] r = new int[registers.length];
+		for (int i = 0; i < r.length; i++) r[i] = processor.regFile[i].getWord();
+		int pc = processor.PC.getSigned();
+		boolean in = pc >= 0 && pc < processor.imemSize;
+		int word = in ? processor.instructionMemory.getWord(pc) : 0;
+		return new Frame(r,pc,processor.MAR.getWord(),in,word,processor.dataMemory.snapshot(),
+				processor.instructionMemory.snapshot());
+	}
+
 	/**
 	* Update the Gui display.
 	*
@@ -309,22 +618,44 @@ public class Simulator {
 	* processor.
 	**/
     private void update(){
-        for (int i = 0; i < 16; i++){
-            registers[i].setText(processor.regFile[i].getValue()+" | "+Utilities.binToInt(processor.regFile[i].getValue()));
-			registers[i].setBackground(Color.WHITE);
-        }
-        for (int i = 0; i < 128; i++ ){
-            dmem[i].setText(i+" | "+processor.dataMemory.data[i]);
-            imem[i].setText(i+" | "+processor.instructionMemory.data[i]);
-			imem[i].setBackground(Color.WHITE);
-        }
-        PC.setText(processor.PC.getValue()+" | "+Utilities.binToInt(processor.PC.getValue()));
-		imem[Utilities.binToInt(processor.PC.getValue())].setBackground(Color.GRAY);
-        MAR.setText(processor.MAR.getValue()+" | "+Utilities.binToInt(processor.MAR.getValue()));
-        if ( Utilities.binToInt(processor.PC.getValue()) < processor.imemSize && Utilities.binToInt(processor.PC.getValue()) >= 0)
-        currentIns.setText("Current Instruction: "+instString(processor.instructionMemory.read()));
-        else currentIns.setText("Current Instruction: NONE");
+		show(capture());
     }
+
+	/**
+	* Show a copy of the values of the processor.
+	*
+	* Only the labels whose values differ from those
+	* shown are changed, and so repainted. The memory
+	* views read the words from the snapshots of the
+	* frame and repaint the visible rows that changed.
+	*
+	* @param f the values to show
+	**/
+	private void show(Frame f){
+		Frame old = shown;
+		for (int i = 0; i < registers.length; i++){
+			if (old != null && old.registers[i] == f.registers[i]) continue;
+			int w = processor.regFile[i].getWidth();
+			registers[i].setText(Utilities.wordToBin(f.registers[i],w)+" | "+Utilities.toSigned(f.registers[i],w));
+		}
+		dataView.refresh(f.mar,f.data);
+		instView.refresh(f.pc,f.instructions);
+		if (old == null || old.mar != f.mar){
+			int w = processor.MAR.getWidth();
+			MAR.setText(Utilities.wordToBin(f.mar,w)+" | "+Utilities.toSigned(f.mar,w));
+		}
+		if (old == null || old.pc != f.pc){
+			int w = processor.PC.getWidth();
+			PC.setText(Utilities.wordToBin(f.pc,w)+" | "+f.pc);
+		}
+		if (old == null || old.pc != f.pc || old.inImem != f.inImem || old.instruction != f.instruction){
+			// an instruction is the low 16 bits of a wider word
+			if (f.inImem)
+			currentIns.setText("Current Instruction: "+instString(Utilities.wordToBin(f.instruction & 0xFFFF,16)));
+			else currentIns.setText("Current Instruction: NONE");
+		}
+		shown = f;
+	}
 	
 	/**
 	* Convert a binary instruction to code.
@@ -336,7 +667,7 @@ public class Simulator {
 	*
 	* @param instruction binary instruction data.	
 	**/
-     private String instString(String instruction){
+     public static String instString(String instruction){
             String ret = "";
             String opfunc = instruction.substring(0,4)+instruction.substring(12,16);
             int RA = Utilities.binToInt("0"+instruction.substring(4,8));
@@ -394,148 +725,43 @@ public class Simulator {
 	* @param filename the file to compile.	
 	**/
 	public static void compile(String filename){
-		try {
-			BufferedReader infi = new BufferedReader(new FileReader(filename) );
-			BufferedWriter outfi = new BufferedWriter(new FileWriter(INSTR_FILE) );
-			int lineCount = 0;
-			while(infi.ready() && lineCount < INSTRUCTION_MEM_SIZE){		
-				String line = infi.readLine();
-				String[] parts = line.trim().split("\\s+");
-				String writeLine = "";
-				writeLine = "";
-				if (parts.length == 0 || parts[0].startsWith("#")){
-					//skip it, its a comment
+		compile(filename,true);
+	}
+
+	/**
+	* Convert an input file to instruction memory words.
+	*
+	* The source is assembled in memory for the sizes
+	* of the current configuration. Writing the
+	* instruction memory file (and resetting the data
+	* memory file) is an optional step.
+	*
+	* @param filename the file to compile.
+	* @param persist true to also write the memory files.
+	* @return the instruction memory words, or null if
+	* the file could not be compiled.
+	**/
+	public static int[] compile(String filename, boolean persist){
+		try (BufferedReader infi = new BufferedReader(new FileReader(filename) )){
+			String image = Assembler.assemble(infi,config.imemSize);
+			int[] words = Assembler.toImage(image,config.imemSize,config.wordWidth);
+			if (persist){
+				if (MemoryImage.isImage(config.instructionFile)){
+					new Memory(config.imemSize,config.wordWidth,words,new Register(32)).writeTo(config.instructionFile);
 				}
 				else {
-					switch(parts[0]){
-						case "la":
-							writeLine+="0001";
-							writeLine+=Iinst(parts)+'\n';
-							break;
-						case "mw":
-							writeLine+="0110";
-							writeLine+=Iinst(parts)+"\n";
-							break;
-						case "mr":
-							writeLine+="0010";
-							writeLine+=Iinst(parts)+"\n";
-							break;
-						case "lw":
-							if (parts.length < 4){
-								//interpret as mr
-								writeLine+="0010";
-								writeLine+=Iinst(parts)+"\n";
-								break;
-							}
-							else{
-								writeLine+="0001";
-								String[] iParts = {"",parts[2],parts[3]};
-								writeLine+=Iinst(iParts)+'\n';
-								String[] rParts = {"",parts[1],parts[3]};
-								writeLine+="0010"+Iinst(rParts)+"\n";
-							}
-							break;
-						case "sw":	
-							if (parts.length < 4 ){
-								//interpret as mw
-								writeLine += "0110";
-								writeLine += Iinst(parts)+"\n";
-							} else{
-								String[] iParts = {"",parts[2],parts[3]};
-								String[] rParts = {"",parts[1],parts[3]};
-								writeLine+="0001"+Iinst(iParts)+"\n";
-								writeLine+="0110"+Iinst(rParts)+"\n";
-							}
-							break;
-						case "addi":
-							writeLine+="0100";
-							writeLine+=Iinst(parts)+"\n";
-							break;
-						case "add":
-							writeLine+="0000";
-							writeLine+=Rinst(parts);
-							writeLine+="1000\n";
-							break;
-						case "sub":
-							writeLine+="0000";
-							writeLine+=Rinst(parts);
-							writeLine+="0001\n";
-							break;
-						case "nor":
-							writeLine+="0000";
-							writeLine+= Rinst(parts);
-							writeLine+="0010\n";
-							break;
-						case "beq":
-							writeLine+="0111";
-							writeLine+=Iinst(parts)+"\n";
-							break;
-						case "j":
-							writeLine+="1000";
-							writeLine+=Utilities.intToBin(12,Integer.parseInt(parts[1]));
-							break;
-						default:	
-							writeLine+="0000000000000000\n";
-							break;
-
+					try (BufferedWriter outfi = new BufferedWriter(new FileWriter(config.instructionFile) )){
+						outfi.write(image);
 					}
-					lineCount++;
-					outfi.write(writeLine);
 				}
-
-			}
-			while(lineCount < INSTRUCTION_MEM_SIZE){
-				outfi.write("0000000000000000\n");
-				lineCount++;
-			}
-			infi.close();
-			outfi.close();
-			BufferedWriter data = new BufferedWriter( new FileWriter(DAT_FILE) );
-			for (int i = 0; i < 128; i++ ){
-				data.write("0000000000000000\n");
+				new Memory(config.dmemSize,config.wordWidth,(int[])null,new Register(32)).writeTo(config.dataFile);
 			}
+			return words;
 		}
 		catch (IOException e){
 			System.out.println("Compiler Failure: invalid input file");
+			return null;
 		}
 	}
 
-	/**
-	* Used by the compiler to interpret R-type instructions.
-	*
-	* @param parts the current line of code being compiled.
-	* @return the binary register addresses for this instruction.
-	**/
-	public static String Rinst(String[] parts){
-		if(!parts[1].startsWith("&r") || !parts[2].startsWith("&r")){
-			System.out.println("ERROR: R-type instructions must include two");
-			System.out.println("input registers as '&ra' and '&rb' where 'a'");
-			System.out.println("and 'b' are the integers representing the registers.");
-			return"";
-		}
-		else{
-			String addr1 = Utilities.intToBin(4,Integer.parseInt(parts[1].substring(2)));
-			String addr2 = Utilities.intToBin(4,Integer.parseInt(parts[2].substring(2)));
-			return addr1+addr2;
-		}
-
-	}
-	
-	/**
-	* Used by the compiler to interpret I-type instructions.
-	*
-	* @param parts the current line of code being compiled.
-	* @return the binary register address as well as the binary immediate value.
-	**/
-	public static String Iinst(String[] parts){
-		String addr = Utilities.intToBin(4,Integer.parseInt(parts[1].substring(2)));
-		String immed;
-		if (parts.length < 3){
-			immed = "00000000";
-		}else{
-			immed = Utilities.intToBin(8,Integer.parseInt(parts[2]));
-		}
-		return addr+immed;
-	}
-
 }
@@ -0,0 +1,237 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Trace comparator of the ISA simulator
+* package "isasim".
+*
+* <p> A TraceDiff finds the first cycle at which two binary
+* traces written by TraceRecorder differ, e.g. a trace of the
+* structural engine and one of a faster engine or a newer
+* build running the same program. Records have a fixed size,
+* so the traces are split into chunks of CHUNK_RECORDS cycles
+* that are compared in parallel: each task maps its chunk of
+* both files read-only and compares the bytes with
+* ByteBuffer.mismatch(). Nothing is copied onto the heap, and
+* chunks after a divergence that is already found are skipped.
+*
+* <p> The divergence is reported with the cycles that led
+* up to it, formatted by TraceReader (the instructions as
+* Simulator.instString() prints them), and the fields of the
+* two records that differ.
+*
+* <p> Usage:
+*		java isasim.TraceDiff [-threads N] [-context N] a.trace b.trace
+*
+* <p> Contained methods:
+*		compare(): find the first divergent cycle.
+*		describe(): report a cycle of both traces.
+*
+**/
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TraceDiff {
+
+	public static final int CHUNK_RECORDS = 1 << 20;
+	public static final int DEFAULT_CONTEXT = 5;
+
+	private final String first;
+	private final String second;
+	private final long firstRecords;
+	private final long secondRecords;
+	private final int firstWidth;
+	private final int secondWidth;
+	// the cycles compared by one task
+	int chunkRecords = CHUNK_RECORDS;
+
+	/**
+	* TraceDiff constructor.
+	*
+	* @param a the first trace
+	* @param b the second trace
+	* @throws IOException if either file cannot be read or is not a trace
+	**/
+	public TraceDiff(String a, String b) throws IOException {
+		first = a;
+		second = b;
+		TraceReader r = new TraceReader(a);
+		firstRecords = r.getRecords();
+		firstWidth = r.getRegisterWidth();
+		r.close();
+		r = new TraceReader(b);
+		secondRecords = r.getRecords();
+		secondWidth = r.getRegisterWidth();
+		r.close();
+	}
+
+	/**
+	* Find the first cycle at which the traces differ.
+	*
+	* When one trace is a prefix of the other, they differ
+	* at the first cycle only the longer one has.
+	*
+	* @param threads the number of chunks compared at once
+	* @return the divergent cycle, or -1 if the traces are equal
+	* @throws IOException if a trace cannot be read
+	**/
+	public long compare(int threads) throws IOException {
+		long common = Math.min(firstRecords,secondRecords);
+		AtomicLong found = new AtomicLong(Long.MAX_VALUE);
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1,threads));
+		try (FileChannel a = FileChannel.open(Paths.get(first),StandardOpenOption.READ);
+				FileChannel b = FileChannel.open(Paths.get(second),StandardOpenOption.READ)){
+			List<Future<?>> pending = new ArrayList<Future<?>>();
+			for (long start = 0; start < common; start += chunkRecords){
+				long from = start;
+				int count = (int)Math.min(chunkRecords,common - start);
+				pending.add(pool.submit(() -> compareChunk(a,b,from,count,found)));
+			}
+			for (Future<?> f : pending){
+				try {
+					f.get();
+				}
+				catch (InterruptedException e){
+					Thread.currentThread().interrupt();
+					throw new IOException("interrupted");
+				}
+				catch (ExecutionException e){
+					if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException)e.getCause()).getCause();
+					throw new IOException(e.getCause());
+				}
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+		if (found.get() != Long.MAX_VALUE) return found.get();
+		return firstRecords == secondRecords ? -1 : common;
+	}
+
+	/**
+	* Compare one chunk of both traces.
+	*
+	* Skipped if a divergence was already found before it.
+	**/
+	private static void compareChunk(FileChannel a, FileChannel b, long from, int count, AtomicLong found){
+		if (from >= found.get()) return;
+		long position = TraceRecorder.HEADER_SIZE + from * TraceRecorder.RECORD_SIZE;
+		long size = (long)count * TraceRecorder.RECORD_SIZE;
+		try {
+			ByteBuffer x = a.map(FileChannel.MapMode.READ_ONLY,position,size);
+			ByteBuffer y = b.map(FileChannel.MapMode.READ_ONLY,position,size);
+			int at = x.mismatch(y);
+			if (at >= 0) found.accumulateAndGet(from + at / TraceRecorder.RECORD_SIZE,Math::min);
+		}
+		catch (IOException e){
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	* Report a cycle of both traces.
+	*
+	* @param cycle the cycle to report
+	* @param context the number of cycles before it to show
+	* @return the preceding cycles of the first trace, the
+	* cycle in both traces and the fields that differ
+	* @throws IOException if a trace cannot be read
+	**/
+	public String describe(long cycle, int context) throws IOException {
+		StringBuilder s = new StringBuilder();
+		if (firstWidth != secondWidth){
+			s.append("register width ").append(firstWidth).append(" vs ").append(secondWidth).append('\n');
+		}
+		TraceReader a = new TraceReader(first);
+		TraceReader b = new TraceReader(second);
+		try {
+			a.seek(Math.max(0,cycle - context));
+			while (a.next() && a.getCycle() < cycle) s.append("   ").append(a).append('\n');
+			b.seek(cycle);
+			boolean inFirst = a.getCycle() == cycle;
+			boolean inSecond = b.next();
+			s.append("a: ").append(inFirst ? a.toString() : cycle + "\t(end of trace)").append('\n');
+			s.append("b: ").append(inSecond ? b.toString() : cycle + "\t(end of trace)");
+			if (inFirst && inSecond) s.append("\ndiffers in:").append(fields(a,b));
+		}
+		finally {
+			a.close();
+			b.close();
+		}
+		return s.toString();
+	}
+
+	/**
+	* Name the fields of two records that differ.
+	**/
+	private static String fields(TraceReader a, TraceReader b){
+		StringBuilder s = new StringBuilder();
+		if (a.getPC() != b.getPC()) s.append(" PC");
+		if (a.getInstruction() != b.getInstruction()) s.append(" instruction");
+		if (a.getMCW() != b.getMCW()) s.append(" MCW");
+		if (a.getFlags() != b.getFlags()) s.append(" access");
+		if (a.getRegister() != b.getRegister()) s.append(" register");
+		if (a.getRegisterValue() != b.getRegisterValue()) s.append(" register-value");
+		if (a.getAddress() != b.getAddress()) s.append(" address");
+		if (a.getMemoryValue() != b.getMemoryValue()) s.append(" memory-value");
+		return s.length() == 0 ? " (unused bytes)" : s.toString();
+	}
+
+	/**
+	* Compare the traces given on the command line.
+	*
+	* @param args options followed by two trace files
+	**/
+	public static void main(String[] args){
+		int threads = Runtime.getRuntime().availableProcessors();
+		int context = DEFAULT_CONTEXT;
+		List<String> files = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++){
+			switch (args[i]){
+				case "-threads":
+					threads = Integer.parseInt(args[++i]);
+					break;
+				case "-context":
+					context = Integer.parseInt(args[++i]);
+					break;
+				default:
+					files.add(args[i]);
+			}
+		}
+		if (files.size() != 2){
+			System.out.println("usage: TraceDiff [-threads N] [-context N] a.trace b.trace");
+			return;
+		}
+		try {
+			TraceDiff diff = new TraceDiff(files.get(0),files.get(1));
+			long start = System.nanoTime();
+			long cycle = diff.compare(threads);
+			long nanos = System.nanoTime() - start;
+			if (cycle < 0){
+				System.out.println("traces are identical (" + diff.firstRecords + " cycles)");
+			}
+			else {
+				System.out.println("traces diverge at cycle " + cycle + ":");
+				System.out.println(diff.describe(cycle,context));
+			}
+			System.err.println(String.format("compared in %.3f s on %d threads",nanos / 1e9,threads));
+		}
+		catch (IOException e){
+			System.out.println("ERROR: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Streaming reader of the binary execution
+* traces of the ISA simulator package "isasim".
+*
+* <p> A TraceReader walks through a trace written by a
+* TraceRecorder one record at a time. The file is read
+* through a FileChannel into one fixed buffer, so a trace of
+* any length is read in constant memory, and reading a record
+* creates no objects: next() moves to the following record and
+* the get methods return its fields.
+*
+* <p> A trace that was not closed (the simulator was stopped
+* while recording) has no record count in its header; every
+* whole record in the file is read.
+*
+* <p> Contained methods:
+*		next(): move to the next record.
+*		seek(): move to the record of a cycle.
+*		getPC(), getInstruction(), ...: the current record.
+*		main(): print a trace as text.
+*
+**/
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class TraceReader {
+
+	public static final int BUFFER_RECORDS = 1 << 14;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int registerWidth;
+	private final long records;
+	private long cycle = -1;
+	private int at;
+
+	/**
+	* TraceReader constructor.
+	*
+	* @param filename the trace file to read
+	* @throws IOException if the file cannot be read or is not a trace
+	**/
+	public TraceReader(String filename) throws IOException {
+		channel = FileChannel.open(Paths.get(filename),StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(TraceRecorder.HEADER_SIZE);
+			while (header.hasRemaining()){
+				if (channel.read(header) < 0) throw new EOFException(filename + ": not a trace");
+			}
+			if (header.getInt(0) != TraceRecorder.MAGIC || header.get(4) != TraceRecorder.VERSION
+					|| header.getShort(6) != TraceRecorder.RECORD_SIZE){
+				throw new IOException(filename + ": not a trace");
+			}
+			registerWidth = header.get(5);
+			long whole = (channel.size() - TraceRecorder.HEADER_SIZE) / TraceRecorder.RECORD_SIZE;
+			long count = header.getLong(8);
+			records = count > 0 && count <= whole ? count : whole;
+		}
+		catch (IOException e){
+			channel.close();
+			throw e;
+		}
+		buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * TraceRecorder.RECORD_SIZE);
+		buffer.limit(0);
+		at = -TraceRecorder.RECORD_SIZE;
+	}
+
+	/**
+	* Move to the next record.
+	*
+	* @return false if there are no more records
+	* @throws IOException if the file cannot be read
+	**/
+	public boolean next() throws IOException {
+		if (cycle + 1 >= records) return false;
+		cycle++;
+		at += TraceRecorder.RECORD_SIZE;
+		if (at >= buffer.limit()) fill();
+		return true;
+	}
+
+	/**
+	* Move to the record of a cycle; next() then reads it.
+	*
+	* @param c the cycle to read next
+	* @throws IOException if the file cannot be read
+	**/
+	public void seek(long c) throws IOException {
+		cycle = Math.max(0,Math.min(c,records)) - 1;
+		channel.position(TraceRecorder.HEADER_SIZE + (cycle + 1) * TraceRecorder.RECORD_SIZE);
+		buffer.limit(0);
+		at = -TraceRecorder.RECORD_SIZE;
+	}
+
+	/**
+	* Read the following records into the buffer.
+	**/
+	private void fill() throws IOException {
+		buffer.clear();
+		long left = (records - cycle) * TraceRecorder.RECORD_SIZE;
+		if (left < buffer.capacity()) buffer.limit((int)left);
+		while (buffer.hasRemaining()){
+			if (channel.read(buffer) < 0) throw new EOFException("trace ends at cycle " + cycle);
+		}
+		buffer.flip();
+		at = 0;
+	}
+
+	/**
+	* Count the records of the trace.
+	*
+	* @return the number of recorded cycles
+	**/
+	public long getRecords(){
+		return records;
+	}
+
+	/**
+	* The width of the registers of the traced Processor.
+	**/
+	public int getRegisterWidth(){
+		return registerWidth;
+	}
+
+	/**
+	* The cycle of the current record, counted from 0.
+	**/
+	public long getCycle(){
+		return cycle;
+	}
+
+	/**
+	* The address the instruction was fetched from.
+	**/
+	public int getPC(){
+		return buffer.getInt(at);
+	}
+
+	/**
+	* The instruction word.
+	**/
+	public int getInstruction(){
+		return buffer.getShort(at + 4) & 0xFFFF;
+	}
+
+	/**
+	* The bitfield MCW of the instruction.
+	**/
+	public int getMCW(){
+		return buffer.getShort(at + 6) & 0xFFFF;
+	}
+
+	/**
+	* The REG_WRITE, MEM_READ and MEM_WRITE flags of the cycle.
+	**/
+	public int getFlags(){
+		return buffer.get(at + 8);
+	}
+
+	/**
+	* The register written, if getFlags() has REG_WRITE.
+	**/
+	public int getRegister(){
+		return buffer.get(at + 9);
+	}
+
+	/**
+	* The value written to the register.
+	**/
+	public int getRegisterValue(){
+		return buffer.getInt(at + 12);
+	}
+
+	/**
+	* The data memory address, if getFlags() has MEM_READ or MEM_WRITE.
+	**/
+	public int getAddress(){
+		return buffer.getInt(at + 16);
+	}
+
+	/**
+	* The data memory word read or written.
+	**/
+	public int getMemoryValue(){
+		return buffer.getInt(at + 20);
+	}
+
+	/**
+	* Close the file.
+	*
+	* @throws IOException if the file cannot be closed
+	**/
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	* Describe the current record.
+	*
+	* @return the cycle, PC, instruction and its effects as text
+	**/
+	public String toString(){
+		StringBuilder s = new StringBuilder();
+		s.append(cycle).append('\t').append(getPC()).append('\t');
+		s.append(Simulator.instString(Utilities.wordToBin(getInstruction(),16)));
+		int flags = getFlags();
+		if ((flags & TraceRecorder.REG_WRITE) != 0){
+			s.append("\t&r").append(getRegister()).append("=").append(getRegisterValue());
+		}
+		if ((flags & TraceRecorder.MEM_READ) != 0){
+			s.append("\tDmem[").append(getAddress()).append("]->").append(getMemoryValue());
+		}
+		if ((flags & TraceRecorder.MEM_WRITE) != 0){
+			s.append("\tDmem[").append(getAddress()).append("]<-").append(getMemoryValue());
+		}
+		return s.toString();
+	}
+
+	/**
+	* Print a trace as text, one line per cycle.
+	*
+	* @param args the trace file, and optionally the first
+	* cycle and the number of cycles to print
+	**/
+	public static void main(String[] args){
+		if (args.length < 1){
+			System.out.println("usage: TraceReader file.trace [first] [count]");
+			return;
+		}
+		long first = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		long count = args.length > 2 ? Long.parseLong(args[2]) : Long.MAX_VALUE;
+		try {
+			TraceReader r = new TraceReader(args[0]);
+			try {
+				r.seek(first);
+				for (long i = 0; i < count && r.next(); i++) System.out.println(r);
+			}
+			finally {
+				r.close();
+			}
+		}
+		catch (IOException e){
+			System.out.println("ERROR: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,280 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Binary execution trace recorder of the
+* ISA simulator package "isasim".
+*
+* <p> A TraceRecorder writes one fixed-size record per
+* completed cycle of a Processor to a trace file:
+*		bytes 0-3:	PC of the instruction
+*		bytes 4-5:	instruction word
+*		bytes 6-7:	bitfield MCW (see Controller)
+*		byte 8:		flags: REG_WRITE, MEM_READ, MEM_WRITE
+*		byte 9:		register written
+*		bytes 10-11: unused
+*		bytes 12-15: value written to the register
+*		bytes 16-19: data memory address (the MAR)
+*		bytes 20-23: data memory word read or written
+* after a header of the same layout as a memory image:
+*		bytes 0-3:	magic "ISAT"
+*		byte 4:		format version (1)
+*		byte 5:		register width in bits
+*		bytes 6-7:	bytes per record (24)
+*		bytes 8-15:	number of records (written by close())
+* The record of cycle n starts at HEADER_SIZE + n * RECORD_SIZE,
+* so a trace can be read from any cycle (see TraceReader).
+*
+* <p> Records are put into a ring buffer outside of the Java
+* heap; a cycle creates no objects and makes no system call.
+* A background thread writes each filled part of the ring
+* to the file through a FileChannel while the Processor goes
+* on. Only when the ring is full does the Processor wait for
+* the file to catch up, so no record is ever dropped.
+*
+* <p> A Processor only pays for tracing while it is on (see
+* Processor.startTrace()).
+*
+* <p> Contained methods:
+*		record(): add the cycle just executed.
+*		flush(): hand every record so far to the file.
+*		close(): write the remaining records and the header.
+*
+**/
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.concurrent.locks.LockSupport;
+
+public class TraceRecorder {
+
+	public static final int MAGIC = 0x49534154;		// "ISAT"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 16;
+	public static final int RECORD_SIZE = 24;
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	public static final int REG_WRITE = 1;
+	public static final int MEM_READ = 2;
+	public static final int MEM_WRITE = 4;
+
+	private static final long PARK_NANOS = 1000000L;
+
+	private final Processor processor;
+	private final FileChannel channel;
+	private final ByteBuffer ring;
+	private final int mask;
+	private final int chunk;
+	private final Thread drainer;
+
+	// written only by the Processor's thread
+	private long written;
+	private long room;
+	private volatile long published;
+	private volatile Thread waiting;
+
+	// written only by the drainer
+	private volatile long drained;
+	private volatile IOException failure;
+
+	private volatile boolean closing;
+
+	/**
+	* TraceRecorder constructor.
+	*
+	* The file is created (or emptied) and the thread that
+	* writes it is started.
+	*
+	* @param p the Processor whose cycles are recorded
+	* @param filename the trace file to write
+	* @param capacity the number of records the ring holds
+	* (rounded up to a power of two)
+	* @throws IOException if the file cannot be written
+	**/
+	public TraceRecorder(Processor p, String filename, int capacity) throws IOException {
+		processor = p;
+		int size = Integer.highestOneBit(Math.max(8,capacity) - 1) << 1;
+		ring = ByteBuffer.allocateDirect(size * RECORD_SIZE);
+		mask = size - 1;
+		chunk = size / 8;
+		room = size;
+		channel = FileChannel.open(Paths.get(filename),StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,StandardOpenOption.TRUNCATE_EXISTING);
+		writeHeader(0);
+		channel.position(HEADER_SIZE);
+		drainer = new Thread(this::drain,"trace " + filename);
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	/**
+	* Add the cycle the Processor has just executed.
+	*
+	* The effects of the instruction are read back from
+	* the datapath, which still holds them.
+	*
+	* @param pc the address the instruction was fetched from
+	**/
+	void record(int pc){
+		if (written == room) awaitRoom();
+		DecodedInstruction ins = processor.decodeCache.get(pc);
+		int mcw = ins.mcw;
+		int flags = 0;
+		int regValue = 0;
+		int address = 0;
+		int value = 0;
+		if ((mcw & Controller.MCW_RWRITE) != 0){
+			flags = REG_WRITE;
+			regValue = processor.regFile[ins.ra].getWord();
+			if ((mcw & Controller.MCW_RSEL) == 0){
+				flags |= MEM_READ;
+				address = processor.MAR.getWord();
+				value = processor.dataMemory.readWord();
+			}
+		}
+		else if ((mcw & Controller.MCW_MEMWRITE) != 0){
+			flags = MEM_WRITE;
+			address = processor.MAR.getWord();
+			value = processor.regFile[ins.ra].getWord();
+		}
+		int at = (int)(written & mask) * RECORD_SIZE;
+		ring.putInt(at,pc);
+		ring.putShort(at + 4,(short)ins.word);
+		ring.putShort(at + 6,(short)mcw);
+		ring.put(at + 8,(byte)flags);
+		ring.put(at + 9,(byte)ins.ra);
+		ring.putShort(at + 10,(short)0);
+		ring.putInt(at + 12,regValue);
+		ring.putInt(at + 16,address);
+		ring.putInt(at + 20,value);
+		written++;
+		if ((written & (chunk - 1)) == 0) publish();
+	}
+
+	/**
+	* Count the records added so far.
+	*
+	* @return the number of recorded cycles
+	**/
+	public long getRecords(){
+		return written;
+	}
+
+	/**
+	* Hand every record added so far to the writing thread.
+	**/
+	public void flush(){
+		publish();
+	}
+
+	/**
+	* Write every remaining record and close the file.
+	*
+	* The header is completed with the number of records.
+	*
+	* @throws IOException if the trace could not be written
+	**/
+	public void close() throws IOException {
+		if (!channel.isOpen()) return;
+		publish();
+		closing = true;
+		LockSupport.unpark(drainer);
+		boolean interrupted = false;
+		while (drainer.isAlive()){
+			try {
+				drainer.join();
+			}
+			catch (InterruptedException e){
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		try {
+			if (failure != null) throw failure;
+			writeHeader(written);
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	* Make the records added so far visible to the drainer.
+	**/
+	private void publish(){
+		if (published == written) return;
+		published = written;
+		LockSupport.unpark(drainer);
+	}
+
+	/**
+	* Wait until the drainer has written part of the ring.
+	**/
+	private void awaitRoom(){
+		publish();
+		int records = mask + 1;
+		waiting = Thread.currentThread();
+		while (drained + records == written && failure == null && drainer.isAlive()){
+			LockSupport.parkNanos(this,PARK_NANOS);
+		}
+		waiting = null;
+		// once the file has failed, records are dropped and close() reports it
+		room = failure == null && drainer.isAlive() ? drained + records : Long.MAX_VALUE;
+	}
+
+	/**
+	* Write published records to the file until closed.
+	**/
+	private void drain(){
+		ByteBuffer view = ring.duplicate();
+		int records = mask + 1;
+		try {
+			while (true){
+				long end = published;
+				long start = drained;
+				if (start == end){
+					if (closing && published == start) return;
+					LockSupport.parkNanos(this,PARK_NANOS);
+					continue;
+				}
+				while (start < end){
+					int from = (int)(start & mask);
+					int count = (int)Math.min(end - start,records - from);
+					view.limit((from + count) * RECORD_SIZE);
+					view.position(from * RECORD_SIZE);
+					while (view.hasRemaining()) channel.write(view);
+					start += count;
+					drained = start;
+					Thread w = waiting;
+					if (w != null) LockSupport.unpark(w);
+				}
+			}
+		}
+		catch (IOException e){
+			failure = e;
+		}
+		finally {
+			Thread w = waiting;
+			if (w != null) LockSupport.unpark(w);
+		}
+	}
+
+	/**
+	* Write the header of the trace.
+	**/
+	private void writeHeader(long records) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(0,MAGIC);
+		header.put(4,(byte)VERSION);
+		header.put(5,(byte)processor.regWidth);
+		header.putShort(6,(short)RECORD_SIZE);
+		header.putLong(8,records);
+		while (header.hasRemaining()) channel.write(header,HEADER_SIZE - header.remaining());
+	}
+}
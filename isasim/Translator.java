@@ -0,0 +1,278 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Dynamic binary translation tier of
+* the ISA simulator package "isasim".
+*
+* <p> The Translator runs a Processor with the Interpreter
+* while counting how often each instruction memory address
+* is reached. Once an address becomes hot, the basic block
+* starting there is translated to a JVM class by the
+* BlockCompiler, and from then on every visit to that
+* address runs the whole block in one call.
+*
+* <p> Blocks are chained at their beq/j exits: each block
+* remembers the blocks that followed it, so a loop made of
+* translated blocks runs without looking anything up.
+*
+* <p> While translated code runs, the registers and MAR live
+* in a primitive state array; they are copied back to the
+* Processor's Register objects whenever control returns to
+* the Interpreter or execution stops.
+*
+* <p> Translations are only valid for the instruction
+* memory they were made from, so the Processor discards
+* them when it loads a new program, or on reset() if the
+* instruction memory changed.
+*
+* <p> Contained methods:
+*		execute(): run until a halt or the PC leaves
+*				   the instruction memory.
+*		invalidate(): discard every translated block.
+*		copyFrom(): take the translations of another Translator.
+*
+**/
+
+public class Translator {
+
+	// visits before the block at an address is translated.
+	public static final int HOT_THRESHOLD = 32;
+	// longest block that will be translated.
+	public static final int MAX_BLOCK = 256;
+
+	/**
+	* A translated block and the blocks chained to its exits.
+	**/
+	static final class Block {
+		final CompiledBlock code;
+		final int start;
+		final int length;
+		final boolean stores;
+		// instructions per opcode, and the RA of a final beq (or -1)
+		final int[] mix;
+		final int branch;
+		Block next0, next1;
+		int pc0 = -1, pc1 = -1;
+
+		Block(CompiledBlock c, int s, int l, boolean st, int[] m, int br){
+			code = c; start = s; length = l; stores = st; mix = m; branch = br;
+		}
+	}
+
+	private final Processor processor;
+	private final Interpreter interpreter;
+	private final BlockCompiler compiler;
+	private final Memory dataMemory;
+	private final int regCount;
+	private final int width;
+	private final int[] state;
+	private final int[] heat;
+	private final Block[] blocks;
+	private int translated;
+	private boolean halted;
+
+	/**
+	* Translator constructor.
+	*
+	* @param p the Processor to execute
+	* @param i the Interpreter of that Processor, used for cold code
+	**/
+	public Translator(Processor p, Interpreter i){
+		processor = p;
+		interpreter = i;
+		dataMemory = p.dataMemory;
+		regCount = p.regFileSize;
+		width = p.regWidth;
+		compiler = new BlockCompiler(regCount,width);
+		state = new int[regCount + 1];
+		heat = new int[p.imemSize];
+		blocks = new Block[p.imemSize];
+	}
+
+	/**
+	* Run the Processor.
+	*
+	* Runs until an empty or invalid instruction is reached,
+	* the PC leaves the instruction memory or the limit is
+	* reached. When the
+	* Processor is cross-checked, every block or interpreted
+	* instruction is checked against its structural shadow.
+	*
+	* @param check true to check each step against the shadow
+	* @param limit stop once at least this many instructions ran
+	* @return the number of instructions executed
+	**/
+	public long execute(boolean check, long limit){
+		long retired = 0;
+		halted = false;
+		load();
+		int pc = processor.PC.getWord();
+		ProcessorMetrics metrics = processor.metrics;
+		Profiler profiler = processor.profiler;
+		Block previous = null;
+		while (retired < limit && Utilities.toSigned(pc,width) < processor.imemSize){
+			Block b = null;
+			if (previous != null){
+				if (pc == previous.pc0) b = previous.next0;
+				else if (pc == previous.pc1) b = previous.next1;
+			}
+			if (b == null && pc < blocks.length){
+				b = blocks[pc];
+				if (b == null && ++heat[pc] == HOT_THRESHOLD) b = translate(pc);
+				if (b != null && previous != null) link(previous,pc,b);
+			}
+
+			if (b != null){
+				pc = b.code.run(state,dataMemory);
+				retired += b.length;
+				previous = b;
+				if (metrics != null) metrics.retire(b.mix,b.branch < 0 ? -1 : state[b.branch] == 0 ? 1 : 0);
+				if (profiler != null) profiler.countBlock(b.start,b.length,pc != b.start + b.length);
+				if (check){
+					store(pc);
+					if (!processor.checkShadow(retired - b.length,b.start,b.length,true,b.stores)) {
+						halted = true;
+						return retired;
+					}
+				}
+				continue;
+			}
+
+			previous = null;
+			store(pc);
+			int from = pc;
+			DecodedInstruction counted = metrics != null ? processor.decodeCache.get(from) : null;
+			boolean zero = counted != null && processor.regFile[counted.ra].getWord() == 0;
+			boolean running = interpreter.step();
+			load();
+			pc = processor.PC.getWord();
+			boolean stores = processor.decodeCache.get(from).opcode == Opcode.MW;
+			if (check && !processor.checkShadow(retired,from,1,running,stores)) {
+				halted = true;
+				return retired;
+			}
+			if (!running){
+				halted = true;
+				return retired;
+			}
+			if (counted != null) metrics.retire(counted.opcode,zero);
+			if (profiler != null) profiler.count(from,pc != from + 1);
+			retired++;
+		}
+		store(pc);
+		return retired;
+	}
+
+	/**
+	* Check how the last call to execute() ended.
+	*
+	* @return true if it stopped at an empty or invalid
+	* instruction (or a divergence), false if the PC left
+	* the instruction memory.
+	**/
+	public boolean halted(){
+		return halted;
+	}
+
+	/**
+	* Discard every translated block.
+	**/
+	public void invalidate(){
+		for (int i = 0; i < blocks.length; i++){
+			blocks[i] = null;
+			heat[i] = 0;
+		}
+	}
+
+	/**
+	* Take the translations of another Translator.
+	*
+	* Compiled blocks keep no state, so the code is shared;
+	* the blocks are chained again as they run. Only valid
+	* while both instruction memories hold the same words.
+	*
+	* @param source the Translator of a Processor of the same size
+	**/
+	public void copyFrom(Translator source){
+		int n = Math.min(blocks.length,source.blocks.length);
+		for (int i = 0; i < n; i++){
+			Block b = source.blocks[i];
+			blocks[i] = b == null ? null : new Block(b.code,b.start,b.length,b.stores,b.mix,b.branch);
+			heat[i] = source.heat[i];
+		}
+	}
+
+	/**
+	* Count the blocks translated since the Translator was created.
+	*
+	* @return the number of translations made
+	**/
+	public int getTranslated(){
+		return translated;
+	}
+
+	/**
+	* Translate the basic block starting at an address.
+	*
+	* @param start the address of the first instruction
+	* @return the translated block, or null if there is
+	* no instruction to translate there
+	**/
+	private Block translate(int start){
+		int length = 0;
+		boolean stores = false;
+		while (length < MAX_BLOCK && start + length < blocks.length){
+			DecodedInstruction ins = processor.decodeCache.get(start + length);
+			if (ins.opcode == Opcode.HALT || ins.opcode == Opcode.INVALID) break;
+			if (ins.opcode == Opcode.MW) stores = true;
+			length++;
+			if (ins.opcode == Opcode.BEQ || ins.opcode == Opcode.J) break;
+		}
+		if (length == 0) return null;
+
+		DecodedInstruction[] code = new DecodedInstruction[length];
+		int[] mix = new int[ProcessorMetrics.OPCODES];
+		for (int i = 0; i < length; i++){
+			code[i] = processor.decodeCache.get(start + i);
+			mix[code[i].opcode.ordinal()]++;
+		}
+		int branch = code[length - 1].opcode == Opcode.BEQ ? code[length - 1].ra : -1;
+		Block b = new Block(compiler.compile(code,start),start,length,stores,mix,branch);
+		blocks[start] = b;
+		translated++;
+		return b;
+	}
+
+	/**
+	* Chain a block to one of the exits of another.
+	**/
+	private void link(Block from, int pc, Block to){
+		if (from.next0 == null){
+			from.pc0 = pc;
+			from.next0 = to;
+		}
+		else if (from.next1 == null && from.pc0 != pc){
+			from.pc1 = pc;
+			from.next1 = to;
+		}
+	}
+
+	/**
+	* Copy the Processor's registers and MAR into the state array.
+	**/
+	private void load(){
+		for (int i = 0; i < regCount; i++) state[i] = processor.regFile[i].getWord();
+		state[regCount] = processor.MAR.getWord();
+	}
+
+	/**
+	* Copy the state array and PC back to the Processor.
+	**/
+	private void store(int pc){
+		for (int i = 0; i < regCount; i++) processor.regFile[i].setWord(state[i]);
+		processor.MAR.setWord(state[regCount]);
+		processor.PC.setWord(pc);
+	}
+}
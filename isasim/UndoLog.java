@@ -0,0 +1,286 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Undo log for reverse execution in the
+* ISA simulator package "isasim".
+*
+* <p> Each instruction of this architecture changes the PC
+* and at most one other thing: the MAR (la), one register
+* (mr, addi, add, sub, nor) or the data memory word at the
+* MAR (mw). Which one follows from the instruction at the old
+* PC, so a cycle is undone with two words: the old PC and the
+* old value of whatever the instruction changed. Both are
+* packed into one long of a ring buffer, 8 bytes per cycle.
+*
+* <p> When the ring is full the oldest cycles are forgotten.
+* To go back further, the log also holds a checkpoint of the
+* Processor every 'interval' cycles (copy-on-write, see
+* Processor.checkpoint()); the Processor rewinds past the ring
+* by restoring the closest checkpoint and running forward from
+* it. A checkpoint holds the pages written since the one
+* before it, and the oldest holds every page of its own, so
+* the log bounds them by bytes rather than by number: the
+* oldest are forgotten once the checkpoints hold more than
+* 'checkpointBytes' (the newest is always kept).
+*
+* <p> The log is only valid for the instruction memory it was
+* recorded with; the Processor clears it whenever its state
+* is replaced other than by running or rewinding.
+*
+* <p> Contained methods:
+*		capture(): describe what the next cycle will change.
+*		push(): record a completed cycle.
+*		undo(): revert the newest recorded cycle.
+*		clear(): forget every recorded cycle.
+*
+**/
+
+import java.util.Arrays;
+
+public class UndoLog {
+
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+	public static final long DEFAULT_INTERVAL = 1 << 16;
+	public static final long DEFAULT_CHECKPOINT_BYTES = 32L << 20;
+
+	private final Processor processor;
+	private final long[] ring;
+	private final int mask;
+	private int head;
+	private int count;
+
+	private final long interval;
+	private final long budget;
+	private long[] checkpointCycles = new long[16];
+	private int[] checkpointIds = new int[16];
+	private long[] checkpointSizes = new long[16];
+	private int checkpointCount;
+	private long checkpointBytes;
+
+	/**
+	* UndoLog constructor.
+	*
+	* @param p the Processor whose cycles are recorded
+	* @param capacity the number of cycles the ring holds
+	* (rounded up to a power of two)
+	* @param checkpointInterval cycles between checkpoints
+	* @param maxCheckpointBytes the heap the checkpoints may hold
+	**/
+	public UndoLog(Processor p, int capacity, long checkpointInterval, long maxCheckpointBytes){
+		processor = p;
+		int size = Integer.highestOneBit(Math.max(1,capacity - 1)) << 1;
+		ring = new long[size];
+		mask = size - 1;
+		interval = Math.max(1,checkpointInterval);
+		budget = maxCheckpointBytes;
+	}
+
+	/**
+	* Describe what the instruction at the PC will change.
+	*
+	* @return the entry to push() once the cycle completed
+	**/
+	long capture(){
+		int pc = processor.PC.getWord();
+		DecodedInstruction ins = processor.decodeCache.get(pc);
+		int old;
+		switch (ins.opcode){
+			case LA:
+				old = processor.MAR.getWord();
+				break;
+			case MR:
+			case ADDI:
+			case ADD:
+			case SUB:
+			case NOR:
+				old = processor.regFile[ins.ra].getWord();
+				break;
+			case MW:
+				old = processor.dataMemory.readWord();
+				break;
+			default:
+				old = 0;
+		}
+		return ((long)pc << 32) | (old & 0xFFFFFFFFL);
+	}
+
+	/**
+	* Record a completed cycle.
+	*
+	* Takes a checkpoint when the Processor's cycle count
+	* reaches a multiple of the interval.
+	*
+	* @param entry the value capture() returned before the cycle
+	**/
+	void push(long entry){
+		ring[head] = entry;
+		head = (head + 1) & mask;
+		if (count < ring.length) count++;
+		if (processor.cycles % interval == 0) checkpoint();
+	}
+
+	/**
+	* Revert the newest recorded cycle.
+	*
+	* @return false if no cycle is recorded
+	**/
+	boolean undo(){
+		if (count == 0) return false;
+		head = (head - 1) & mask;
+		count--;
+		long entry = ring[head];
+		int pc = (int)(entry >>> 32);
+		int old = (int)entry;
+		DecodedInstruction ins = processor.decodeCache.get(pc);
+		switch (ins.opcode){
+			case LA:
+				processor.MAR.setWord(old);
+				break;
+			case MR:
+			case ADDI:
+			case ADD:
+			case SUB:
+			case NOR:
+				processor.regFile[ins.ra].setWord(old);
+				break;
+			case MW:
+				processor.dataMemory.writeWord(old);
+				break;
+			default:
+				break;
+		}
+		processor.PC.setWord(pc);
+		processor.cycles--;
+		return true;
+	}
+
+	/**
+	* Count the cycles that can be undone without a checkpoint.
+	*
+	* @return the number of recorded cycles
+	**/
+	public int size(){
+		return count;
+	}
+
+	/**
+	* Forget every recorded cycle and checkpoint, then take
+	* a checkpoint of the current state.
+	**/
+	public void clear(){
+		head = 0;
+		count = 0;
+		dropCheckpoints(-1);
+		checkpoint();
+	}
+
+	/**
+	* Forget every recorded cycle and checkpoint.
+	**/
+	void release(){
+		head = 0;
+		count = 0;
+		dropCheckpoints(-1);
+	}
+
+	/**
+	* Forget the recorded cycles, keeping the checkpoints
+	* up to the current cycle.
+	**/
+	void clearRing(){
+		head = 0;
+		count = 0;
+		dropCheckpoints(processor.cycles);
+	}
+
+	/**
+	* Find the newest checkpoint at or before a cycle.
+	*
+	* @param cycle the cycle to go back to
+	* @return the index of the checkpoint, or -1
+	**/
+	int checkpointBefore(long cycle){
+		for (int i = checkpointCount - 1; i >= 0; i--){
+			if (checkpointCycles[i] <= cycle) return i;
+		}
+		return -1;
+	}
+
+	/**
+	* The Processor checkpoint id of a checkpoint of this log.
+	**/
+	int checkpointId(int index){
+		return checkpointIds[index];
+	}
+
+	/**
+	* The heap held by the checkpoints of this log.
+	*
+	* @return an estimate in bytes, see Memory.Snapshot
+	**/
+	public long getCheckpointBytes(){
+		return checkpointBytes;
+	}
+
+	/**
+	* The earliest cycle the Processor can rewind to.
+	*
+	* @return the oldest checkpointed or recorded cycle
+	**/
+	public long earliest(){
+		long recorded = processor.cycles - count;
+		return checkpointCount > 0 ? Math.min(recorded,checkpointCycles[0]) : recorded;
+	}
+
+	/**
+	* Take a checkpoint of the current state, replacing
+	* any at or after the current cycle, then forget the
+	* oldest ones while they hold more than the budget.
+	**/
+	private void checkpoint(){
+		dropCheckpoints(processor.cycles - 1);
+		if (checkpointCount == checkpointIds.length){
+			checkpointIds = Arrays.copyOf(checkpointIds,checkpointCount * 2);
+			checkpointCycles = Arrays.copyOf(checkpointCycles,checkpointCount * 2);
+			checkpointSizes = Arrays.copyOf(checkpointSizes,checkpointCount * 2);
+		}
+		int id = processor.checkpoint();
+		checkpointIds[checkpointCount] = id;
+		checkpointCycles[checkpointCount] = processor.cycles;
+		int earlier = checkpointCount > 0 ? checkpointIds[checkpointCount - 1] : -1;
+		checkpointSizes[checkpointCount] = processor.checkpointBytes(id,earlier);
+		checkpointBytes += checkpointSizes[checkpointCount];
+		checkpointCount++;
+
+		// once the oldest is gone, the next one holds on its
+		// own every page it shared with it
+		int oldest = 0;
+		while (checkpointCount - oldest > 1 && checkpointBytes > budget){
+			processor.discard(checkpointIds[oldest]);
+			checkpointBytes -= checkpointSizes[oldest];
+			oldest++;
+			long size = processor.checkpointBytes(checkpointIds[oldest],-1);
+			checkpointBytes += size - checkpointSizes[oldest];
+			checkpointSizes[oldest] = size;
+		}
+		if (oldest > 0){
+			checkpointCount -= oldest;
+			System.arraycopy(checkpointIds,oldest,checkpointIds,0,checkpointCount);
+			System.arraycopy(checkpointCycles,oldest,checkpointCycles,0,checkpointCount);
+			System.arraycopy(checkpointSizes,oldest,checkpointSizes,0,checkpointCount);
+		}
+	}
+
+	/**
+	* Discard the checkpoints taken after a cycle.
+	**/
+	private void dropCheckpoints(long after){
+		while (checkpointCount > 0 && checkpointCycles[checkpointCount - 1] > after){
+			checkpointCount--;
+			checkpointBytes -= checkpointSizes[checkpointCount];
+			processor.discard(checkpointIds[checkpointCount]);
+		}
+	}
+}
@@ -19,11 +19,14 @@ package isasim;
 *		intToBin(): provides the binary String that represents
 *					the given integer value.
 *		comp():		converts a binary string to its 2-complement
+*		mask():		the bit mask for a word of a given width.
+*		toSigned():	interprets a stored word as a 2-complement integer.
+*		binToWord(): converts a binary String to its raw word bits.
+*		wordToBin(): provides the binary String view of a stored word.
 *
 **/
 
 
-import static java.lang.Math.pow;
 import static java.lang.Math.abs;
 
 public class Utilities {
@@ -40,25 +43,7 @@ public class Utilities {
 	* @return the equivalent integer value.
 	**/
 	public static int binToInt(String bin){
-		boolean comped = false;
-		if (bin.substring(0,1).equals("1")){
-			bin = comp(bin);
-			comped = true;
-		}
-		int value = 0;
-		int power = bin.length();
-		for (int i = 0; i < bin.length(); i++){
-			power--;
-			if (bin.substring(i,i+1).equals("1")){
-				value += pow(2,power);
-			}else{}
-		}
-		if(comped){
-			return -1*value;
-		}else{
-			return value;
-		}
-		
+		return toSigned(binToWord(bin),bin.length());
 	}
 
 	/**
@@ -82,9 +67,9 @@ public class Utilities {
 		String bin = "";
 		for (int i = 0; i < length;i++){
 			power--;
-			if(value >= pow(2,power)){
+			if(value >= (1L << power)){
 				bin+="1";
-				value -= pow(2,power);
+				value -= (1L << power);
 			}else{
 				bin+="0";
 			}
@@ -133,4 +118,64 @@ public class Utilities {
 		}
 	}
 
+	/**
+	* Provide the bit mask for a word.
+	*
+	* @param width the number of bits in the word (at most 32).
+	* @return an int with the low 'width' bits set.
+	**/
+	public static int mask(int width){
+		return width >= 32 ? -1 : (1 << width) - 1;
+	}
+
+	/**
+	* Interpret a stored word as a 2-complement integer.
+	*
+	* The bit at position width-1 is treated as the
+	* sign bit and is repeated through the upper bits.
+	*
+	* @param word the raw word bits.
+	* @param width the number of bits in the word.
+	* @return the equivalent integer value.
+	**/
+	public static int toSigned(int word, int width){
+		if (width <= 0) return 0;
+		if (width >= 32) return word;
+		int shift = 32 - width;
+		return (word << shift) >> shift;
+	}
+
+	/**
+	* Convert a binary string to its raw word bits.
+	*
+	* Every character other than '1' is read as a '0',
+	* and no sign interpretation is applied.
+	*
+	* @param bin the binary data (at most 32 characters).
+	* @return the word holding the same bits.
+	**/
+	public static int binToWord(String bin){
+		int word = 0;
+		for (int i = 0; i < bin.length(); i++){
+			word = (word << 1) | (bin.charAt(i) == '1' ? 1 : 0);
+		}
+		return word;
+	}
+
+	/**
+	* Provide the binary String view of a stored word.
+	*
+	* @param word the raw word bits.
+	* @param width the length of the returned String.
+	* @return the low 'width' bits of word, MSB first.
+	**/
+	public static String wordToBin(int word, int width){
+		char[] bits = new char[width];
+		for (int i = width - 1; i > -1; i--){
+			bits[i] = (word & 1) == 1 ? '1' : '0';
+			word >>>= 1;
+		}
+		return new String(bits);
+	}
+
 }
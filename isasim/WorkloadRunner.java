@@ -0,0 +1,264 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Workload runner of the ISA simulator
+* package "isasim".
+*
+* <p> The WorkloadRunner runs the standard workloads (the
+* .isa programs of the "workloads" directory) on every
+* engine, one at a time, and reports for each run:
+*		program, engine, check, cycles, wall time (ms),
+*		simulated MIPS, peak heap (KB)
+* The wall time is the best of a number of runs, each on a
+* fresh Processor, so the JIT compiler has settled. The peak
+* heap is the high-water mark of the heap memory pools
+* during the last run.
+*
+* <p> Next to each program, a file NAME.expected holds the
+* final state the program must reach: its status, cycle
+* count, registers and every non-zero data memory word. A
+* run that ends in any other state is a FAIL, and the runner
+* exits with status 1, so the corpus serves as a correctness
+* gate for every engine. With -update, the expected files are
+* written from the structural engine instead.
+*
+* <p> Usage:
+*		java isasim.WorkloadRunner [-engine NAME]... [-runs N]
+*			[-limit CYCLES] [-update] [file.isa | directory]...
+* Every program runs with the default sizes of the Simulator.
+*
+* <p> Contained methods:
+*		run(): run one program and capture its final state.
+*		check(): compare a final state with the expected one.
+*
+**/
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+public class WorkloadRunner {
+
+	public static final String DIRECTORY = "workloads";
+	public static final String EXPECTED = ".expected";
+	public static final int DEFAULT_RUNS = 3;
+
+	private final Config config;
+	private final long limit;
+
+	/**
+	* WorkloadRunner constructor.
+	*
+	* @param c the sizes of each Processor
+	* @param cycleLimit the number of cycles each program may run
+	**/
+	public WorkloadRunner(Config c, long cycleLimit){
+		config = c;
+		limit = cycleLimit;
+	}
+
+	/**
+	* Run one program on a fresh Processor.
+	*
+	* @param image the instruction memory words
+	* @param e the engine to run it with
+	* @return the Processor, stopped
+	**/
+	public Processor run(int[] image, Engine e){
+		Processor p = config.newProcessor(image,null,e);
+		p.execute(limit);
+		return p;
+	}
+
+	/**
+	* Describe the final state of a program.
+	*
+	* @param p the Processor that ran the program
+	* @return the state, one "key=value" line per value
+	**/
+	public String state(Processor p){
+		StringBuilder s = new StringBuilder();
+		s.append("status=").append(BatchRunner.status(p,limit)).append('\n');
+		s.append("cycles=").append(p.getCycles()).append('\n');
+		for (int i = 0; i < p.regFileSize; i++){
+			s.append("r").append(i).append('=').append(p.regFile[i].getSigned()).append('\n');
+		}
+		for (int i = 0; i < p.dataMemory.getSize(); i++){
+			int w = p.dataMemory.getWord(i);
+			if (w != 0) s.append("dmem.").append(i).append('=').append(w).append('\n');
+		}
+		return s.toString();
+	}
+
+	/**
+	* Compare the final state of a program with the expected one.
+	*
+	* Data memory words that are not listed must be 0.
+	*
+	* @param p the Processor that ran the program
+	* @param expected the expected state
+	* @return the first difference, or null if there is none
+	**/
+	public String check(Processor p, Properties expected){
+		Properties actual = new Properties();
+		for (String line : state(p).split("\n")){
+			int eq = line.indexOf('=');
+			actual.setProperty(line.substring(0,eq),line.substring(eq + 1));
+		}
+		List<String> keys = new ArrayList<String>(expected.stringPropertyNames());
+		for (String key : actual.stringPropertyNames()) if (!keys.contains(key)) keys.add(key);
+		for (String key : keys){
+			String want = expected.getProperty(key,"0");
+			String got = actual.getProperty(key,"0");
+			if (!want.equals(got)) return key + " expected " + want + " got " + got;
+		}
+		return null;
+	}
+
+	/**
+	* Reset the high-water marks of the heap memory pools.
+	**/
+	private static void resetPeakHeap(){
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+		}
+	}
+
+	/**
+	* The high-water mark of the heap since resetPeakHeap().
+	**/
+	private static long peakHeap(){
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+		}
+		return peak;
+	}
+
+	/**
+	* The expected file of a program.
+	**/
+	static File expectedFile(String program){
+		return new File(program.replaceFirst("\\.isa$","") + EXPECTED);
+	}
+
+	/**
+	* Run the workloads given on the command line.
+	*
+	* @param args options followed by .isa files and directories
+	**/
+	public static void main(String[] args){
+		List<Engine> engines = new ArrayList<Engine>();
+		int runs = DEFAULT_RUNS;
+		long limit = BatchRunner.DEFAULT_LIMIT;
+		boolean update = false;
+		List<String> paths = new ArrayList<String>();
+		try {
+			for (int i = 0; i < args.length; i++){
+				switch (args[i]){
+					case "-engine":
+						engines.add(Engine.valueOf(args[++i].toUpperCase()));
+						break;
+					case "-runs":
+						runs = Math.max(1,Integer.parseInt(args[++i]));
+						break;
+					case "-limit":
+						limit = Long.parseLong(args[++i]);
+						break;
+					case "-update":
+						update = true;
+						break;
+					default:
+						paths.add(args[i]);
+				}
+			}
+		}
+		catch (RuntimeException e){
+			System.out.println("usage: WorkloadRunner [-engine NAME]... [-runs N] [-limit CYCLES] [-update] (file.isa | directory)...");
+			return;
+		}
+		if (paths.isEmpty()) paths.add(DIRECTORY);
+		if (engines.isEmpty()) for (Engine e : Engine.values()) engines.add(e);
+		List<String> programs = BatchRunner.programs(paths);
+		WorkloadRunner runner = new WorkloadRunner(new Config(),limit);
+
+		int failures = 0;
+		System.out.println("program\tengine\tcheck\tcycles\twall_ms\tMIPS\tpeak_heap_kb");
+		for (String program : programs){
+			int[] image;
+			try {
+				image = Assembler.assemble(program,runner.config.imemSize,runner.config.wordWidth);
+				// rejects programs naming registers that do not exist
+				runner.config.newProcessor(image,null,Engine.INTERPRETER);
+			}
+			catch (IOException | IllegalArgumentException e){
+				System.out.println(program + "\terror: " + e.getMessage());
+				failures++;
+				continue;
+			}
+			File expectedFile = expectedFile(program);
+			if (update){
+				try (PrintWriter out = new PrintWriter(expectedFile)){
+					out.println("# final state of " + new File(program).getName() + " (written by WorkloadRunner -update)");
+					out.print(runner.state(runner.run(image,Engine.STRUCTURAL)));
+				}
+				catch (IOException e){
+					System.out.println(program + "\terror: " + e.getMessage());
+					failures++;
+					continue;
+				}
+			}
+			Properties expected = null;
+			if (expectedFile.isFile()){
+				expected = new Properties();
+				try (Reader in = new FileReader(expectedFile)){
+					expected.load(in);
+				}
+				catch (IOException e){
+					System.out.println(program + "\terror: " + e.getMessage());
+					failures++;
+					continue;
+				}
+			}
+
+			String name = new File(program).getName();
+			for (Engine e : engines){
+				long best = Long.MAX_VALUE;
+				long peak = 0;
+				Processor p = null;
+				for (int r = 0; r < runs; r++){
+					System.gc();
+					resetPeakHeap();
+					long start = System.nanoTime();
+					p = runner.run(image,e);
+					best = Math.min(best,System.nanoTime() - start);
+					peak = peakHeap();
+				}
+				String check = "-";
+				if (expected != null){
+					String diff = runner.check(p,expected);
+					check = diff == null ? "PASS" : "FAIL " + diff;
+					if (diff != null) failures++;
+				}
+				System.out.println(String.format("%s\t%s\t%s\t%d\t%.3f\t%.2f\t%d",name,e.name().toLowerCase(),
+						check,p.getCycles(),best / 1e6,p.getCycles() / (best / 1e3),peak / 1024));
+			}
+		}
+		if (failures > 0){
+			System.err.println(failures + " workload checks failed");
+			System.exit(1);
+		}
+	}
+}
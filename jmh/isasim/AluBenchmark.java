@@ -0,0 +1,61 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: JMH benchmark of the ALU of the ISA
+* simulator package "isasim".
+*
+* <p> ALU.operate() on primitive words and on binary
+* Strings, for add, sub and nor.
+*
+**/
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AluBenchmark {
+
+	@Param({"add","sub","nor"})
+	public String op;
+
+	private ALU alu;
+	private int a = 5;
+	private int b = 3;
+	private String binA = "0000000000000101";
+	private String binB = "0000000000000011";
+
+	@Setup
+	public void setUp(){
+		alu = new ALU("00");
+		alu.update(op.equals("add") ? ALU.ADD : op.equals("sub") ? ALU.SUB : ALU.NOR);
+	}
+
+	@Benchmark
+	public void word(Blackhole bh){
+		bh.consume(alu.operate(a,b));
+	}
+
+	@Benchmark
+	public void string(Blackhole bh){
+		bh.consume(alu.operate(binA,binB));
+	}
+}
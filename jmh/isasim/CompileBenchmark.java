@@ -0,0 +1,73 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: JMH benchmark of the compiler of the ISA
+* simulator package "isasim".
+*
+* <p> Simulator.compile() of a source of LINES lines of
+* every instruction type, comments and blank lines; the
+* score is the time per source line.
+*
+**/
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompileBenchmark {
+
+	static final int LINES = 1 << 16;
+
+	private Path source;
+	private Config saved;
+
+	@Setup
+	public void setUp() throws IOException {
+		source = Files.createTempFile("isasim-jmh",".isa");
+		String[] body = {"la &r1 5","mr &r2","mw &r3","addi &r4 -7","add &r5 &r6",
+				"sub &r7 &r8","nor &r9 &r10","beq &r11 3","# comment","j 12","nop"};
+		try (PrintWriter out = new PrintWriter(source.toFile())){
+			for (int i = 0; i < LINES; i++) out.println(body[i % body.length]);
+		}
+		saved = Simulator.config;
+		Simulator.config = new Config();
+		Simulator.config.imemSize = LINES;
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Simulator.config = saved;
+		Files.delete(source);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int[] compile(){
+		return Simulator.compile(source.toString(),false);
+	}
+}
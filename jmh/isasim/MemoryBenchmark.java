@@ -0,0 +1,108 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: JMH benchmark of the Memory of the ISA
+* simulator package "isasim".
+*
+* <p> read()/write() and readWord()/writeWord() through
+* the address Register, and readFromMem()/writeToMem() of
+* a data memory stored as text (.dat) or as an image (.img).
+*
+**/
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryBenchmark {
+
+	@Param({".dat",".img"})
+	public String format;
+
+	private Register address;
+	private Memory memory;
+	private Memory stored;
+	private Path scratch;
+	private int next;
+	private String[] words = {"1111000011110000","0000111100001111"};
+
+	@Setup
+	public void setUp() throws IOException {
+		address = new Register(16);
+		memory = new Memory(Simulator.DATA_MEM_SIZE,Simulator.WORD_WIDTH,(int[])null,address);
+		scratch = Files.createTempDirectory("isasim-jmh");
+		String file = scratch.resolve("Dmem" + format).toString();
+		Memory m = new Memory(Simulator.DATA_MEM_SIZE,Simulator.WORD_WIDTH,(int[])null,new Register(16));
+		for (int i = 0; i < m.getSize(); i++) m.setWord(i,i * 31);
+		m.writeTo(file);
+		stored = new Memory(Simulator.DATA_MEM_SIZE,Simulator.WORD_WIDTH,file,new Register(16));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		File[] files = scratch.toFile().listFiles();
+		if (files != null) for (File f : files) f.delete();
+		Files.delete(scratch);
+	}
+
+	@Benchmark
+	public void read(Blackhole bh){
+		address.setWord(next++ & 127);
+		bh.consume(memory.read());
+	}
+
+	@Benchmark
+	public void write(){
+		address.setWord(next++ & 127);
+		memory.write(words[next & 1]);
+	}
+
+	@Benchmark
+	public void readWord(Blackhole bh){
+		address.setWord(next++ & 127);
+		bh.consume(memory.readWord());
+	}
+
+	@Benchmark
+	public void writeWord(){
+		address.setWord(next++ & 127);
+		memory.writeWord(next);
+	}
+
+	@Benchmark
+	public void readFromMem(){
+		stored.readFromMem();
+	}
+
+	@Benchmark
+	public void writeToMem(){
+		stored.setWord(next++ & 127,next);
+		stored.writeToMem();
+	}
+}
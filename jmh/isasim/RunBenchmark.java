@@ -0,0 +1,75 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: JMH benchmark of whole programs on the
+* engines of the ISA simulator package "isasim".
+*
+* <p> Each invocation runs CYCLES cycles of a program,
+* resetting it whenever it stops, so the score in
+* operations per microsecond is the simulated MIPS
+* (million cycles per second). The programs are read from
+* sample.isa and the workloads directory, relative to the
+* working directory (the top of the tree).
+*
+**/
+
+import java.io.IOException;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RunBenchmark {
+
+	static final int CYCLES = 1 << 20;
+
+	@Param({"structural","interpreter","jit"})
+	public String engine;
+
+	@Param({"sample.isa","workloads/bubblesort.isa","workloads/checksum.isa","workloads/countdown.isa",
+			"workloads/fibonacci.isa","workloads/memcopy.isa"})
+	public String program;
+
+	private Processor processor;
+
+	@Setup
+	public void setUp() throws IOException {
+		int[] image = Assembler.assemble(program,Simulator.INSTRUCTION_MEM_SIZE,Simulator.WORD_WIDTH);
+		processor = new Config().newProcessor(image,null,Engine.valueOf(engine.toUpperCase()));
+		processor.execute(1);
+		if (processor.getCycles() == 0) throw new IllegalStateException(program + " does not run");
+		processor.reset();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CYCLES)
+	public long run(){
+		long done = 0;
+		while (done < CYCLES){
+			long before = processor.getCycles();
+			processor.execute(CYCLES - done);
+			done += processor.getCycles() - before;
+			if (done < CYCLES) processor.reset();
+		}
+		return done;
+	}
+}
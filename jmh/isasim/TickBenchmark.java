@@ -0,0 +1,88 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: JMH benchmark of the structural datapath
+* of the ISA simulator package "isasim".
+*
+* <p> Each benchmark runs CYCLES cycles of Processor.tick()
+* over an instruction memory filled with one instruction
+* type (and a j back to the start), so the score is the
+* time of one cycle of that type.
+*
+**/
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickBenchmark {
+
+	static final int CYCLES = 1024;
+
+	@Param({"la","mr","mw","addi","add","sub","nor","beq","j"})
+	public String type;
+
+	private Processor processor;
+
+	@Setup
+	public void setUp() throws IOException {
+		String line;
+		switch (type){
+			case "la": line = "la &r1 1"; break;
+			case "mr": line = "mr &r1"; break;
+			case "mw": line = "mw &r1"; break;
+			case "addi": line = "addi &r1 1"; break;
+			case "add": line = "add &r1 &r2"; break;
+			case "sub": line = "sub &r1 &r2"; break;
+			case "nor": line = "nor &r1 &r2"; break;
+			case "beq": line = "beq &r1 1"; break;
+			default: line = null;
+		}
+		Config c = new Config();
+		c.imemSize = 256;
+		int[] program = new int[c.imemSize];
+		for (int i = 0; i < program.length; i++){
+			if (line == null) program[i] = encode("j " + ((i + 1) % program.length));
+			else program[i] = encode(i == program.length - 1 ? "j 0" : line);
+		}
+		processor = c.newProcessor(program,null,Engine.STRUCTURAL);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CYCLES)
+	public long tick(){
+		processor.execute(CYCLES);
+		return processor.getCycles();
+	}
+
+	/**
+	* Assemble one line of source.
+	**/
+	static int encode(String line) throws IOException {
+		String image = Assembler.assemble(new BufferedReader(new StringReader(line)),1);
+		return Assembler.toImage(image,1,Simulator.WORD_WIDTH)[0];
+	}
+}
@@ -0,0 +1,65 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: JMH benchmark of Utilities and SignExtend
+* of the ISA simulator package "isasim".
+*
+* <p> The String conversions binToInt(), intToBin() and
+* comp(), and SignExtend on a word and on a binary String.
+*
+**/
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilitiesBenchmark {
+
+	private String bin = "1111000011110000";
+	private String byteBin = "10101010";
+	private int value = -12345;
+	private int immediate = 0xAA;
+	private final SignExtend signEx = new SignExtend(16);
+
+	@Benchmark
+	public void binToInt(Blackhole bh){
+		bh.consume(Utilities.binToInt(bin));
+	}
+
+	@Benchmark
+	public void intToBin(Blackhole bh){
+		bh.consume(Utilities.intToBin(16,value));
+	}
+
+	@Benchmark
+	public void comp(Blackhole bh){
+		bh.consume(Utilities.comp(bin));
+	}
+
+	@Benchmark
+	public void signExtend(Blackhole bh){
+		bh.consume(signEx.signExtend(immediate,8));
+	}
+
+	@Benchmark
+	public void signExtendString(Blackhole bh){
+		bh.consume(signEx.signExtend(byteBin));
+	}
+}
@@ -0,0 +1,71 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Tests of BatchRunner of the ISA simulator
+* package "isasim".
+*
+* <p> A program that halts on the last cycle it is allowed
+* is reported as halted, and one stopped before it halts as
+* at the limit. Invalid options print the usage line
+* instead of throwing.
+*
+**/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+public class BatchRunnerTest {
+
+	@Test
+	public void haltOnTheLimitIsAHalt() throws IOException {
+		BatchRunner runner = new BatchRunner(Engine.INTERPRETER,20,new Config());
+		BatchRunner.Result r = runner.run("workloads/countdown.isa");
+		assertEquals("limit",r.status);
+		assertEquals(20,r.cycles);
+
+		Config c = new Config();
+		int[] image = Assembler.assemble("sample.isa",c.imemSize,c.wordWidth);
+		Processor p = c.newProcessor(image,null,Engine.INTERPRETER);
+		p.execute(BatchRunner.DEFAULT_LIMIT);
+		long cycles = p.getCycles();
+		for (long limit : new long[] {cycles,cycles + 1}){
+			Processor q = c.newProcessor(image,null,Engine.INTERPRETER);
+			q.execute(limit);
+			assertEquals("halt",BatchRunner.status(q,limit),"limit " + limit);
+		}
+		Processor q = c.newProcessor(image,null,Engine.INTERPRETER);
+		q.execute(cycles - 1);
+		assertEquals("limit",BatchRunner.status(q,cycles - 1));
+	}
+
+	@Test
+	public void invalidOptionsPrintTheUsage(){
+		String[][] commands = {
+			{"-engine","bogus","sample.isa"},
+			{"-threads","x","sample.isa"},
+			{"-threads","0","sample.isa"},
+			{"-limit","sample.isa"},
+			{"-report"},
+		};
+		PrintStream out = System.out;
+		try {
+			for (String[] command : commands){
+				ByteArrayOutputStream printed = new ByteArrayOutputStream();
+				System.setOut(new PrintStream(printed,true));
+				BatchRunner.main(command);
+				assertTrue(printed.toString().startsWith("usage: BatchRunner"),String.join(" ",command) + ": " + printed);
+			}
+		}
+		finally {
+			System.setOut(out);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Tests of BranchPredictor of the ISA
+* simulator package "isasim".
+*
+* <p> A predictor watching a Processor sees every executed
+* beq and j once, also when the Processor rewinds past its
+* undo ring and runs forward again from a checkpoint.
+*
+**/
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+public class BranchPredictorTest {
+
+	static final String PROGRAM = "workloads/bubblesort.isa";
+
+	static BranchPredictor predictor(){
+		return new BranchPredictor(BranchPredictor.Scheme.GSHARE,BranchPredictor.DEFAULT_ENTRIES,
+				BranchPredictor.DEFAULT_HISTORY,BranchPredictor.DEFAULT_BTB_ENTRIES,0);
+	}
+
+	static long[] counts(BranchPredictor b){
+		return new long[] {b.getBranches(),b.getTaken(),b.getMispredicts(),b.getJumps(),b.getBTBMisses()};
+	}
+
+	@Test
+	public void rewindDoesNotPredictTwice() throws IOException {
+		for (Engine e : new Engine[] {Engine.STRUCTURAL,Engine.INTERPRETER,Engine.JIT}){
+			Processor p = ProcessorMetricsTest.undoable(PROGRAM,e);
+			BranchPredictor b = predictor();
+			p.addPredictor(b);
+			p.execute(10000);
+			assertTrue(p.rewind(5250));
+			p.execute(4750);
+
+			// the beq and j of cycles 0..10000, then of 5250..10000 again
+			BranchPredictor expected = predictor();
+			Processor first = ProcessorMetricsTest.undoable(PROGRAM,e);
+			first.addPredictor(expected);
+			first.execute(10000);
+			Processor second = ProcessorMetricsTest.undoable(PROGRAM,e);
+			second.execute(5250);
+			second.addPredictor(expected);
+			second.execute(4750);
+
+			assertTrue(expected.getBranches() > 0);
+			assertArrayEquals(counts(expected),counts(b),e.name());
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Tests of Breakpoints of the ISA simulator
+* package "isasim".
+*
+* <p> On every engine, execute() stops before the same
+* cycles as a Processor stepped one instruction at a time
+* finds by itself: at breakpoints, at conditional ones only
+* while they hold, and before the mr or mw of a watched
+* address. Each execute() after a stop runs on to the next
+* one. Single steps are never stopped, and once every
+* breakpoint is removed the JIT runs translated code again.
+*
+**/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+
+public class BreakpointsTest {
+
+	static final long LIMIT = 10000000L;
+	static final int STOPS = 5;
+	static final Engine[] ENGINES = {Engine.STRUCTURAL,Engine.INTERPRETER,Engine.JIT};
+
+	static Processor load(String program, Engine e) throws IOException {
+		Config c = new Config();
+		return c.newProcessor(Assembler.assemble(program,c.imemSize,c.wordWidth),null,e);
+	}
+
+	static int[] state(Processor p){
+		int[] s = new int[p.regFileSize + 3];
+		for (int i = 0; i < p.regFileSize; i++) s[i] = p.regFile[i].getWord();
+		s[p.regFileSize] = p.PC.getWord();
+		s[p.regFileSize + 1] = p.MAR.getWord();
+		s[p.regFileSize + 2] = (int)p.getCycles();
+		return s;
+	}
+
+	/**
+	* Set a breakpoint, then check the first stops of
+	* execute() against single steps.
+	*
+	* @param spec the breakpoint, as text
+	* @param stops whether the next instruction stops
+	* @param hit what getHit() gives at a stop
+	**/
+	static void check(String program, String spec, Predicate<Processor> stops, Function<Processor,String> hit) throws IOException {
+		for (Engine e : ENGINES){
+			Processor p = load(program,e);
+			p.getBreakpoints().add(spec);
+			assertEquals(Arrays.asList(spec),p.getBreakpoints().list());
+			Processor reference = load(program,Engine.INTERPRETER);
+			for (int i = 0; i < STOPS; i++){
+				// the instruction stopped at runs on resuming
+				if (i > 0) reference.oneCycle();
+				while (!stops.test(reference)) assertTrue(reference.oneCycle(),"program ended before stop " + i);
+				p.execute(LIMIT);
+				assertEquals(Arrays.toString(state(reference)),Arrays.toString(state(p)),e + " stop " + i);
+				assertEquals(hit.apply(reference),p.getBreakpoints().getHit(),e + " stop " + i);
+			}
+			p.oneCycle();
+			assertNull(p.getBreakpoints().getHit());
+		}
+	}
+
+	static Opcode next(Processor p){
+		return p.decodeCache.get(p.PC.getWord()).opcode;
+	}
+
+	@Test
+	public void breakpoint() throws IOException {
+		check("workloads/countdown.isa","pc 6",p -> p.PC.getWord() == 6,p -> "pc 6");
+	}
+
+	@Test
+	public void conditionalBreakpoint() throws IOException {
+		check("workloads/countdown.isa","pc 6 if &r3 == 1",p -> p.PC.getWord() == 6 && p.regFile[3].getSigned() == 1,
+				p -> "pc 6 if &r3 == 1");
+		check("workloads/countdown.isa","pc 9 if &r2 < 98",p -> p.PC.getWord() == 9 && p.regFile[2].getSigned() < 98,
+				p -> "pc 9 if &r2 < 98");
+	}
+
+	@Test
+	public void watchpoints() throws IOException {
+		check("workloads/memcopy.isa","write 70",p -> next(p) == Opcode.MW && p.MAR.getWord() == 70,p -> "write 70 at pc 23");
+		check("workloads/memcopy.isa","read 5",p -> next(p) == Opcode.MR && p.MAR.getWord() == 5,p -> "read 5 at pc 20");
+		check("workloads/memcopy.isa","access 3",p -> (next(p) == Opcode.MR || next(p) == Opcode.MW) && p.MAR.getWord() == 3,
+				p -> (next(p) == Opcode.MR ? "read" : "write") + " 3 at pc " + p.PC.getWord());
+	}
+
+	@Test
+	public void singleStepsAreNotStopped() throws IOException {
+		Processor p = load("workloads/countdown.isa",Engine.INTERPRETER);
+		p.getBreakpoints().addBreakpoint(1);
+		p.getBreakpoints().addBreakpoint(2);
+		for (int i = 0; i < 3; i++) assertTrue(p.oneCycle());
+		assertEquals(3,p.PC.getWord());
+		assertNull(p.getBreakpoints().getHit());
+	}
+
+	@Test
+	public void removedBreakpointsLeaveTheTranslatorRunning() throws IOException {
+		Processor p = load("workloads/countdown.isa",Engine.JIT);
+		Breakpoints b = p.getBreakpoints();
+		b.add("pc 16");
+		b.add("pc 6 if &r3 == 0");
+		b.add("write 0");
+		p.execute(LIMIT);
+		assertEquals("pc 16",b.getHit());
+		assertEquals(0,p.translator.getTranslated());
+
+		b.remove("pc 16");
+		b.remove("pc 6 if &r3 == 0");
+		assertFalse(b.isEmpty());
+		b.remove("write 0");
+		assertTrue(b.isEmpty());
+		assertNull(p.armed);
+		p.reset(true);
+		p.execute(LIMIT);
+		assertEquals(2420202,p.getCycles());
+		assertTrue(p.translator.getTranslated() > 0);
+	}
+
+	@Test
+	public void invalidBreakpoints(){
+		Processor p = new Config().newProcessor(Engine.INTERPRETER);
+		Breakpoints b = p.getBreakpoints();
+		assertThrows(IllegalArgumentException.class,() -> b.add("pc " + p.imemSize));
+		assertThrows(IllegalArgumentException.class,() -> b.add("write -1"));
+		assertThrows(IllegalArgumentException.class,() -> b.add("read 3 if &r1 == 0"));
+		assertThrows(IllegalArgumentException.class,() -> b.add("pc 3 if &r1 =< 0"));
+		assertTrue(b.isEmpty());
+	}
+}
@@ -0,0 +1,58 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Tests of DataCache of the ISA simulator
+* package "isasim".
+*
+* <p> A cache watching a Processor sees every executed mr
+* and mw once, also when the Processor rewinds past its
+* undo ring and runs forward again from a checkpoint.
+*
+**/
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+public class DataCacheTest {
+
+	static final String PROGRAM = "workloads/memcopy.isa";
+
+	static DataCache cache(){
+		return new DataCache(64,4,2,DataCache.Replacement.LRU,DataCache.WritePolicy.WRITE_BACK,0);
+	}
+
+	static long[] counts(DataCache c){
+		return new long[] {c.getReads(),c.getWrites(),c.getHits(),c.getMisses(),c.getEvictions(),c.getWritebacks()};
+	}
+
+	@Test
+	public void rewindDoesNotAccessTwice() throws IOException {
+		for (Engine e : new Engine[] {Engine.STRUCTURAL,Engine.INTERPRETER,Engine.JIT}){
+			Processor p = ProcessorMetricsTest.undoable(PROGRAM,e);
+			DataCache c = cache();
+			p.addCache(c);
+			p.execute(10000);
+			assertTrue(p.rewind(5250));
+			p.execute(4750);
+
+			// the accesses of cycles 0..10000, then of 5250..10000 again
+			DataCache expected = cache();
+			Processor a = ProcessorMetricsTest.undoable(PROGRAM,e);
+			a.addCache(expected);
+			a.execute(10000);
+			Processor b = ProcessorMetricsTest.undoable(PROGRAM,e);
+			b.execute(5250);
+			b.addCache(expected);
+			b.execute(4750);
+
+			assertTrue(expected.getReads() + expected.getWrites() > 0);
+			assertArrayEquals(counts(expected),counts(c),e.name());
+		}
+	}
+}
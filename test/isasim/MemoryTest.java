@@ -0,0 +1,126 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Tests of the snapshots of Memory and
+* OffHeapMemory of the ISA simulator package "isasim".
+*
+* <p> A snapshot keeps the words it was taken with while
+* the Memory is written, stored and restored, and restores
+* them exactly. A file that cannot be written is reported.
+*
+**/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class MemoryTest {
+
+	static final int SIZE = 2000;
+
+	/**
+	* Write, snapshot, store and restore at random, checking
+	* the memory and every snapshot against plain arrays.
+	**/
+	static void check(Memory m, int[] initial){
+		Random random = new Random(1);
+		int[] words = initial.clone();
+		List<Memory.Snapshot> snapshots = new ArrayList<Memory.Snapshot>();
+		List<int[]> expected = new ArrayList<int[]>();
+		for (int step = 0; step < 2000; step++){
+			int op = random.nextInt(100);
+			if (op < 80){
+				int address = random.nextInt(SIZE);
+				int word = random.nextInt(1 << 16);
+				m.setWord(address,word);
+				words[address] = word;
+			}
+			else if (op < 90){
+				snapshots.add(m.snapshot());
+				expected.add(words.clone());
+			}
+			else if (op < 97){
+				int i = random.nextInt(snapshots.size() + 1);
+				if (i == snapshots.size()){
+					m.writeToMem();
+					continue;
+				}
+				m.restore(snapshots.get(i));
+				words = expected.get(i).clone();
+			}
+			else {
+				m.writeToMem();
+				m.restore();
+				for (int a = 0; a < SIZE; a++) words[a] = m.getWord(a);
+			}
+			for (int a = 0; a < SIZE; a++) assertEquals(words[a],m.getWord(a),"step " + step + " address " + a);
+		}
+		for (int i = 0; i < snapshots.size(); i++){
+			for (int a = 0; a < SIZE; a++) assertEquals(expected.get(i)[a],m.getWord(snapshots.get(i),a));
+		}
+	}
+
+	static int[] image(){
+		int[] image = new int[SIZE];
+		for (int i = 0; i < 300; i++) image[i] = i + 1;
+		return image;
+	}
+
+	@Test
+	public void pagedSnapshots(){
+		check(new Memory(SIZE,16,image(),new Register(32)),image());
+	}
+
+	@Test
+	public void offHeapSnapshots(){
+		OffHeapMemory m = new OffHeapMemory(SIZE,16,null,new Register(32));
+		m.load(image());
+		check(m,image());
+	}
+
+	@Test
+	public void mappedSnapshots() throws IOException {
+		Path dir = Files.createTempDirectory("isasim-test");
+		String file = dir.resolve("Dmem" + MemoryImage.EXTENSION).toString();
+		try {
+			new Memory(SIZE,16,image(),new Register(32)).writeTo(file);
+			check(new OffHeapMemory(SIZE,16,file,new Register(32)),image());
+		}
+		finally {
+			new File(file).delete();
+			Files.delete(dir);
+		}
+	}
+
+	@Test
+	public void failedWritesAreReported() throws IOException {
+		Path dir = Files.createTempDirectory("isasim-test");
+		try {
+			for (String name : new String[] {"Dmem.dat","Dmem" + MemoryImage.EXTENSION}){
+				String missing = dir.resolve("missing").resolve(name).toString();
+				assertFalse(new Memory(SIZE,16,image(),new Register(32)).writeTo(missing),name);
+				assertFalse(new OffHeapMemory(SIZE,16,null,new Register(32)).writeTo(missing),name);
+				String file = dir.resolve(name).toString();
+				assertTrue(new Memory(SIZE,16,image(),new Register(32)).writeTo(file),name);
+				new File(file).delete();
+			}
+		}
+		finally {
+			Files.delete(dir);
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Tests of MultiCore and SharedMemory of the
+* ISA simulator package "isasim".
+*
+* <p> A program without races ends with the same data memory
+* on both schedules and in every ordering. A racing counter
+* ends the same on every ROUND_ROBIN run, and loses no update
+* when each turn runs a core to its end. A value published
+* under ACQUIRE_RELEASE reaches the core that waits for it.
+* A SharedMemory restores its image however it was written.
+*
+**/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+public class MultiCoreTest {
+
+	static final int CORES = 4;
+	static final long LIMIT = 10000000L;
+
+	// Dmem[id] = 100 * id, where id is the core number in &r15
+	static final String OWN_WORD = String.join("\n",
+			"addi &r1 100",
+			"add &r2 &r15",
+			"addi &r1 -1",
+			"beq &r1 2",
+			"beq &r0 -3",
+			"la &r15 0",
+			"mw &r2",
+			"nop",
+			"");
+
+	// Dmem[0] += 1, 1000 times, without a lock
+	static final String COUNTER = String.join("\n",
+			"addi &r1 125",
+			"add &r1 &r1", "add &r1 &r1", "add &r1 &r1",
+			"la &r0 0",
+			"mr &r2",
+			"addi &r2 1",
+			"mw &r2",
+			"addi &r1 -1",
+			"beq &r1 2",
+			"beq &r0 -5",
+			"nop",
+			"");
+
+	// Dmem[1] = 42, then the flag Dmem[0] = 1
+	static final String PRODUCER = String.join("\n",
+			"addi &r2 42",
+			"la &r0 1",
+			"mw &r2",
+			"addi &r2 -41",
+			"la &r0 0",
+			"mw &r2",
+			"nop",
+			"");
+
+	// wait for the flag, then &r3 = Dmem[1]
+	static final String CONSUMER = String.join("\n",
+			"la &r0 0",
+			"mr &r1",
+			"beq &r1 -1",
+			"la &r0 1",
+			"mr &r3",
+			"nop",
+			"");
+
+	static int[] assemble(String text) throws IOException {
+		Path file = Files.createTempFile("isasim-test",".isa");
+		try {
+			Files.write(file,text.getBytes());
+			Config c = new Config();
+			return Assembler.assemble(file.toString(),c.imemSize,c.wordWidth);
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	static MultiCore cores(int[][] programs, SharedMemory.Ordering o, Engine e){
+		Config c = new Config();
+		return new MultiCore(c,programs,null,o,e,c.regFileSize - 1);
+	}
+
+	static int[][] copies(int[] program){
+		int[][] programs = new int[CORES][];
+		for (int i = 0; i < CORES; i++) programs[i] = program;
+		return programs;
+	}
+
+	static void assertHalted(MultiCore m){
+		for (int i = 0; i < m.getCores(); i++) assertEquals("halt",m.status(i,LIMIT),"core " + i);
+	}
+
+	@Test
+	public void raceFreeProgramEndsTheSameEverywhere() throws IOException, InterruptedException {
+		int[] program = assemble(OWN_WORD);
+		Long expected = null;
+		for (MultiCore.Schedule s : MultiCore.Schedule.values()){
+			for (SharedMemory.Ordering o : SharedMemory.Ordering.values()){
+				MultiCore m = cores(copies(program),o,Engine.JIT);
+				m.run(LIMIT,s,7);
+				assertHalted(m);
+				for (int i = 0; i < CORES; i++) assertEquals(100 * i,m.getMemory().getWord(i),s + " " + o);
+				long hash = BatchRunner.hash(m.getMemory());
+				if (expected == null) expected = hash;
+				assertEquals(expected.longValue(),hash,s + " " + o);
+			}
+		}
+	}
+
+	@Test
+	public void roundRobinIsReproducible() throws IOException, InterruptedException {
+		int[][] programs = copies(assemble(COUNTER));
+		// the interpreter stops exactly at the end of a turn,
+		// so a turn can end between the mr and the mw
+		MultiCore first = cores(programs,SharedMemory.Ordering.PLAIN,Engine.INTERPRETER);
+		first.run(LIMIT,MultiCore.Schedule.ROUND_ROBIN,100);
+		assertHalted(first);
+		int counted = first.getMemory().getWord(0);
+		assertTrue(counted < CORES * 1000,"no update was lost at quantum boundaries: " + counted);
+		for (int run = 0; run < 3; run++){
+			MultiCore again = cores(programs,SharedMemory.Ordering.PLAIN,Engine.INTERPRETER);
+			again.run(LIMIT,MultiCore.Schedule.ROUND_ROBIN,100);
+			assertEquals(counted,again.getMemory().getWord(0));
+			for (int i = 0; i < CORES; i++) assertEquals(first.getCore(i).getCycles(),again.getCore(i).getCycles());
+		}
+
+		// one turn runs a core to its end: nothing can race
+		MultiCore whole = cores(programs,SharedMemory.Ordering.PLAIN,Engine.INTERPRETER);
+		whole.run(LIMIT,MultiCore.Schedule.ROUND_ROBIN,Integer.MAX_VALUE);
+		assertEquals(CORES * 1000,whole.getMemory().getWord(0));
+
+		MultiCore threads = cores(programs,SharedMemory.Ordering.VOLATILE,Engine.JIT);
+		threads.run(LIMIT,MultiCore.Schedule.THREADS,0);
+		assertHalted(threads);
+		int racing = threads.getMemory().getWord(0);
+		assertTrue(racing >= 1000 && racing <= CORES * 1000,"counted " + racing);
+	}
+
+	@Test
+	public void acquireReleasePublishesTheValue() throws IOException, InterruptedException {
+		int[][] programs = {assemble(PRODUCER),assemble(CONSUMER)};
+		for (int run = 0; run < 20; run++){
+			MultiCore m = cores(programs,SharedMemory.Ordering.ACQUIRE_RELEASE,Engine.JIT);
+			m.run(LIMIT,MultiCore.Schedule.THREADS,0);
+			assertHalted(m);
+			assertEquals(42,m.getCore(1).regFile[3].getWord());
+		}
+	}
+
+	@Test
+	public void sharedMemoryRestoresItsImage(){
+		SharedMemory m = new SharedMemory(300,16,new int[] {1,2,3},SharedMemory.Ordering.OPAQUE);
+		Memory port = m.port(new Register(32));
+		port.setWord(1,7);
+		port.setWord(299,0x1FFFF);
+		assertEquals(7,m.getWord(1));
+		assertEquals(0xFFFF,m.getWord(299));
+		Memory.Snapshot s = port.snapshot();
+		port.restore();
+		assertEquals(2,m.getWord(1));
+		assertEquals(0,m.getWord(299));
+		port.restore(s);
+		assertEquals(7,m.getWord(1));
+		assertEquals(0xFFFF,m.getWord(299));
+	}
+
+	@Test
+	public void crossCheckedEnginesAreRejected(){
+		int[][] programs = {new int[1]};
+		for (Engine e : new Engine[] {Engine.CROSS_CHECK,Engine.JIT_CHECK}){
+			assertThrows(IllegalArgumentException.class,
+					() -> new MultiCore(new Config(),programs,null,SharedMemory.Ordering.PLAIN,e,-1),e.name());
+		}
+	}
+}
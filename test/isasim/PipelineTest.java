@@ -0,0 +1,91 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Tests of Pipeline of the ISA simulator
+* package "isasim".
+*
+* <p> Every workload, under every forwarding and branch
+* policy, ends in the state of the single-cycle Processor,
+* takes instructions + 5 + stall cycles, and loses 1 cycle
+* per beq resolved in ID and 2 per beq resolved in EX
+* (per taken beq when predicting not taken). The stall
+* counts of memcopy are checked exactly.
+*
+**/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+public class PipelineTest {
+
+	@Test
+	public void everyPolicyOnEveryWorkload() throws IOException {
+		Config c = new Config();
+		WorkloadRunner states = new WorkloadRunner(c,BatchRunner.DEFAULT_LIMIT);
+		for (String program : BatchRunner.programs(Arrays.asList(WorkloadRunner.DIRECTORY))){
+			int[] image = Assembler.assemble(program,c.imemSize,c.wordWidth);
+			Processor single = c.newProcessor(image,null,Engine.INTERPRETER);
+			single.execute(BatchRunner.DEFAULT_LIMIT);
+			for (Pipeline.Forwarding f : Pipeline.Forwarding.values()){
+				for (Pipeline.BranchPolicy b : Pipeline.BranchPolicy.values()){
+					for (Pipeline.Resolve r : Pipeline.Resolve.values()){
+						String name = program + " " + f + " " + b + " " + r;
+						Processor p = c.newProcessor(image,null,Engine.STRUCTURAL);
+						Pipeline pipe = new Pipeline(p,f,b,r);
+						assertTrue(pipe.run(BatchRunner.DEFAULT_LIMIT),name);
+						assertEquals(states.state(single),states.state(p),name);
+						assertEquals(single.getCycles(),pipe.getInstructions(),name);
+
+						long stalls = 0;
+						for (Pipeline.Stall s : Pipeline.Stall.values()) stalls += pipe.getStalls(s);
+						assertEquals(pipe.getInstructions() + 5 + stalls,pipe.getCycles(),name);
+						assertEquals(pipe.getJumps(),pipe.getStalls(Pipeline.Stall.JUMP),name);
+						long penalty = r == Pipeline.Resolve.DECODE ? 1 : 2;
+						long lost = b == Pipeline.BranchPolicy.STALL ? pipe.getBranches() : pipe.getTaken();
+						assertEquals(penalty * lost,pipe.getStalls(Pipeline.Stall.BRANCH),name);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void memcopyStalls() throws IOException {
+		Config c = new Config();
+		int[] image = Assembler.assemble("workloads/memcopy.isa",c.imemSize,c.wordWidth);
+		// forwarding, branch policy, resolve, then cycles, load-use, data and branch stalls
+		Object[][] runs = {
+			{Pipeline.Forwarding.FULL,Pipeline.BranchPolicy.PREDICT_NOT_TAKEN,Pipeline.Resolve.EXECUTE,3128300L,256000L,0L,528064L},
+			{Pipeline.Forwarding.FULL,Pipeline.BranchPolicy.PREDICT_NOT_TAKEN,Pipeline.Resolve.DECODE,3128300L,256000L,264032L,264032L},
+			{Pipeline.Forwarding.FULL,Pipeline.BranchPolicy.STALL,Pipeline.Resolve.EXECUTE,3640360L,256000L,0L,1040124L},
+			{Pipeline.Forwarding.FULL,Pipeline.BranchPolicy.STALL,Pipeline.Resolve.DECODE,3384330L,256000L,264032L,520062L},
+			{Pipeline.Forwarding.NONE,Pipeline.BranchPolicy.PREDICT_NOT_TAKEN,Pipeline.Resolve.EXECUTE,4184377L,512000L,800077L,528064L},
+			{Pipeline.Forwarding.NONE,Pipeline.BranchPolicy.PREDICT_NOT_TAKEN,Pipeline.Resolve.DECODE,3920345L,512000L,800077L,264032L},
+			{Pipeline.Forwarding.NONE,Pipeline.BranchPolicy.STALL,Pipeline.Resolve.EXECUTE,4696437L,512000L,800077L,1040124L},
+			{Pipeline.Forwarding.NONE,Pipeline.BranchPolicy.STALL,Pipeline.Resolve.DECODE,4176375L,512000L,800077L,520062L},
+		};
+		for (Object[] run : runs){
+			String name = run[0] + " " + run[1] + " " + run[2];
+			Pipeline pipe = new Pipeline(c.newProcessor(image,null,Engine.STRUCTURAL),(Pipeline.Forwarding)run[0],
+					(Pipeline.BranchPolicy)run[1],(Pipeline.Resolve)run[2]);
+			assertTrue(pipe.run(BatchRunner.DEFAULT_LIMIT),name);
+			assertEquals(2344231,pipe.getInstructions(),name);
+			assertEquals(520062,pipe.getBranches(),name);
+			assertEquals(264032,pipe.getTaken(),name);
+			assertEquals(run[3],pipe.getCycles(),name);
+			// the add after each mr of the 256000 words copied waits
+			// for it 1 cycle with forwarding, 2 without
+			assertEquals(run[4],pipe.getStalls(Pipeline.Stall.LOAD_USE),name);
+			assertEquals(run[5],pipe.getStalls(Pipeline.Stall.DATA),name);
+			assertEquals(run[6],pipe.getStalls(Pipeline.Stall.BRANCH),name);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Tests of ProcessorMetrics of the ISA
+* simulator package "isasim".
+*
+* <p> The counters count every executed instruction once,
+* also when the Processor rewinds past its undo ring and
+* runs forward again from a checkpoint.
+*
+**/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+public class ProcessorMetricsTest {
+
+	/**
+	* A Processor running a program that can only rewind
+	* 1024 cycles without replaying from a checkpoint.
+	**/
+	static Processor undoable(String program, Engine e) throws IOException {
+		Config c = new Config();
+		int[] image = Assembler.assemble(program,c.imemSize,c.wordWidth);
+		Processor p = c.newProcessor(image,null,e);
+		p.enableUndo(1024,1000,UndoLog.DEFAULT_CHECKPOINT_BYTES);
+		return p;
+	}
+
+	static Processor countdown(Engine e) throws IOException {
+		return undoable("workloads/countdown.isa",e);
+	}
+
+	@Test
+	public void rewindDoesNotCountTwice() throws IOException {
+		for (Engine e : new Engine[] {Engine.STRUCTURAL,Engine.INTERPRETER,Engine.JIT}){
+			Processor p = countdown(e);
+			ProcessorMetrics m = p.enableMetrics("test-rewind-" + e.name().toLowerCase());
+			try {
+				p.execute(10000);
+				assertTrue(p.rewind(5250));
+				assertEquals(5250,p.getCycles());
+				p.execute(4750);
+				assertEquals(10000,p.getCycles());
+				assertEquals(14750,m.getCycles(),e.name());
+			}
+			finally {
+				p.disableMetrics();
+			}
+		}
+	}
+
+	@Test
+	public void countsMatchCycles() throws IOException {
+		Processor p = countdown(Engine.INTERPRETER);
+		ProcessorMetrics m = p.enableMetrics("test-count");
+		try {
+			p.execute(12345);
+			assertEquals(p.getCycles(),m.getCycles());
+			assertEquals(m.getCycles(),m.getRetiredLa() + m.getRetiredMr() + m.getRetiredMw() + m.getRetiredAddi()
+					+ m.getRetiredAdd() + m.getRetiredSub() + m.getRetiredNor() + m.getRetiredBeq() + m.getRetiredJ());
+			assertEquals(m.getRetiredBeq(),m.getBranchesTaken() + m.getBranchesNotTaken());
+		}
+		finally {
+			p.disableMetrics();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Tests of the Processor sizes of the ISA
+* simulator package "isasim".
+*
+* <p> Programs run on every Engine with register widths,
+* register counts and word widths other than the defaults,
+* and every Engine must stop at the same cycle with the
+* same registers and data memory as the structural one.
+*
+**/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+public class ProcessorTest {
+
+	// a negative immediate, a loop, and a register left at 7
+	static final String NEG = String.join("\n",
+			"addi &r1 -1",
+			"addi &r2 3",
+			"addi &r2 -1",
+			"beq &r2 2",
+			"beq &r0 -2",
+			"addi &r3 7",
+			"");
+
+	// the same, on &r0 - &r3 only
+	static final String FOUR = String.join("\n",
+			"addi &r1 3",
+			"addi &r2 1",
+			"add &r1 &r2",
+			"sub &r1 &r2",
+			"addi &r1 -1",
+			"beq &r1 2",
+			"beq &r0 -2",
+			"nop",
+			"");
+
+	static final long LIMIT = 10000000L;
+
+	/**
+	* Run a program on every Engine and compare them.
+	*
+	* @return the structural Processor, after the run
+	**/
+	static Processor runAll(Config c, String program) throws IOException {
+		int[] image = Assembler.assemble(program,c.imemSize,c.wordWidth);
+		Processor expected = null;
+		for (Engine e : Engine.values()){
+			Processor p = c.newProcessor(image,null,e);
+			p.execute(LIMIT);
+			assertNull(p.getDivergence(),e.name());
+			assertEquals("halt",BatchRunner.status(p,LIMIT),e.name());
+			if (expected == null){
+				expected = p;
+				continue;
+			}
+			assertEquals(expected.getCycles(),p.getCycles(),e.name());
+			for (int r = 0; r < c.regFileSize; r++){
+				assertEquals(expected.regFile[r].getSigned(),p.regFile[r].getSigned(),e.name() + " &r" + r);
+			}
+			assertEquals(BatchRunner.hash(expected.dataMemory),BatchRunner.hash(p.dataMemory),e.name());
+		}
+		return expected;
+	}
+
+	/**
+	* Write a program to a temporary file and run it.
+	**/
+	static Processor runText(Config c, String text) throws IOException {
+		Path file = Files.createTempFile("isasim-test",".isa");
+		try {
+			Files.write(file,text.getBytes());
+			return runAll(c,file.toString());
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void wideRegisters() throws IOException {
+		Config c = new Config();
+		c.regWidth = 32;
+		Processor p = runText(c,NEG);
+		assertEquals(11,p.getCycles());
+		assertEquals(-1,p.regFile[1].getSigned());
+		assertEquals(7,p.regFile[3].getSigned());
+	}
+
+	@Test
+	public void wideWords() throws IOException {
+		Config c = new Config();
+		c.wordWidth = 32;
+		Processor p = runAll(c,"workloads/countdown.isa");
+		assertEquals(2420202,p.getCycles());
+
+		c.regWidth = 32;
+		p = runAll(c,"workloads/countdown.isa");
+		assertEquals(2420202,p.getCycles());
+		assertEquals(50 * 100 * 120,p.regFile[10].getSigned());
+		assertEquals(50 * 100 * 120,p.dataMemory.getWord(0));
+	}
+
+	@Test
+	public void fewRegisters() throws IOException {
+		Config c = new Config();
+		c.regFileSize = 4;
+		Processor p = runText(c,FOUR);
+		assertEquals(12,p.getCycles());
+		assertEquals(1,p.regFile[2].getSigned());
+
+		int[] image = Assembler.assemble("workloads/countdown.isa",c.imemSize,c.wordWidth);
+		for (Engine e : Engine.values()){
+			assertThrows(IllegalArgumentException.class,() -> c.newProcessor(image,null,e).execute(LIMIT),e.name());
+		}
+	}
+}
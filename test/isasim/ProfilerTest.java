@@ -0,0 +1,63 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Tests of the Profiler of the ISA simulator
+* package "isasim".
+*
+* <p> Every executed instruction is counted once at its
+* address, also when the Processor rewinds past its undo
+* ring and runs forward again from a checkpoint.
+*
+**/
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+public class ProfilerTest {
+
+	/**
+	* The counts per address of the first cycles of countdown.
+	**/
+	static long[] profile(Engine e, long cycles) throws IOException {
+		Processor p = ProcessorMetricsTest.countdown(e);
+		Profiler f = p.enableProfiler();
+		p.execute(cycles);
+		return counts(p,f);
+	}
+
+	static long[] counts(Processor p, Profiler f){
+		long[] counts = new long[p.imemSize];
+		for (int pc = 0; pc < counts.length; pc++) counts[pc] = f.getCount(pc);
+		return counts;
+	}
+
+	@Test
+	public void rewindDoesNotCountTwice() throws IOException {
+		for (Engine e : new Engine[] {Engine.STRUCTURAL,Engine.INTERPRETER,Engine.JIT}){
+			Processor p = ProcessorMetricsTest.countdown(e);
+			Profiler f = p.enableProfiler();
+			p.execute(10000);
+			assertTrue(p.rewind(5250));
+			p.execute(4750);
+
+			// cycles 0..10000, then 5250..10000 again
+			long[] all = profile(e,10000);
+			long[] first = profile(e,5250);
+			long[] expected = new long[all.length];
+			long total = 0;
+			for (int pc = 0; pc < all.length; pc++){
+				expected[pc] = 2 * all[pc] - first[pc];
+				total += expected[pc];
+			}
+			assertEquals(14750,total);
+			assertArrayEquals(expected,counts(p,f),e.name());
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Tests of TraceDiff of the ISA simulator
+* package "isasim".
+*
+* <p> One program is traced with different data memories.
+* It reads a word at its start and one at its end, so a
+* different word makes the traces differ in the first chunk
+* or in a later one. The divergent cycle compare() finds in
+* parallel must be the one a plain scan with TraceReader
+* finds; equal traces and a trace that is a prefix of the
+* other are also compared.
+*
+**/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TraceDiffTest {
+
+	// reads Dmem[5], counts down 6400 times, then reads Dmem[6]
+	static final String PROGRAM = String.join("\n",
+			"la &r0 5",
+			"mr &r3",
+			"addi &r1 100",
+			"add &r1 &r1", "add &r1 &r1", "add &r1 &r1",
+			"add &r1 &r1", "add &r1 &r1", "add &r1 &r1",
+			"addi &r1 -1",
+			"beq &r1 2",
+			"beq &r0 -2",
+			"la &r0 6",
+			"mr &r4",
+			"nop",
+			"");
+
+	static final int CHUNK = 1000;
+
+	Path dir;
+	int[] image;
+	List<String> traces = new ArrayList<String>();
+
+	@BeforeEach
+	public void assemble() throws IOException {
+		dir = Files.createTempDirectory("isasim-test");
+		Path program = dir.resolve("read.isa");
+		Files.write(program,PROGRAM.getBytes());
+		Config c = new Config();
+		image = Assembler.assemble(program.toString(),c.imemSize,c.wordWidth);
+		Files.delete(program);
+	}
+
+	@AfterEach
+	public void delete() throws IOException {
+		for (String t : traces) Files.deleteIfExists(Path.of(t));
+		Files.delete(dir);
+	}
+
+	/**
+	* Trace the program with Dmem[address] = 1.
+	**/
+	String trace(int address, long limit) throws IOException {
+		int[] data = new int[Simulator.DATA_MEM_SIZE];
+		if (address >= 0) data[address] = 1;
+		Processor p = new Config().newProcessor(image,data,Engine.INTERPRETER);
+		String file = dir.resolve("t" + traces.size() + ".trace").toString();
+		traces.add(file);
+		p.startTrace(file);
+		p.execute(limit);
+		p.stopTrace();
+		return file;
+	}
+
+	/**
+	* The first differing cycle, found one record at a time.
+	**/
+	static long scan(String a, String b) throws IOException {
+		TraceReader x = new TraceReader(a);
+		TraceReader y = new TraceReader(b);
+		try {
+			while (true){
+				boolean more = x.next();
+				if (more != y.next()) return x.getCycle() > y.getCycle() ? x.getCycle() : y.getCycle();
+				if (!more) return -1;
+				if (!x.toString().equals(y.toString())) return x.getCycle();
+			}
+		}
+		finally {
+			x.close();
+			y.close();
+		}
+	}
+
+	long compare(String a, String b, int threads) throws IOException {
+		TraceDiff d = new TraceDiff(a,b);
+		d.chunkRecords = CHUNK;
+		return d.compare(threads);
+	}
+
+	@Test
+	public void equalTraces() throws IOException {
+		String a = trace(-1,BatchRunner.DEFAULT_LIMIT);
+		String b = trace(-1,BatchRunner.DEFAULT_LIMIT);
+		assertTrue(Files.size(Path.of(a)) > 10 * CHUNK * TraceRecorder.RECORD_SIZE);
+		assertEquals(-1,compare(a,b,4));
+	}
+
+	@Test
+	public void divergenceInTheFirstChunk() throws IOException {
+		String a = trace(-1,BatchRunner.DEFAULT_LIMIT);
+		String b = trace(5,BatchRunner.DEFAULT_LIMIT);
+		assertEquals(1,scan(a,b));
+		assertEquals(1,compare(a,b,4));
+		String report = new TraceDiff(a,b).describe(1,TraceDiff.DEFAULT_CONTEXT);
+		assertTrue(report.contains("differs in: register-value memory-value"),report);
+	}
+
+	@Test
+	public void divergenceInALaterChunk() throws IOException {
+		String a = trace(-1,BatchRunner.DEFAULT_LIMIT);
+		String b = trace(6,BatchRunner.DEFAULT_LIMIT);
+		long expected = scan(a,b);
+		assertTrue(expected > 10 * CHUNK,"diverges at " + expected);
+		for (int threads : new int[] {1,4}) assertEquals(expected,compare(b,a,threads));
+		String report = new TraceDiff(a,b).describe(expected,2);
+		assertTrue(report.contains("\na: " + expected + "\t") && report.contains("\nb: " + expected + "\t"),report);
+		assertEquals(2,report.split("\n").length - 3,report);
+	}
+
+	@Test
+	public void prefix() throws IOException {
+		String a = trace(-1,BatchRunner.DEFAULT_LIMIT);
+		String b = trace(-1,5 * CHUNK + 17);
+		assertEquals(5 * CHUNK + 17,scan(a,b));
+		assertEquals(5 * CHUNK + 17,compare(a,b,4));
+		assertEquals(5 * CHUNK + 17,compare(b,a,4));
+		String report = new TraceDiff(a,b).describe(5 * CHUNK + 17,1);
+		assertTrue(report.contains("(end of trace)"),report);
+	}
+}
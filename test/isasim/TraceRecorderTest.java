@@ -0,0 +1,96 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Tests of TraceRecorder and TraceReader of
+* the ISA simulator package "isasim".
+*
+* <p> A traced run, with a ring so small that the Processor
+* waits for the file all the time, is read back and compared
+* cycle by cycle with an untraced run: the header, the PC and
+* instruction of every record, and the register and memory
+* effects it records. Records are also read after seek(), on
+* both sides of the reader's buffer boundaries.
+*
+**/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+public class TraceRecorderTest {
+
+	static final int CYCLES = 100000;
+
+	@Test
+	public void traceMatchesAnUntracedRun() throws IOException {
+		Config c = new Config();
+		int[] image = Assembler.assemble("workloads/memcopy.isa",c.imemSize,c.wordWidth);
+		Path file = Files.createTempFile("isasim-test",".trace");
+		try {
+			Processor traced = c.newProcessor(image,null,Engine.JIT);
+			traced.startTrace(file.toString(),8);
+			traced.execute(CYCLES);
+			assertEquals(CYCLES,traced.stopTrace());
+			for (Thread t : Thread.getAllStackTraces().keySet()){
+				assertFalse(t.getName().equals("trace " + file),"the trace thread is still running");
+			}
+			assertEquals(TraceRecorder.HEADER_SIZE + (long)CYCLES * TraceRecorder.RECORD_SIZE,Files.size(file));
+
+			int[] pcs = new int[CYCLES];
+			Processor p = c.newProcessor(image,null,Engine.INTERPRETER);
+			TraceReader r = new TraceReader(file.toString());
+			try {
+				assertEquals(CYCLES,r.getRecords());
+				assertEquals(c.regWidth,r.getRegisterWidth());
+				int reads = 0;
+				int writes = 0;
+				while (r.next()){
+					int cycle = (int)r.getCycle();
+					assertEquals(p.getCycles(),cycle);
+					pcs[cycle] = r.getPC();
+					assertEquals(p.PC.getWord(),r.getPC(),"pc of cycle " + cycle);
+					assertEquals(p.instructionMemory.getWord(r.getPC()) & 0xFFFF,r.getInstruction(),"instruction of cycle " + cycle);
+					p.execute(1);
+					int flags = r.getFlags();
+					if ((flags & TraceRecorder.REG_WRITE) != 0){
+						assertEquals(p.regFile[r.getRegister()].getWord(),r.getRegisterValue(),"register of cycle " + cycle);
+					}
+					if ((flags & (TraceRecorder.MEM_READ | TraceRecorder.MEM_WRITE)) != 0){
+						assertEquals(p.MAR.getWord(),r.getAddress(),"address of cycle " + cycle);
+						assertEquals(p.dataMemory.getWord(r.getAddress()),r.getMemoryValue(),"memory of cycle " + cycle);
+					}
+					if ((flags & TraceRecorder.MEM_READ) != 0) reads++;
+					if ((flags & TraceRecorder.MEM_WRITE) != 0) writes++;
+				}
+				assertEquals(CYCLES,p.getCycles());
+				assertTrue(reads > 0 && writes > 0);
+
+				long[] seeks = {3 * TraceReader.BUFFER_RECORDS + 5, 0, TraceReader.BUFFER_RECORDS - 1, CYCLES - 1};
+				for (long s : seeks){
+					r.seek(s);
+					for (long cycle = s; cycle < Math.min(CYCLES,s + 3); cycle++){
+						assertTrue(r.next());
+						assertEquals(cycle,r.getCycle());
+						assertEquals(pcs[(int)cycle],r.getPC(),"pc of cycle " + cycle + " after seek(" + s + ")");
+					}
+				}
+				assertFalse(r.next());
+			}
+			finally {
+				r.close();
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Tests of UndoLog of the ISA simulator
+* package "isasim".
+*
+* <p> The checkpoints of a large off-heap data memory stay
+* within the byte budget of the log, snapshots taken between
+* checkpoints do not hide their pages from the count, nor
+* do the checkpoints that were forgotten, and a
+* rewind through a checkpoint returns to the same state as
+* running there directly.
+*
+**/
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+public class UndoLogTest {
+
+	static final int BUDGET = 4 << 20;
+
+	/**
+	* A program with a 16M-word data memory.
+	**/
+	static Processor large(String program) throws IOException {
+		Config c = new Config();
+		c.dmemSize = 1 << 24;
+		int[] image = Assembler.assemble(program,c.imemSize,c.wordWidth);
+		return c.newProcessor(image,null,Engine.INTERPRETER);
+	}
+
+	static int[] state(Processor p){
+		int[] s = new int[p.regFileSize + 2];
+		for (int i = 0; i < p.regFileSize; i++) s[i] = p.regFile[i].getWord();
+		s[p.regFileSize] = p.PC.getWord();
+		s[p.regFileSize + 1] = p.MAR.getWord();
+		return s;
+	}
+
+	@Test
+	public void offHeapCheckpointsStayWithinBudget() throws IOException {
+		Processor p = large("workloads/countdown.isa");
+		assertInstanceOf(OffHeapMemory.class,p.dataMemory);
+		p.enableUndo(1 << 10,1 << 16,BUDGET);
+		p.execute(BatchRunner.DEFAULT_LIMIT);
+		long halted = p.getCycles();
+		assertEquals(2420202,halted);
+		assertTrue(p.undo.getCheckpointBytes() <= BUDGET,"checkpoints hold " + p.undo.getCheckpointBytes());
+		// 512KB of page table each: the oldest were forgotten
+		long earliest = p.undo.earliest();
+		assertTrue(earliest > 0);
+
+		long target = earliest + 12345;
+		assertTrue(p.rewind(target));
+		Processor fresh = large("workloads/countdown.isa");
+		fresh.execute(target);
+		assertArrayEquals(state(fresh),state(p));
+		assertEquals(-1,p.dataMemory.firstDifference(fresh.dataMemory));
+	}
+
+	/**
+	* The heap the checkpoints of a log actually hold: all
+	* of the oldest, and what each newer one adds to it.
+	**/
+	static long held(Processor p){
+		int newest = p.undo.checkpointBefore(p.getCycles());
+		long bytes = p.checkpointBytes(p.undo.checkpointId(0),-1);
+		for (int i = 1; i <= newest; i++) bytes += p.checkpointBytes(p.undo.checkpointId(i),p.undo.checkpointId(i - 1));
+		return bytes;
+	}
+
+	@Test
+	public void droppedCheckpointsLeaveTheirPagesCounted() throws IOException {
+		// stores to the next page of the 64K-word Dmem every 5
+		// cycles, going round it every 1280
+		Path program = Files.createTempFile("isasim-test",".isa");
+		Files.write(program,String.join("\n",
+				"addi &r5 1",
+				"add &r5 &r5", "add &r5 &r5", "add &r5 &r5", "add &r5 &r5",
+				"add &r5 &r5", "add &r5 &r5", "add &r5 &r5", "add &r5 &r5",
+				"la &r2 0",
+				"mw &r3",
+				"add &r2 &r5",
+				"addi &r3 1",
+				"beq &r0 -4",
+				"").getBytes());
+		Processor p;
+		try {
+			Config c = new Config();
+			c.dmemSize = 1 << 16;
+			c.offHeapSize = 0;
+			int[] image = Assembler.assemble(program.toString(),c.imemSize,c.wordWidth);
+			p = c.newProcessor(image,null,Engine.INTERPRETER);
+		}
+		finally {
+			Files.delete(program);
+		}
+		assertInstanceOf(OffHeapMemory.class,p.dataMemory);
+		long budget = 512 << 10;
+		p.enableUndo(1 << 10,1 << 10,budget);
+		p.execute(100000);
+		// 19998 stores, the last 78 times round
+		assertEquals(19997 & 0xFFFF,p.dataMemory.getWord(19997 % 256 * Memory.PAGE_WORDS));
+		assertTrue(p.undo.earliest() > 0,"no checkpoint was forgotten");
+		assertEquals(held(p),p.undo.getCheckpointBytes());
+		assertTrue(held(p) <= budget,"checkpoints hold " + held(p));
+		// the forgotten checkpoints are gone from the Processor
+		assertEquals(p.undo.checkpointBefore(p.getCycles()) + 1,p.checkpoints.size());
+	}
+
+	@Test
+	public void snapshotsBetweenCheckpointsAreNotCounted() throws IOException {
+		Processor plain = large("workloads/memcopy.isa");
+		plain.enableUndo(1 << 10,1 << 12,Long.MAX_VALUE);
+		plain.execute(100000);
+		Processor watched = large("workloads/memcopy.isa");
+		watched.enableUndo(1 << 10,1 << 12,Long.MAX_VALUE);
+		for (int i = 0; i < 100; i++){
+			watched.execute(1000);
+			watched.dataMemory.snapshot();
+			watched.instructionMemory.snapshot();
+		}
+		// more than the page tables: memcopy stores in between
+		long tables = (100000 >> 12) * ((1 << 24) / Memory.PAGE_WORDS) * (long)Memory.REFERENCE_BYTES;
+		assertTrue(plain.undo.getCheckpointBytes() > tables);
+		assertEquals(plain.undo.getCheckpointBytes(),watched.undo.getCheckpointBytes());
+	}
+}
@@ -0,0 +1,51 @@
+package isasim;
+
+// package: isasim
+
+/**
+* <p>Description: Tests of the workloads of the ISA
+* simulator package "isasim".
+*
+* <p> Every program in the workloads directory ends, on
+* every Engine, in the final state recorded in its
+* '.expected' file, as "WorkloadRunner" checks by hand.
+*
+**/
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+public class WorkloadRunnerTest {
+
+	@Test
+	public void everyWorkloadPassesOnEveryEngine() throws IOException {
+		List<String> programs = BatchRunner.programs(Arrays.asList(WorkloadRunner.DIRECTORY));
+		assertFalse(programs.isEmpty());
+		WorkloadRunner runner = new WorkloadRunner(new Config(),BatchRunner.DEFAULT_LIMIT);
+		Config c = new Config();
+		for (String program : programs){
+			File file = WorkloadRunner.expectedFile(program);
+			assertTrue(file.isFile(),"no " + file);
+			Properties expected = new Properties();
+			try (Reader in = new FileReader(file)){
+				expected.load(in);
+			}
+			int[] image = Assembler.assemble(program,c.imemSize,c.wordWidth);
+			for (Engine e : Engine.values()){
+				assertNull(runner.check(runner.run(image,e),expected),program + " on " + e.name());
+			}
+		}
+	}
+}